@@ -0,0 +1,6 @@
+CREATE INDEX IF NOT EXISTS index_StoredSynchronizationRecords_InternalIdLookup ON StoredSynchronizationRecords(EntityInternalId, EntityClass, ListId);
+
+CREATE INDEX IF NOT EXISTS index_ShopItems_Product ON ShopItems(Product);
+
+CREATE INDEX IF NOT EXISTS index_ProductCategoryLinks_product ON ProductCategoryLinks(product);
+CREATE INDEX IF NOT EXISTS index_ProductCategoryLinks_category ON ProductCategoryLinks(category);
\ No newline at end of file
@@ -0,0 +1,5 @@
+ALTER TABLE Products ADD NormalizedName TEXT;
+ALTER TABLE Categories ADD NormalizedName TEXT;
+
+CREATE UNIQUE INDEX IF NOT EXISTS index_Products_NormalizedName ON Products(NormalizedName);
+CREATE UNIQUE INDEX IF NOT EXISTS index_Categories_NormalizedName ON Categories(NormalizedName);
\ No newline at end of file
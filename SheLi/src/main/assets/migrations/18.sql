@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS StoredSynchronizationRecords_migration (Id INTEGER PRIMARY KEY AUTOINCREMENT, EntityExternalId TEXT UNIQUE ON CONFLICT FAIL NOT NULL ON CONFLICT FAIL, EntityInternalId INTEGER NOT NULL ON CONFLICT FAIL, Deleted INTEGER, LastChangeDate INTEGER, EntityType INTEGER NOT NULL ON CONFLICT FAIL, ListId TEXT);
+
+INSERT INTO StoredSynchronizationRecords_migration (Id, EntityExternalId, EntityInternalId, Deleted, LastChangeDate, EntityType, ListId) SELECT Id, EntityExternalId, EntityInternalId, Deleted, LastChangeDate, CASE EntityClass WHEN 'net.buggy.shoplist.model.Category' THEN 1 WHEN 'net.buggy.shoplist.model.Product' THEN 2 WHEN 'net.buggy.shoplist.model.ShopItem' THEN 3 END, ListId FROM StoredSynchronizationRecords WHERE EntityClass IN ('net.buggy.shoplist.model.Category', 'net.buggy.shoplist.model.Product', 'net.buggy.shoplist.model.ShopItem');
+
+DROP TABLE StoredSynchronizationRecords;
+ALTER TABLE StoredSynchronizationRecords_migration RENAME TO StoredSynchronizationRecords;
+
+CREATE INDEX IF NOT EXISTS index_StoredSynchronizationRecords_InternalIdLookup ON StoredSynchronizationRecords(EntityInternalId, EntityType, ListId);
+CREATE INDEX IF NOT EXISTS index_StoredSynchronizationRecords_TypeListLookup ON StoredSynchronizationRecords(EntityType, ListId);
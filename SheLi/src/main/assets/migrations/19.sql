@@ -0,0 +1,3 @@
+DROP TABLE IF EXISTS ChangeLog;
+
+CREATE TABLE ChangeLog (Id INTEGER PRIMARY KEY AUTOINCREMENT, EntityType INTEGER NOT NULL ON CONFLICT FAIL, EntityInternalId INTEGER NOT NULL ON CONFLICT FAIL, Operation TEXT NOT NULL ON CONFLICT FAIL, Timestamp INTEGER NOT NULL ON CONFLICT FAIL);
\ No newline at end of file
@@ -0,0 +1,8 @@
+ALTER TABLE Products ADD SearchWords TEXT;
+
+DROP TRIGGER IF EXISTS ProductsSearch_insert;
+DROP TRIGGER IF EXISTS ProductsSearch_update;
+DROP TRIGGER IF EXISTS ProductsSearch_delete;
+DROP TABLE IF EXISTS ProductsSearch;
+
+CREATE VIRTUAL TABLE ProductsSearch USING fts4(SearchWords);
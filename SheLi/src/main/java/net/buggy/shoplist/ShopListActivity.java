@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.AlertDialog;
@@ -20,6 +21,7 @@ import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
+import com.activeandroid.Cache;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -31,7 +33,9 @@ import net.buggy.components.ViewUtils;
 import net.buggy.components.list.FactoryBasedAdapter;
 import net.buggy.components.list.ListDecorator;
 import net.buggy.components.list.MenuCellFactory;
+import net.buggy.shoplist.data.AsyncDao;
 import net.buggy.shoplist.data.Dao;
+import net.buggy.shoplist.data.PlainSqliteDao;
 import net.buggy.shoplist.data.SqlliteDao;
 import net.buggy.shoplist.model.Category;
 import net.buggy.shoplist.model.Defaults;
@@ -76,7 +80,8 @@ public class ShopListActivity extends AppCompatActivity implements UnitHost {
 
     private final List<UnitNavigator<ShopListActivity>> navigators;
 
-    private SqlliteDao dao;
+    private Dao dao;
+    private AsyncDao asyncDao;
 
     private FirebaseSynchronizer synchronizer;
 
@@ -216,52 +221,57 @@ public class ShopListActivity extends AppCompatActivity implements UnitHost {
                 new AsyncTask<String, Integer, Object>() {
                     @Override
                     protected Object doInBackground(String... params) {
-                        final List<Category> defaultCategories = Defaults.createDefaultCategories(ShopListActivity.this);
-                        Map<String, Category> existingCategoriesMap = new LinkedHashMap<>();
-                        final List<Category> existingCategories = getDao().getCategories();
-                        for (Category category : existingCategories) {
-                            existingCategoriesMap.put(category.getName().toLowerCase(), category);
-                        }
+                        getDao().runInTransaction(new Runnable() {
+                            @Override
+                            public void run() {
+                                final List<Category> defaultCategories = Defaults.createDefaultCategories(ShopListActivity.this);
+                                Map<String, Category> existingCategoriesMap = new LinkedHashMap<>();
+                                final List<Category> existingCategories = getDao().getCategories();
+                                for (Category category : existingCategories) {
+                                    existingCategoriesMap.put(category.getName().toLowerCase(), category);
+                                }
 
-                        float progress = 2f;
-                        publishProgress((int) progress);
+                                float progress = 2f;
+                                publishProgress((int) progress);
 
-                        float categoryStepProgress = 8f / defaultCategories.size();
+                                float categoryStepProgress = 8f / defaultCategories.size();
 
 
-                        for (Category category : defaultCategories) {
-                            if (!existingCategoriesMap.containsKey(category.getName().toLowerCase())) {
-                                getDao().addCategory(category);
-                            }
+                                for (Category category : defaultCategories) {
+                                    if (!existingCategoriesMap.containsKey(category.getName().toLowerCase())) {
+                                        getDao().addCategory(category);
+                                    }
 
-                            progress += categoryStepProgress;
-                            publishProgress((int) progress);
-                        }
+                                    progress += categoryStepProgress;
+                                    publishProgress((int) progress);
+                                }
 
 
-                        final List<Category> actualCategories = getDao().getCategories();
-                        final List<Product> defaultProducts =
-                                Defaults.createDefaultProducts(ShopListActivity.this, actualCategories);
+                                final List<Category> actualCategories = getDao().getCategories();
+                                final List<Product> defaultProducts =
+                                        Defaults.createDefaultProducts(ShopListActivity.this, actualCategories);
 
-                        Map<String, Product> existingProductsMap = new LinkedHashMap<>();
-                        final List<Product> existingProducts = getDao().getProducts();
-                        for (Product product : existingProducts) {
-                            existingProductsMap.put(normalizeName(product.getName()), product);
-                        }
+                                Map<String, Product> existingProductsMap = new LinkedHashMap<>();
+                                final List<Product> existingProducts = getDao().getProducts();
+                                for (Product product : existingProducts) {
+                                    existingProductsMap.put(normalizeName(product.getName()), product);
+                                }
 
-                        progress += 2f;
-                        publishProgress((int) progress);
+                                progress += 2f;
+                                publishProgress((int) progress);
 
-                        float productStepProgress = (100f - progress) / defaultProducts.size();
+                                float productStepProgress = (100f - progress) / defaultProducts.size();
 
-                        for (Product defaultProduct : defaultProducts) {
-                            if (!existingProductsMap.containsKey(defaultProduct.getName().toLowerCase())) {
-                                getDao().addProduct(defaultProduct);
-                            }
+                                for (Product defaultProduct : defaultProducts) {
+                                    if (!existingProductsMap.containsKey(defaultProduct.getName().toLowerCase())) {
+                                        getDao().addProduct(defaultProduct);
+                                    }
 
-                            progress += productStepProgress;
-                            publishProgress((int) progress);
-                        }
+                                    progress += productStepProgress;
+                                    publishProgress((int) progress);
+                                }
+                            }
+                        });
 
                         getDao().clearFirstLaunch();
 
@@ -560,8 +570,24 @@ public class ShopListActivity extends AppCompatActivity implements UnitHost {
         return dao;
     }
 
+    public AsyncDao getAsyncDao() {
+        if (asyncDao == null) {
+            asyncDao = new AsyncDao(getDao());
+        }
+
+        return asyncDao;
+    }
+
     private void initDao() {
-        dao = new SqlliteDao();
+        final long startTime = SystemClock.elapsedRealtime();
+
+        dao = BuildConfig.PLAIN_SQLITE_DAO
+                ? new PlainSqliteDao(Cache.openDatabase())
+                : new SqlliteDao();
+
+        Log.i("ShopListActivity", "initDao: dao created" +
+                ". class=" + dao.getClass().getSimpleName() +
+                ". durationMs=" + (SystemClock.elapsedRealtime() - startTime));
 
         if (dao.isFirstLaunch()) {
             this.firstLaunch = true;
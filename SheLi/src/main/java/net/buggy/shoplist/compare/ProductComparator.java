@@ -1,18 +1,25 @@
 package net.buggy.shoplist.compare;
 
+import net.buggy.shoplist.model.ModelHelper;
 import net.buggy.shoplist.model.Product;
 
 import java.util.Comparator;
 
+// the same order as the product pages of the dao: normalized name, then id
 public class ProductComparator implements Comparator<Product> {
 
     public static final ProductComparator INSTANCE = new ProductComparator();
 
     @Override
     public int compare(Product p1, Product p2) {
-        final String name1 = p1.getName();
-        final String name2 = p2.getName();
+        final String name1 = ModelHelper.normalizeName(p1.getName());
+        final String name2 = ModelHelper.normalizeName(p2.getName());
 
-        return CompareUtils.safeCompare(name1, name2);
+        final int nameCompare = CompareUtils.safeCompare(name1, name2);
+        if (nameCompare != 0) {
+            return nameCompare;
+        }
+
+        return CompareUtils.safeCompare(p1.getId(), p2.getId());
     }
 }
@@ -0,0 +1,144 @@
+package net.buggy.shoplist.data;
+
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.ShopItem;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs dao calls on a background thread and delivers the results to the UI thread.
+// A single thread keeps the calls in the submission order
+public class AsyncDao {
+
+    // shared by all the activities: a new activity instance (e.g. after a configuration change)
+    // doesn't start another thread and its writes are queued after the previous ones.
+    // The queue is unbounded: the caller is usually the UI thread, which should never wait for the dao
+    private static final ExecutorService IO_SERVICE = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("dao-io").setDaemon(true).build());
+
+    private final Dao dao;
+    private final ListeningExecutorService ioService;
+    private final Executor uiExecutor;
+
+    public AsyncDao(Dao dao) {
+        this(dao, IO_SERVICE, new MainThreadExecutor());
+    }
+
+    // unit tests usage
+    AsyncDao(Dao dao, ExecutorService ioService, Executor uiExecutor) {
+        this.dao = dao;
+        this.ioService = MoreExecutors.listeningDecorator(ioService);
+        this.uiExecutor = uiExecutor;
+    }
+
+    public Dao getDao() {
+        return dao;
+    }
+
+    public <T> ListenableFuture<T> submit(final DaoCall<T> call) {
+        return ioService.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return call.call(dao);
+            }
+        });
+    }
+
+    public <T> ListenableFuture<T> submit(DaoCall<T> call, final UiCallback<T> callback) {
+        final ListenableFuture<T> future = submit(call);
+
+        Futures.addCallback(future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                callback.onResult(result);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable throwable) {
+                callback.onFailure(throwable);
+            }
+        }, uiExecutor);
+
+        return future;
+    }
+
+    public ListenableFuture<List<Category>> getCategories(UiCallback<List<Category>> callback) {
+        return submit(new DaoCall<List<Category>>() {
+            @Override
+            public List<Category> call(Dao dao) {
+                return dao.getCategories();
+            }
+        }, callback);
+    }
+
+    public ListenableFuture<Product> findProductByName(
+            final String name, UiCallback<Product> callback) {
+
+        return submit(new DaoCall<Product>() {
+            @Override
+            public Product call(Dao dao) {
+                return dao.findProductByName(name);
+            }
+        }, callback);
+    }
+
+    public ListenableFuture<Integer> countProducts(
+            final ProductQuery query, UiCallback<Integer> callback) {
+
+        return submit(new DaoCall<Integer>() {
+            @Override
+            public Integer call(Dao dao) {
+                return dao.countProducts(query);
+            }
+        }, callback);
+    }
+
+    public ListenableFuture<List<ShopItem>> findLinkedItems(
+            final Product product, UiCallback<List<ShopItem>> callback) {
+
+        return submit(new DaoCall<List<ShopItem>>() {
+            @Override
+            public List<ShopItem> call(Dao dao) {
+                return dao.findLinkedItems(product);
+            }
+        }, callback);
+    }
+
+    public interface DaoCall<T> {
+        T call(Dao dao);
+    }
+
+    public static abstract class UiCallback<T> {
+        public abstract void onResult(T result);
+
+        public void onFailure(Throwable throwable) {
+            Log.e("AsyncDao", "onFailure: dao call failed", throwable);
+        }
+    }
+
+    private static final class MainThreadExecutor implements Executor {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            handler.post(command);
+        }
+    }
+}
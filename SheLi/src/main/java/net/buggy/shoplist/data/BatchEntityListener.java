@@ -0,0 +1,29 @@
+package net.buggy.shoplist.data;
+
+
+import net.buggy.shoplist.model.Entity;
+
+import java.util.Collection;
+
+// Listener, which can receive changes of several entities at once.
+// By default batches are passed to the single entity methods one by one
+public abstract class BatchEntityListener<T extends Entity> implements EntityListener<T> {
+
+    public void entitiesAdded(Collection<T> newEntities) {
+        for (T newEntity : newEntities) {
+            entityAdded(newEntity);
+        }
+    }
+
+    public void entitiesChanged(Collection<T> changedEntities) {
+        for (T changedEntity : changedEntities) {
+            entityChanged(changedEntity);
+        }
+    }
+
+    public void entitiesRemoved(Collection<T> removedEntities) {
+        for (T removedEntity : removedEntities) {
+            entityRemoved(removedEntity);
+        }
+    }
+}
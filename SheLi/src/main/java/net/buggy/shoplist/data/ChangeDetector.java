@@ -0,0 +1,68 @@
+package net.buggy.shoplist.data;
+
+
+import com.google.common.base.Objects;
+
+import net.buggy.shoplist.compare.CompareUtils;
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Entity;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.ShopItem;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+// Field-level comparison of an entity with its stored state
+final class ChangeDetector {
+
+    private ChangeDetector() {
+    }
+
+    static boolean isUnchanged(Category stored, Category category) {
+        if (stored == null) {
+            return false;
+        }
+
+        return Objects.equal(stored.getName(), category.getName())
+                && Objects.equal(stored.getColor(), category.getColor());
+    }
+
+    static boolean isUnchanged(Product stored, Product product) {
+        if (stored == null) {
+            return false;
+        }
+
+        return Objects.equal(stored.getName(), product.getName())
+                && (stored.getDefaultUnits() == product.getDefaultUnits())
+                && Objects.equal(stored.getPeriodCount(), product.getPeriodCount())
+                && (stored.getPeriodType() == product.getPeriodType())
+                && Objects.equal(stored.getLastBuyDate(), product.getLastBuyDate())
+                && getIds(stored.getCategories()).equals(getIds(product.getCategories()));
+    }
+
+    static boolean isUnchanged(ShopItem stored, ShopItem shopItem) {
+        if (stored == null) {
+            return false;
+        }
+
+        return (stored.isChecked() == shopItem.isChecked())
+                && (stored.getUnitOfMeasure() == shopItem.getUnitOfMeasure())
+                && Objects.equal(stored.getComment(), shopItem.getComment())
+                && (CompareUtils.safeCompare(stored.getQuantity(), shopItem.getQuantity()) == 0)
+                && Objects.equal(getId(stored.getProduct()), getId(shopItem.getProduct()));
+    }
+
+    private static Long getId(Entity entity) {
+        return (entity != null) ? entity.getId() : null;
+    }
+
+    private static Set<Long> getIds(Collection<? extends Entity> entities) {
+        final Set<Long> result = new HashSet<>();
+        for (Entity entity : entities) {
+            result.add(entity.getId());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package net.buggy.shoplist.data;
+
+
+import net.buggy.shoplist.model.Entity;
+
+import java.util.Date;
+
+public class ChangeLogEntry {
+
+    private final long seq;
+    private final Class<? extends Entity> entityClass;
+    private final Long internalId;
+    private final Operation operation;
+    private final Date timestamp;
+
+    public ChangeLogEntry(
+            long seq,
+            Class<? extends Entity> entityClass,
+            Long internalId,
+            Operation operation,
+            Date timestamp) {
+
+        this.seq = seq;
+        this.entityClass = entityClass;
+        this.internalId = internalId;
+        this.operation = operation;
+        this.timestamp = timestamp;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public Class<? extends Entity> getEntityClass() {
+        return entityClass;
+    }
+
+    public Long getInternalId() {
+        return internalId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeLogEntry{" +
+                "seq=" + seq +
+                ", entityClass=" + entityClass.getSimpleName() +
+                ", internalId=" + internalId +
+                ", operation=" + operation +
+                '}';
+    }
+
+    public enum Operation {
+        ADDED,
+        CHANGED,
+        REMOVED
+    }
+}
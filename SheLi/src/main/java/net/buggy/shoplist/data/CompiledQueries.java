@@ -0,0 +1,295 @@
+package net.buggy.shoplist.data;
+
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.Nullable;
+
+import net.buggy.shoplist.model.Entity;
+import net.buggy.shoplist.model.EntitySynchronizationRecord;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hand written queries for the lookups on the sync path and the change log. Statements
+// are compiled once and reused, rows are mapped from cursors without ActiveAndroid reflection
+class CompiledQueries {
+
+    private static final String SYNC_RECORD_COLUMNS =
+            "Id, EntityExternalId, EntityInternalId, Deleted, LastChangeDate, EntityType, ListId";
+
+    // the log is compacted in background after this number of appended changes
+    static final int CHANGE_LOG_COMPACTION_INTERVAL = 1000;
+
+    // removals are needed only by the readers, which are behind the log.
+    // Readers, which are behind the dropped removals, reload everything (see getCompactedSeq)
+    static final long REMOVED_CHANGES_RETENTION = TimeUnit.DAYS.toMillis(30);
+
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    // the last seq of the removals dropped by compaction. The readers keep their seq in memory,
+    // so the value is not persisted
+    private final AtomicLong compactedSeq = new AtomicLong();
+
+    private final SQLiteDatabase database;
+
+    private final String syncRecordsTable = Tables.SYNC_RECORDS;
+    private final String shopItemsTable = Tables.SHOP_ITEMS;
+    private final String changeLogTable = Tables.CHANGE_LOG;
+
+    CompiledQueries(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    long appendChange(Entity entity, ChangeLogEntry.Operation operation) {
+        final SQLiteStatement statement = getStatement("INSERT INTO " + changeLogTable
+                + " (EntityType, EntityInternalId, Operation, Timestamp) VALUES (?, ?, ?, ?)");
+
+        synchronized (statement) {
+            try {
+                statement.bindLong(1, EntityTypes.getCode(entity.getClass()));
+                statement.bindLong(2, entity.getId());
+                statement.bindString(3, operation.name());
+                statement.bindLong(4, System.currentTimeMillis());
+
+                return statement.executeInsert();
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    // the compacted seq is included, as compaction can drop the last change
+    long getLastChangeSeq() {
+        final Long lastSeq = queryLong("SELECT IFNULL(MAX(Id), 0) FROM " + changeLogTable);
+
+        return Math.max((lastSeq != null) ? lastSeq : 0, compactedSeq.get());
+    }
+
+    long getCompactedSeq() {
+        return compactedSeq.get();
+    }
+
+    List<ChangeLogEntry> findChangesSince(long seq) {
+        final List<ChangeLogEntry> result = new ArrayList<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id, EntityType, EntityInternalId, Operation, Timestamp FROM " + changeLogTable
+                        + " WHERE Id > ? ORDER BY Id",
+                new String[]{String.valueOf(seq)});
+        try {
+            while (cursor.moveToNext()) {
+                result.add(new ChangeLogEntry(
+                        cursor.getLong(0),
+                        EntityTypes.getEntityClass(cursor.getInt(1)),
+                        cursor.getLong(2),
+                        ChangeLogEntry.Operation.valueOf(cursor.getString(3)),
+                        new Date(cursor.getLong(4))));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    // only the last change of each entity is kept, old removals are dropped. Returns the number of deleted rows
+    int compactChangeLog() {
+        final long removedBefore = System.currentTimeMillis() - REMOVED_CHANGES_RETENTION;
+        final String removedOperation = ChangeLogEntry.Operation.REMOVED.name();
+
+        final Long lastDroppedSeq;
+        int deletedCount;
+
+        database.beginTransaction();
+        try {
+            lastDroppedSeq = queryLong("SELECT IFNULL(MAX(Id), 0) FROM " + changeLogTable
+                    + " WHERE Operation = ? AND Timestamp < ?", removedOperation, removedBefore);
+
+            deletedCount = database.delete(changeLogTable,
+                    "Id NOT IN (SELECT MAX(Id) FROM " + changeLogTable + " GROUP BY EntityType, EntityInternalId)",
+                    null);
+            deletedCount += database.delete(changeLogTable,
+                    "Operation = ? AND Timestamp < ?",
+                    new String[]{removedOperation, String.valueOf(removedBefore)});
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (lastDroppedSeq != null) {
+            updateCompactedSeq(lastDroppedSeq);
+        }
+
+        return deletedCount;
+    }
+
+    @Nullable
+    Long findInternalId(String externalId, String listId, Class<? extends Entity> entityClass) {
+        return queryLong("SELECT EntityInternalId FROM " + syncRecordsTable
+                        + " WHERE EntityExternalId = ? AND ListId = ? AND EntityType = ?",
+                externalId, listId, (long) EntityTypes.getCode(entityClass));
+    }
+
+    @Nullable
+    Long findIdByNormalizedName(String tableName, String normalizedName) {
+        return queryLong("SELECT Id FROM " + tableName
+                + " WHERE NormalizedName = ?", normalizedName);
+    }
+
+    @Nullable
+    Long findShopItemIdByProduct(Long productId) {
+        return queryLong("SELECT Id FROM " + shopItemsTable + " WHERE Product = ?", productId);
+    }
+
+    @Nullable
+    <E extends Entity> EntitySynchronizationRecord<E> findSyncRecord(
+            Long internalId, String listId, Class<E> entityClass) {
+
+        return querySyncRecord("EntityInternalId = ? AND EntityType = ? AND ListId = ?",
+                internalId, EntityTypes.getCode(entityClass), listId);
+    }
+
+    @Nullable
+    <E extends Entity> EntitySynchronizationRecord<E> findSyncRecord(
+            String externalId, String listId, Class<E> entityClass) {
+
+        return querySyncRecord("EntityExternalId = ? AND ListId = ? AND EntityType = ?",
+                externalId, listId, EntityTypes.getCode(entityClass));
+    }
+
+    <E extends Entity> List<EntitySynchronizationRecord<E>> findSyncRecords(String where, Object... args) {
+        final List<EntitySynchronizationRecord<E>> result = new ArrayList<>();
+        if (hasNullArgument(args)) {
+            return result;
+        }
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT " + SYNC_RECORD_COLUMNS + " FROM " + syncRecordsTable + " WHERE " + where,
+                toStringArgs(args));
+        try {
+            while (cursor.moveToNext()) {
+                result.add(this.<E>toSyncRecord(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    private void updateCompactedSeq(long seq) {
+        long currentSeq = compactedSeq.get();
+        while ((seq > currentSeq) && !compactedSeq.compareAndSet(currentSeq, seq)) {
+            currentSeq = compactedSeq.get();
+        }
+    }
+
+    @Nullable
+    private Long queryLong(String sql, Object... args) {
+        if (hasNullArgument(args)) {
+            return null;
+        }
+
+        final SQLiteStatement statement = getStatement(sql);
+
+        synchronized (statement) {
+            try {
+                for (int i = 0; i < args.length; i++) {
+                    final Object arg = args[i];
+
+                    if (arg instanceof Long) {
+                        statement.bindLong(i + 1, (Long) arg);
+                    } else {
+                        statement.bindString(i + 1, arg.toString());
+                    }
+                }
+
+                return statement.simpleQueryForLong();
+
+            } catch (SQLiteDoneException e) {
+                return null;
+
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    @Nullable
+    private <E extends Entity> EntitySynchronizationRecord<E> querySyncRecord(String where, Object... args) {
+        if (hasNullArgument(args)) {
+            return null;
+        }
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT " + SYNC_RECORD_COLUMNS + " FROM " + syncRecordsTable
+                        + " WHERE " + where + " LIMIT 1",
+                toStringArgs(args));
+        try {
+            if (!cursor.moveToNext()) {
+                return null;
+            }
+
+            return toSyncRecord(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // columns order is defined by SYNC_RECORD_COLUMNS
+    @SuppressWarnings("unchecked")
+    private <E extends Entity> EntitySynchronizationRecord<E> toSyncRecord(Cursor cursor) {
+        final EntitySynchronizationRecord<E> record = new EntitySynchronizationRecord<>();
+        record.setId(cursor.getLong(0));
+        record.setExternalId(cursor.getString(1));
+        record.setInternalId(cursor.getLong(2));
+        record.setDeleted(!cursor.isNull(3) && (cursor.getInt(3) != 0));
+        record.setLastChangeDate(cursor.isNull(4) ? null : new Date(cursor.getLong(4)));
+        record.setEntityClass((Class<E>) EntityTypes.getEntityClass(cursor.getInt(5)));
+        record.setListId(cursor.getString(6));
+
+        return record;
+    }
+
+    private SQLiteStatement getStatement(String sql) {
+        synchronized (statements) {
+            SQLiteStatement statement = statements.get(sql);
+
+            if (statement == null) {
+                statement = database.compileStatement(sql);
+                statements.put(sql, statement);
+            }
+
+            return statement;
+        }
+    }
+
+    private static String[] toStringArgs(Object[] args) {
+        final String[] result = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = args[i].toString();
+        }
+
+        return result;
+    }
+
+    // "column = NULL" never matches, so there is no need to query
+    private static boolean hasNullArgument(Object[] args) {
+        for (Object arg : args) {
+            if (arg == null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
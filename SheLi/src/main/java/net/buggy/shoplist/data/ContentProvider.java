@@ -1,11 +1,24 @@
 package net.buggy.shoplist.data;
 
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.activeandroid.Cache;
 import com.activeandroid.Configuration;
 import com.activeandroid.Model;
 import com.activeandroid.serializer.BigDecimalSerializer;
 
 public class ContentProvider extends com.activeandroid.content.ContentProvider {
 
+    @Override
+    public boolean onCreate() {
+        final boolean result = super.onCreate();
+
+        enableWriteAheadLogging();
+
+        return result;
+    }
+
     @Override
     protected Configuration getConfiguration() {
         final Configuration.Builder builder = new Configuration.Builder(getContext());
@@ -17,4 +30,20 @@ public class ContentProvider extends com.activeandroid.content.ContentProvider {
 
         return builder.create();
     }
+
+    // In WAL mode SQLiteDatabase keeps a pool of read connections next to the single
+    // write connection, so queries of UI and background threads don't wait for sync writes.
+    // ActiveAndroid configuration has no such option, so it's enabled on the opened database
+    private static void enableWriteAheadLogging() {
+        final SQLiteDatabase database = Cache.openDatabase();
+
+        final boolean enabled = database.enableWriteAheadLogging();
+        if (!enabled) {
+            Log.w("ContentProvider", "enableWriteAheadLogging: WAL mode is not supported" +
+                    ". path=" + database.getPath());
+            return;
+        }
+
+        Log.i("ContentProvider", "enableWriteAheadLogging: WAL mode enabled");
+    }
 }
@@ -29,12 +29,24 @@ public interface Dao {
 
     List<Product> getProducts();
 
+    // products ordered by name, loaded page by page
+    PageSource<Product> getProducts(ProductQuery query, int pageSize);
+
+    int countProducts(ProductQuery query);
+
+    // products with name words starting with the query words.
+    // Exact and leading matches go first, then shorter names
+    List<Product> searchProducts(String query, int limit);
+
     void saveProduct(Product product);
 
     void removeShopItem(ShopItem shopItem);
 
     void removeProduct(Product product);
 
+    // removes the product together with its shop items
+    void removeProductCascade(Product product);
+
     void saveShopItem(ShopItem shopItem);
 
     void addCategory(Category category);
@@ -45,10 +57,16 @@ public interface Dao {
 
     void saveCategory(Category category);
 
+    // settings and metadata are read from memory. Changes are written in background,
+    // settings listeners are notified when they are saved
     Settings getSettings();
 
     void saveSettings(Settings settings);
 
+    void addSettingsListener(SettingsListener listener);
+
+    void removeSettingsListener(SettingsListener listener);
+
     Product findProduct(Long id);
 
     Category findCategory(Long id);
@@ -98,6 +116,25 @@ public interface Dao {
     <T extends Entity> List<EntitySynchronizationRecord<T>> loadSynchronizationRecords(
             @Nullable Class<T> entityClass, String listId);
 
+    // deleted records of all the lists
+    List<EntitySynchronizationRecord<Entity>> loadDeletedSynchronizationRecords();
+
     <T extends Entity> Map<String, T> mapExternalIds(Set<T> entities, String listId) throws MissingExternalIdException;
+
+    // runs all the changes in a single transaction, listeners are notified after the commit
+    void runInTransaction(Runnable action);
+
+    // changes of categories, products and shop items logged after the seq, oldest first.
+    // The log is compacted: only the last change of an entity is kept
+    List<ChangeLogEntry> changesSince(long seq);
+
+    long getLastChangeSeq();
+
+    // removals up to this seq are dropped from the log by compaction.
+    // Readers, whose last seq is below it, should reload everything instead of reading the changes
+    long getCompactedChangeSeq();
+
+    // saves of unchanged entities, which were skipped without a database write
+    long getSuppressedWritesCount();
 }
 
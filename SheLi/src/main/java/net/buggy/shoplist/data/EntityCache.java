@@ -0,0 +1,237 @@
+package net.buggy.shoplist.data;
+
+
+import android.support.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.ShopItem;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Identity map of loaded entities. Stores private copies and always returns new copies,
+// so callers can modify returned entities without affecting the cache
+class EntityCache implements Serializable {
+
+    private final Map<Long, Category> categories = new LinkedHashMap<>();
+    private final Map<Long, Product> products = new LinkedHashMap<>();
+    private final Map<Long, ShopItem> shopItems = new LinkedHashMap<>();
+
+    private boolean loaded = false;
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized void load(
+            Map<Long, Category> categories,
+            Map<Long, Product> products,
+            Map<Long, ShopItem> shopItems) {
+
+        this.categories.clear();
+        this.products.clear();
+        this.shopItems.clear();
+
+        for (Category category : categories.values()) {
+            this.categories.put(category.getId(), copy(category));
+        }
+        for (Product product : products.values()) {
+            this.products.put(product.getId(), copy(product, this.categories));
+        }
+        for (ShopItem shopItem : shopItems.values()) {
+            this.shopItems.put(shopItem.getId(), copy(shopItem, this.products));
+        }
+
+        loaded = true;
+    }
+
+    public synchronized void invalidate() {
+        categories.clear();
+        products.clear();
+        shopItems.clear();
+
+        loaded = false;
+    }
+
+    public synchronized List<Category> getCategories() {
+        return ImmutableList.copyOf(copyCategories().values());
+    }
+
+    public synchronized List<Product> getProducts() {
+        return ImmutableList.copyOf(copyProducts(copyCategories()).values());
+    }
+
+    public synchronized List<ShopItem> getShopItems() {
+        final Map<Long, Product> copiedProducts = copyProducts(copyCategories());
+
+        final List<ShopItem> result = new ArrayList<>(shopItems.size());
+        for (ShopItem shopItem : shopItems.values()) {
+            result.add(copy(shopItem, copiedProducts));
+        }
+
+        return result;
+    }
+
+    @Nullable
+    public synchronized Category findCategory(Long id) {
+        final Category category = categories.get(id);
+
+        return (category != null) ? copy(category) : null;
+    }
+
+    @Nullable
+    public synchronized Product findProduct(Long id) {
+        final Product product = products.get(id);
+
+        return (product != null) ? copy(product, null) : null;
+    }
+
+    @Nullable
+    public synchronized ShopItem findShopItem(Long id) {
+        final ShopItem shopItem = shopItems.get(id);
+
+        return (shopItem != null) ? copy(shopItem, null) : null;
+    }
+
+    public synchronized void putCategory(Category category) {
+        if (!loaded) {
+            return;
+        }
+
+        categories.put(category.getId(), copy(category));
+    }
+
+    public synchronized void putProduct(Product product) {
+        if (!loaded) {
+            return;
+        }
+
+        products.put(product.getId(), copy(product, categories));
+    }
+
+    public synchronized void putShopItem(ShopItem shopItem) {
+        if (!loaded) {
+            return;
+        }
+
+        shopItems.put(shopItem.getId(), copy(shopItem, products));
+    }
+
+    public synchronized void removeCategory(Category category) {
+        if (!loaded) {
+            return;
+        }
+
+        final Category removedCategory = categories.remove(category.getId());
+        if (removedCategory == null) {
+            return;
+        }
+
+        for (Product product : products.values()) {
+            product.removeCategory(removedCategory);
+        }
+    }
+
+    public synchronized void removeProduct(Product product) {
+        if (!loaded) {
+            return;
+        }
+
+        products.remove(product.getId());
+    }
+
+    public synchronized void removeShopItem(ShopItem shopItem) {
+        if (!loaded) {
+            return;
+        }
+
+        shopItems.remove(shopItem.getId());
+    }
+
+    private Map<Long, Category> copyCategories() {
+        final Map<Long, Category> result = new LinkedHashMap<>();
+        for (Category category : categories.values()) {
+            result.put(category.getId(), copy(category));
+        }
+
+        return result;
+    }
+
+    private Map<Long, Product> copyProducts(Map<Long, Category> copiedCategories) {
+        final Map<Long, Product> result = new LinkedHashMap<>();
+        for (Product product : products.values()) {
+            result.put(product.getId(), copy(product, copiedCategories));
+        }
+
+        return result;
+    }
+
+    private static Category copy(Category category) {
+        final Category result = new Category();
+        result.setId(category.getId());
+        result.setName(category.getName());
+        result.setColor(category.getColor());
+
+        return result;
+    }
+
+    private Product copy(Product product, @Nullable Map<Long, Category> categoriesMap) {
+        final Product result = new Product();
+        result.setId(product.getId());
+        result.setName(product.getName());
+        result.setDefaultUnits(product.getDefaultUnits());
+        result.setPeriodCount(product.getPeriodCount());
+        result.setPeriodType(product.getPeriodType());
+        result.setLastBuyDate(product.getLastBuyDate());
+
+        final Set<Category> productCategories = new LinkedHashSet<>();
+        for (Category category : product.getCategories()) {
+            Category linkedCategory = (categoriesMap != null)
+                    ? categoriesMap.get(category.getId())
+                    : null;
+
+            if (linkedCategory == null) {
+                final Category cachedCategory = categories.get(category.getId());
+                linkedCategory = copy((cachedCategory != null) ? cachedCategory : category);
+            }
+
+            productCategories.add(linkedCategory);
+        }
+        result.setCategories(productCategories);
+
+        return result;
+    }
+
+    private ShopItem copy(ShopItem shopItem, @Nullable Map<Long, Product> productsMap) {
+        final ShopItem result = new ShopItem();
+        result.setId(shopItem.getId());
+        result.setQuantity(shopItem.getQuantity());
+        result.setComment(shopItem.getComment());
+        result.setUnitOfMeasure(shopItem.getUnitOfMeasure());
+        result.setChecked(shopItem.isChecked());
+
+        final Product product = shopItem.getProduct();
+        if (product != null) {
+            Product linkedProduct = (productsMap != null)
+                    ? productsMap.get(product.getId())
+                    : null;
+
+            if (linkedProduct == null) {
+                final Product cachedProduct = products.get(product.getId());
+                linkedProduct = copy((cachedProduct != null) ? cachedProduct : product, null);
+            }
+
+            result.setProduct(linkedProduct);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package net.buggy.shoplist.data;
+
+
+import net.buggy.shoplist.data.ChangeLogEntry.Operation;
+import net.buggy.shoplist.model.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Delivers dao events to the entity listeners. Events of a transaction are collected
+// and delivered after the commit, consecutive events of the same type and class as one batch
+class EntityNotifier {
+
+    private final ListenerRegistry listeners = new ListenerRegistry();
+
+    private final ThreadLocal<List<EntityChange>> transactionChanges = new ThreadLocal<>();
+
+    public <T extends Entity> void addListener(Class<T> entityClass, EntityListener<T> listener) {
+        listeners.add(entityClass, listener);
+    }
+
+    public <T extends Entity> void removeListener(Class<T> entityClass, EntityListener<T> listener) {
+        listeners.remove(entityClass, listener);
+    }
+
+    public boolean isInTransaction() {
+        return transactionChanges.get() != null;
+    }
+
+    public void beginTransaction() {
+        if (isInTransaction()) {
+            throw new IllegalStateException("Transaction is already started");
+        }
+
+        transactionChanges.set(new ArrayList<EntityChange>());
+    }
+
+    // events of a failed transaction are dropped
+    public void endTransaction(boolean successful) {
+        final List<EntityChange> changes = transactionChanges.get();
+        if (changes == null) {
+            throw new IllegalStateException("Transaction is not started");
+        }
+
+        transactionChanges.remove();
+
+        if (successful) {
+            dispatchChanges(changes);
+        }
+    }
+
+    public void notify(Operation type, Entity entity) {
+        final List<EntityChange> pendingChanges = transactionChanges.get();
+        if (pendingChanges != null) {
+            pendingChanges.add(new EntityChange(type, entity));
+            return;
+        }
+
+        for (EntityListener<?> listener : listeners.get(entity.getClass())) {
+            notifyListener(type, listener, entity);
+        }
+    }
+
+    private void dispatchChanges(List<EntityChange> changes) {
+        int batchStart = 0;
+        while (batchStart < changes.size()) {
+            final EntityChange firstChange = changes.get(batchStart);
+
+            final List<Entity> batch = new ArrayList<>();
+            batch.add(firstChange.entity);
+
+            int batchEnd = batchStart + 1;
+            while (batchEnd < changes.size()) {
+                final EntityChange change = changes.get(batchEnd);
+                if ((change.type != firstChange.type)
+                        || (change.entity.getClass() != firstChange.entity.getClass())) {
+                    break;
+                }
+
+                batch.add(change.entity);
+                batchEnd++;
+            }
+
+            notifyListeners(firstChange.type, firstChange.entity.getClass(), batch);
+
+            batchStart = batchEnd;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void notifyListeners(Operation type, Class<? extends Entity> entityClass, List<Entity> entities) {
+        for (EntityListener<?> listener : listeners.get(entityClass)) {
+            if ((entities.size() > 1) && (listener instanceof BatchEntityListener)) {
+                notifyBatchListener(type, (BatchEntityListener<Entity>) listener, entities);
+                continue;
+            }
+
+            for (Entity entity : entities) {
+                notifyListener(type, listener, entity);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void notifyListener(Operation type, EntityListener<?> listener, Entity entity) {
+        final EntityListener<Entity> entityListener = (EntityListener<Entity>) listener;
+
+        switch (type) {
+            case ADDED:
+                entityListener.entityAdded(entity);
+                break;
+            case CHANGED:
+                entityListener.entityChanged(entity);
+                break;
+            case REMOVED:
+                entityListener.entityRemoved(entity);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported change type " + type);
+        }
+    }
+
+    private static void notifyBatchListener(
+            Operation type, BatchEntityListener<Entity> listener, List<Entity> entities) {
+
+        switch (type) {
+            case ADDED:
+                listener.entitiesAdded(entities);
+                break;
+            case CHANGED:
+                listener.entitiesChanged(entities);
+                break;
+            case REMOVED:
+                listener.entitiesRemoved(entities);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported change type " + type);
+        }
+    }
+
+    private static final class EntityChange {
+        private final Operation type;
+        private final Entity entity;
+
+        private EntityChange(Operation type, Entity entity) {
+            this.type = type;
+            this.entity = entity;
+        }
+    }
+}
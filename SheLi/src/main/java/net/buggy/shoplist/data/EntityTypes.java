@@ -0,0 +1,41 @@
+package net.buggy.shoplist.data;
+
+
+import com.google.common.collect.ImmutableBiMap;
+
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Entity;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.ShopItem;
+
+// Persistent type codes of synchronized entities. Codes are stored in the database,
+// so existing values should never be changed or reused
+final class EntityTypes {
+
+    private static final ImmutableBiMap<Integer, Class<? extends Entity>> TYPES =
+            ImmutableBiMap.<Integer, Class<? extends Entity>>of(
+                    1, Category.class,
+                    2, Product.class,
+                    3, ShopItem.class);
+
+    private EntityTypes() {
+    }
+
+    static int getCode(Class<? extends Entity> entityClass) {
+        final Integer code = TYPES.inverse().get(entityClass);
+        if (code == null) {
+            throw new IllegalArgumentException("Unsupported entity class " + entityClass);
+        }
+
+        return code;
+    }
+
+    static Class<? extends Entity> getEntityClass(int code) {
+        final Class<? extends Entity> entityClass = TYPES.get(code);
+        if (entityClass == null) {
+            throw new IllegalStateException("Unknown entity type code " + code);
+        }
+
+        return entityClass;
+    }
+}
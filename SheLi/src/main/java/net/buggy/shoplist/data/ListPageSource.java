@@ -0,0 +1,78 @@
+package net.buggy.shoplist.data;
+
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.LinkedList;
+import java.util.List;
+
+// Page source over an already loaded list
+public class ListPageSource<T> implements PageSource<T> {
+
+    private final List<T> entities;
+    private final int pageSize;
+
+    // sizes of the loaded pages, the window is [start, end)
+    private final LinkedList<Integer> pageSizes = new LinkedList<>();
+    private int start = 0;
+    private int end = 0;
+
+    public ListPageSource(List<T> entities, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size should be positive: " + pageSize);
+        }
+
+        this.entities = ImmutableList.copyOf(entities);
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public synchronized List<T> loadNextPage() {
+        final int pageEnd = Math.min(end + pageSize, entities.size());
+
+        final List<T> page = entities.subList(end, pageEnd);
+        if (!page.isEmpty()) {
+            pageSizes.addLast(page.size());
+            end = pageEnd;
+        }
+
+        return page;
+    }
+
+    @Override
+    public synchronized boolean hasMore() {
+        return end < entities.size();
+    }
+
+    @Override
+    public synchronized List<T> loadPreviousPage() {
+        final int pageStart = Math.max(start - pageSize, 0);
+
+        final List<T> page = entities.subList(pageStart, start);
+        if (!page.isEmpty()) {
+            pageSizes.addFirst(page.size());
+            start = pageStart;
+        }
+
+        return page;
+    }
+
+    @Override
+    public synchronized boolean hasPrevious() {
+        return start > 0;
+    }
+
+    @Override
+    public synchronized void dropFirstPage() {
+        if (!pageSizes.isEmpty()) {
+            start += pageSizes.removeFirst();
+        }
+    }
+
+    @Override
+    public synchronized void dropLastPage() {
+        if (!pageSizes.isEmpty()) {
+            end -= pageSizes.removeLast();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.buggy.shoplist.data;
+
+
+import net.buggy.shoplist.model.Entity;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Copy-on-write registry of entity listeners. Registration replaces the immutable listeners
+// array of the class, so dispatch reads the current array without locks and allocations
+class ListenerRegistry {
+
+    private static final EntityListener<?>[] NO_LISTENERS = new EntityListener<?>[0];
+
+    private final ConcurrentMap<Class<? extends Entity>, EntityListener<?>[]> listeners =
+            new ConcurrentHashMap<>();
+
+    // the returned array should not be modified
+    public EntityListener<?>[] get(Class<? extends Entity> entityClass) {
+        final EntityListener<?>[] classListeners = listeners.get(entityClass);
+
+        return (classListeners != null) ? classListeners : NO_LISTENERS;
+    }
+
+    public void add(Class<? extends Entity> entityClass, EntityListener<?> listener) {
+        while (true) {
+            final EntityListener<?>[] current = listeners.get(entityClass);
+
+            if (current == null) {
+                if (listeners.putIfAbsent(entityClass, new EntityListener<?>[]{listener}) == null) {
+                    return;
+                }
+                continue;
+            }
+
+            if (indexOf(current, listener) >= 0) {
+                return;
+            }
+
+            final EntityListener<?>[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+
+            if (listeners.replace(entityClass, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    public void remove(Class<? extends Entity> entityClass, EntityListener<?> listener) {
+        while (true) {
+            final EntityListener<?>[] current = listeners.get(entityClass);
+            if (current == null) {
+                return;
+            }
+
+            final int index = indexOf(current, listener);
+            if (index < 0) {
+                return;
+            }
+
+            if (current.length == 1) {
+                if (listeners.remove(entityClass, current)) {
+                    return;
+                }
+                continue;
+            }
+
+            final EntityListener<?>[] updated = new EntityListener<?>[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+
+            if (listeners.replace(entityClass, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    private static int indexOf(EntityListener<?>[] listeners, EntityListener<?> listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
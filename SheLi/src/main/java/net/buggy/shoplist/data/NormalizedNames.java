@@ -0,0 +1,93 @@
+package net.buggy.shoplist.data;
+
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.common.base.Strings;
+
+import net.buggy.shoplist.model.ModelHelper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Fills normalized names of migrated rows. sqlite lower() cannot be used, it works for ASCII only.
+// Names, which differ only in case, would violate the unique index, so such duplicates are renamed
+// with a numeric suffix. Rows are processed by id, so the oldest row keeps the original name
+final class NormalizedNames {
+
+    private NormalizedNames() {
+    }
+
+    // returns the number of renamed rows
+    static int backfill(SQLiteDatabase database, String tableName) {
+        final Map<Long, String> names = new LinkedHashMap<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id, Name FROM " + tableName + " WHERE NormalizedName IS NULL ORDER BY Id",
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                names.put(cursor.getLong(0), Strings.nullToEmpty(cursor.getString(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (names.isEmpty()) {
+            return 0;
+        }
+
+        final long startTime = SystemClock.elapsedRealtime();
+        int renamedCount = 0;
+
+        database.beginTransaction();
+        try {
+            for (Map.Entry<Long, String> entry : names.entrySet()) {
+                final String name = entry.getValue();
+
+                String uniqueName = name;
+                for (int i = 2; isNameTaken(database, tableName, uniqueName); i++) {
+                    uniqueName = name + " (" + i + ")";
+                }
+
+                final ContentValues values = new ContentValues();
+                values.put("NormalizedName", ModelHelper.normalizeName(uniqueName));
+
+                if (!uniqueName.equals(name)) {
+                    values.put("Name", uniqueName);
+                    renamedCount++;
+
+                    Log.w("NormalizedNames", "backfill: duplicate name renamed" +
+                            ". table=" + tableName + ", name=" + name + ", newName=" + uniqueName);
+                }
+
+                database.update(tableName, values, "Id = ?", new String[]{String.valueOf(entry.getKey())});
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        Log.i("NormalizedNames", "backfill: normalized names filled" +
+                ". table=" + tableName + ", count=" + names.size() + ", renamed=" + renamedCount
+                + ", durationMs=" + (SystemClock.elapsedRealtime() - startTime));
+
+        return renamedCount;
+    }
+
+    private static boolean isNameTaken(SQLiteDatabase database, String tableName, String name) {
+        final Cursor cursor = database.rawQuery(
+                "SELECT 1 FROM " + tableName + " WHERE NormalizedName = ? LIMIT 1",
+                new String[]{ModelHelper.normalizeName(name)});
+        try {
+            return cursor.moveToNext();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.buggy.shoplist.data;
+
+
+import java.util.List;
+
+// Loads entities page by page, so only the requested part is materialized.
+// Loaded pages form a window, which can grow and shrink at both ends
+public interface PageSource<T> {
+
+    // returns an empty list when there are no more entities
+    List<T> loadNextPage();
+
+    boolean hasMore();
+
+    // loads the page before the first loaded page. Returns an empty list when there are no such entities
+    List<T> loadPreviousPage();
+
+    boolean hasPrevious();
+
+    // forgets the first loaded page, it can be loaded again by loadPreviousPage
+    void dropFirstPage();
+
+    // forgets the last loaded page, it can be loaded again by loadNextPage
+    void dropLastPage();
+}
@@ -0,0 +1,1118 @@
+package net.buggy.shoplist.data;
+
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import net.buggy.shoplist.data.ChangeLogEntry.Operation;
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Entity;
+import net.buggy.shoplist.model.EntitySynchronizationRecord;
+import net.buggy.shoplist.model.Language;
+import net.buggy.shoplist.model.MissingExternalIdException;
+import net.buggy.shoplist.model.ModelHelper;
+import net.buggy.shoplist.model.PeriodType;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.Settings;
+import net.buggy.shoplist.model.ShopItem;
+import net.buggy.shoplist.model.UnitOfMeasure;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Dao over the same tables as SqlliteDao, written directly against SQLiteDatabase.
+// Rows are mapped from cursors, so reads don't create ActiveAndroid models and don't use reflection.
+// Schema and migrations are still owned by ActiveAndroid, which opens the database
+@SuppressWarnings("HardCodedStringLiteral")
+public class PlainSqliteDao implements Dao {
+
+    private static final ExecutorService MAINTENANCE_SERVICE = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("plain-dao-maintenance").setDaemon(true).build());
+
+    // settings are changed by the user, so they are not queued behind the maintenance
+    private static final ExecutorService SETTINGS_SERVICE = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("plain-dao-settings").setDaemon(true).build());
+
+    private static final Set<Class<? extends Entity>> LOGGED_CLASSES = ImmutableSet.of(
+            Category.class, Product.class, ShopItem.class);
+
+    private static final String CATEGORY_COLUMNS = "Id, Name, Color";
+    private static final String PRODUCT_COLUMNS =
+            "Id, Name, UnitOfMeasure, PeriodCount, PeriodType, LastBuyDate";
+    private static final String SHOP_ITEM_COLUMNS =
+            "Id, Product, Quantity, Comment, UnitOfMeasure, Checked";
+
+    private final SQLiteDatabase database;
+
+    private final CompiledQueries compiledQueries;
+
+    private final EntityNotifier notifier = new EntityNotifier();
+
+    private final EntityCache cache = new EntityCache();
+
+    // saves of unchanged entities, which were skipped
+    private final AtomicLong suppressedWrites = new AtomicLong();
+
+    // the change log is compacted after every CHANGE_LOG_COMPACTION_INTERVAL changes
+    private final AtomicLong appendedChanges = new AtomicLong();
+
+    private long metadataId;
+
+    private final SettingsStore settingsStore;
+
+    private final Executor maintenanceExecutor;
+
+    public PlainSqliteDao(SQLiteDatabase database) {
+        this(database, MAINTENANCE_SERVICE, SETTINGS_SERVICE);
+    }
+
+    PlainSqliteDao(SQLiteDatabase database, Executor maintenanceExecutor, Executor settingsExecutor) {
+        this.database = database;
+        this.compiledQueries = new CompiledQueries(database);
+        this.maintenanceExecutor = maintenanceExecutor;
+
+        this.settingsStore = new SettingsStore(loadSettingsSnapshot(), new SettingsStore.Persister() {
+            @Override
+            public void persist(SettingsSnapshot snapshot) {
+                persistSettings(snapshot);
+            }
+        }, settingsExecutor);
+
+        ProductSearchIndex.ensureCreated(database);
+
+        maintenanceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fillNormalizedNames();
+                } catch (Exception e) {
+                    Log.e("PlainSqliteDao", "fillNormalizedNames: failed to fill normalized names", e);
+                }
+
+                try {
+                    fillSearchWords();
+                } catch (Exception e) {
+                    Log.e("PlainSqliteDao", "fillSearchWords: failed to fill search words", e);
+                }
+
+                try {
+                    cleanDb();
+                } catch (Exception e) {
+                    Log.e("PlainSqliteDao", "cleanDb: failed to clean database", e);
+                }
+
+                try {
+                    compactChangeLog();
+                } catch (Exception e) {
+                    Log.e("PlainSqliteDao", "compactChangeLog: failed to compact change log", e);
+                }
+            }
+        });
+    }
+
+    private SettingsSnapshot loadSettingsSnapshot() {
+        final Settings settings = loadSettings();
+        final Language language = (settings != null) ? settings.getLanguage() : null;
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id, FirstLaunch, ShowTips FROM " + Tables.METADATA + " ORDER BY Id LIMIT 1",
+                null);
+        try {
+            if (cursor.moveToNext()) {
+                metadataId = cursor.getLong(0);
+                return new SettingsSnapshot(language, getBoolean(cursor, 1), getBoolean(cursor, 2));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final ContentValues values = new ContentValues();
+        values.put("FirstLaunch", true);
+        values.put("ShowTips", true);
+
+        metadataId = database.insertOrThrow(Tables.METADATA, null, values);
+
+        return new SettingsSnapshot(language, true, true);
+    }
+
+    private void persistSettings(SettingsSnapshot snapshot) {
+        database.beginTransaction();
+        try {
+            final ContentValues metadataValues = new ContentValues();
+            metadataValues.put("FirstLaunch", snapshot.isFirstLaunch());
+            metadataValues.put("ShowTips", snapshot.isShowTips());
+            updateById(Tables.METADATA, metadataId, metadataValues);
+
+            final ContentValues settingsValues = toValues(snapshot.toSettings());
+            final Settings storedSettings = loadSettings();
+            if (storedSettings == null) {
+                database.insertOrThrow(Tables.SETTINGS, null, settingsValues);
+            } else {
+                updateById(Tables.SETTINGS, storedSettings.getId(), settingsValues);
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private void fillNormalizedNames() {
+        final int renamedCount = NormalizedNames.backfill(database, Tables.CATEGORIES)
+                + NormalizedNames.backfill(database, Tables.PRODUCTS);
+
+        // renamed duplicates could be already loaded with the old names
+        if (renamedCount > 0) {
+            cache.invalidate();
+        }
+    }
+
+    private void fillSearchWords() {
+        ProductSearchIndex.backfill(database);
+    }
+
+    private void cleanDb() {
+        final long startTime = SystemClock.elapsedRealtime();
+
+        database.delete(Tables.SHOP_ITEMS,
+                "Product IS NULL OR Product NOT IN (SELECT Id FROM " + Tables.PRODUCTS + ")",
+                null);
+
+        Log.i("PlainSqliteDao", "cleanDb: orphan shop items deleted" +
+                ". durationMs=" + (SystemClock.elapsedRealtime() - startTime));
+    }
+
+    private void compactChangeLog() {
+        final long startTime = SystemClock.elapsedRealtime();
+
+        final int deletedCount = compiledQueries.compactChangeLog();
+
+        Log.i("PlainSqliteDao", "compactChangeLog: change log compacted" +
+                ". deleted=" + deletedCount
+                + ", suppressedWrites=" + getSuppressedWritesCount()
+                + ", durationMs=" + (SystemClock.elapsedRealtime() - startTime));
+    }
+
+    @Override
+    public boolean isFirstLaunch() {
+        return settingsStore.getSnapshot().isFirstLaunch();
+    }
+
+    @Override
+    public boolean isShowTips() {
+        return settingsStore.getSnapshot().isShowTips();
+    }
+
+    @Override
+    public void clearFirstLaunch() {
+        settingsStore.clearFirstLaunch();
+    }
+
+    @Override
+    public void setShowTips(boolean showTips) {
+        settingsStore.setShowTips(showTips);
+    }
+
+    private EntityCache getCache() {
+        synchronized (cache) {
+            if (!cache.isLoaded()) {
+                final Map<Long, Category> categories = loadCategories();
+                final Map<Long, Product> products = loadProducts(categories);
+                final Map<Long, ShopItem> shopItems = loadShopItems(products);
+
+                cache.load(categories, products, shopItems);
+            }
+        }
+
+        return cache;
+    }
+
+    private Map<Long, Category> loadCategories() {
+        final Map<Long, Category> result = new ConcurrentHashMap<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT " + CATEGORY_COLUMNS + " FROM " + Tables.CATEGORIES, null);
+        try {
+            while (cursor.moveToNext()) {
+                final Category category = new Category();
+                category.setId(cursor.getLong(0));
+                category.setName(cursor.getString(1));
+                category.setColor(cursor.isNull(2) ? null : cursor.getInt(2));
+
+                result.put(category.getId(), category);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    private Map<Long, Product> loadProducts(Map<Long, Category> categories) {
+        final Multimap<Long, Long> productCategoryIds = LinkedHashMultimap.create();
+
+        final Cursor linksCursor = database.rawQuery(
+                "SELECT product, category FROM " + Tables.PRODUCT_CATEGORY_LINKS, null);
+        try {
+            while (linksCursor.moveToNext()) {
+                productCategoryIds.put(linksCursor.getLong(0), linksCursor.getLong(1));
+            }
+        } finally {
+            linksCursor.close();
+        }
+
+        final Map<Long, Product> result = new LinkedHashMap<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT " + PRODUCT_COLUMNS + " FROM " + Tables.PRODUCTS, null);
+        try {
+            while (cursor.moveToNext()) {
+                final Product product = new Product();
+                product.setId(cursor.getLong(0));
+                product.setName(cursor.getString(1));
+                product.setDefaultUnits(getEnum(cursor, 2, UnitOfMeasure.class));
+                product.setPeriodCount(cursor.isNull(3) ? null : cursor.getInt(3));
+                product.setPeriodType(getEnum(cursor, 4, PeriodType.class));
+                product.setLastBuyDate(getDate(cursor, 5));
+
+                final Set<Category> productCategories = new LinkedHashSet<>();
+                for (Long categoryId : productCategoryIds.get(product.getId())) {
+                    final Category category = categories.get(categoryId);
+                    if (category != null) {
+                        productCategories.add(category);
+                    }
+                }
+                product.setCategories(productCategories);
+
+                result.put(product.getId(), product);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    private Map<Long, ShopItem> loadShopItems(Map<Long, Product> products) {
+        final Map<Long, ShopItem> result = new LinkedHashMap<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT " + SHOP_ITEM_COLUMNS + " FROM " + Tables.SHOP_ITEMS, null);
+        try {
+            while (cursor.moveToNext()) {
+                // orphan items are deleted by cleanDb in background
+                final Product product = cursor.isNull(1) ? null : products.get(cursor.getLong(1));
+                if (product == null) {
+                    continue;
+                }
+
+                final ShopItem shopItem = new ShopItem();
+                shopItem.setId(cursor.getLong(0));
+                shopItem.setProduct(product);
+                shopItem.setQuantity(cursor.isNull(2) ? null : new BigDecimal(cursor.getString(2)));
+                shopItem.setComment(cursor.getString(3));
+                shopItem.setUnitOfMeasure(getEnum(cursor, 4, UnitOfMeasure.class));
+                shopItem.setChecked(getBoolean(cursor, 5));
+
+                result.put(shopItem.getId(), shopItem);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    // each write and its change log entry are stored in one transaction
+    @Override
+    public void addShopItem(final ShopItem shopItem) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final long id = database.insertOrThrow(Tables.SHOP_ITEMS, null, toValues(shopItem));
+                shopItem.setId(id);
+
+                cache.putShopItem(shopItem);
+
+                notifyEntityAdded(shopItem);
+            }
+        });
+    }
+
+    @Override
+    public void addProduct(final Product product) {
+        if (findIdByName(product.getName(), Tables.PRODUCTS) != null) {
+            throw new IllegalStateException(
+                    "Product with the name " + product.getName() + " already exists");
+        }
+
+        final Set<Long> categoryIds = getIds(product.getCategories());
+        checkCategoriesExist(categoryIds);
+
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final long id = database.insertOrThrow(Tables.PRODUCTS, null, toValues(product));
+                product.setId(id);
+
+                addCategoryLinks(id, categoryIds);
+
+                cache.putProduct(product);
+
+                notifyEntityAdded(product);
+            }
+        });
+    }
+
+    @Override
+    public List<ShopItem> getShopItems() {
+        final List<ShopItem> result = getCache().getShopItems();
+        Collections.sort(result, new IdComparator<ShopItem>());
+
+        return result;
+    }
+
+    @Override
+    public List<Product> getProducts() {
+        return getCache().getProducts();
+    }
+
+    @Override
+    public PageSource<Product> getProducts(ProductQuery query, int pageSize) {
+        return new ProductPageSource(database, this, query, pageSize);
+    }
+
+    @Override
+    public int countProducts(ProductQuery query) {
+        return ProductQueries.count(database, query);
+    }
+
+    @Override
+    public List<Product> searchProducts(String query, int limit) {
+        final List<Long> productIds = ProductQueries.search(database, query, limit);
+
+        final List<Product> result = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            final Product product = findProduct(productId);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void saveProduct(final Product product) {
+        if (ChangeDetector.isUnchanged(getCache().findProduct(product.getId()), product)) {
+            suppressedWrites.incrementAndGet();
+            return;
+        }
+
+        final Set<Long> categoryIds = getIds(product.getCategories());
+
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                if (updateById(Tables.PRODUCTS, product.getId(), toValues(product)) == 0) {
+                    throw new IllegalStateException("Trying to save unexisting product");
+                }
+
+                final Set<Long> storedCategoryIds = loadLinkedCategoryIds(product.getId());
+
+                final Set<Long> newCategoryIds = new LinkedHashSet<>(categoryIds);
+                newCategoryIds.removeAll(storedCategoryIds);
+                checkCategoriesExist(newCategoryIds);
+
+                for (Long storedCategoryId : storedCategoryIds) {
+                    if (!categoryIds.contains(storedCategoryId)) {
+                        database.delete(Tables.PRODUCT_CATEGORY_LINKS, "product = ? AND category = ?",
+                                new String[]{String.valueOf(product.getId()), String.valueOf(storedCategoryId)});
+                    }
+                }
+
+                addCategoryLinks(product.getId(), newCategoryIds);
+
+                cache.putProduct(product);
+
+                notifyEntityChanged(product);
+            }
+        });
+    }
+
+    @Override
+    public void removeShopItem(final ShopItem shopItem) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                deleteById(Tables.SHOP_ITEMS, shopItem.getId());
+
+                cache.removeShopItem(shopItem);
+
+                notifyEntityRemoved(shopItem);
+            }
+        });
+    }
+
+    @Override
+    public void removeProduct(final Product product) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                database.delete(Tables.PRODUCT_CATEGORY_LINKS, "product = ?",
+                        new String[]{String.valueOf(product.getId())});
+
+                deleteById(Tables.PRODUCTS, product.getId());
+
+                cache.removeProduct(product);
+
+                notifyEntityRemoved(product);
+            }
+        });
+    }
+
+    @Override
+    public void removeProductCascade(final Product product) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final List<ShopItem> linkedItems = findLinkedItems(product);
+
+                database.delete(Tables.SHOP_ITEMS, "Product = ?",
+                        new String[]{String.valueOf(product.getId())});
+
+                for (ShopItem linkedItem : linkedItems) {
+                    cache.removeShopItem(linkedItem);
+
+                    notifyEntityRemoved(linkedItem);
+                }
+
+                removeProduct(product);
+            }
+        });
+    }
+
+    @Override
+    public void saveShopItem(final ShopItem shopItem) {
+        if (ChangeDetector.isUnchanged(getCache().findShopItem(shopItem.getId()), shopItem)) {
+            suppressedWrites.incrementAndGet();
+            return;
+        }
+
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                if (updateById(Tables.SHOP_ITEMS, shopItem.getId(), toValues(shopItem)) == 0) {
+                    throw new IllegalStateException("Trying to save unexisting shopItem");
+                }
+
+                cache.putShopItem(shopItem);
+
+                notifyEntityChanged(shopItem);
+            }
+        });
+    }
+
+    @Override
+    public void addCategory(final Category category) {
+        if (findIdByName(category.getName(), Tables.CATEGORIES) != null) {
+            throw new IllegalStateException("Category with name " + category.getName() + " already exists");
+        }
+
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final long id = database.insertOrThrow(Tables.CATEGORIES, null, toValues(category));
+                category.setId(id);
+
+                cache.putCategory(category);
+
+                notifyEntityAdded(category);
+            }
+        });
+    }
+
+    @Override
+    public List<Category> getCategories() {
+        return getCache().getCategories();
+    }
+
+    @Override
+    public void removeCategory(final Category category) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final String[] categoryArgs = {String.valueOf(category.getId())};
+
+                final List<Long> unlinkedProductIds = new ArrayList<>();
+                final Cursor cursor = database.rawQuery(
+                        "SELECT product FROM " + Tables.PRODUCT_CATEGORY_LINKS + " WHERE category = ?",
+                        categoryArgs);
+                try {
+                    while (cursor.moveToNext()) {
+                        unlinkedProductIds.add(cursor.getLong(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                database.delete(Tables.PRODUCT_CATEGORY_LINKS, "category = ?", categoryArgs);
+
+                deleteById(Tables.CATEGORIES, category.getId());
+
+                cache.removeCategory(category);
+
+                notifyEntityRemoved(category);
+
+                for (Long productId : unlinkedProductIds) {
+                    final Product unlinkedProduct = findProduct(productId);
+                    if (unlinkedProduct != null) {
+                        notifyEntityChanged(unlinkedProduct);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void saveCategory(final Category category) {
+        if (ChangeDetector.isUnchanged(getCache().findCategory(category.getId()), category)) {
+            suppressedWrites.incrementAndGet();
+            return;
+        }
+
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                if (updateById(Tables.CATEGORIES, category.getId(), toValues(category)) == 0) {
+                    throw new IllegalStateException("Trying to save unexisting category");
+                }
+
+                cache.putCategory(category);
+
+                notifyEntityChanged(category);
+            }
+        });
+    }
+
+    @Override
+    public Settings getSettings() {
+        return settingsStore.getSnapshot().toSettings();
+    }
+
+    @Nullable
+    private Settings loadSettings() {
+        final List<Settings> settingsList = new ArrayList<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id, Language FROM " + Tables.SETTINGS + " ORDER BY Id", null);
+        try {
+            while (cursor.moveToNext()) {
+                final Settings settings = new Settings();
+                settings.setId(cursor.getLong(0));
+                settings.setLanguage(getEnum(cursor, 1, Language.class));
+
+                settingsList.add(settings);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (settingsList.isEmpty()) {
+            return null;
+        }
+
+        final int lastIndex = settingsList.size() - 1;
+        if (lastIndex > 0) {
+            final List<Settings> invalidSettings = settingsList.subList(0, lastIndex);
+            Log.w("PlainSqliteDao", "loadSettings: more than 1 settings instance found. " +
+                    "Deleting " + invalidSettings.size());
+            for (Settings invalidSetting : invalidSettings) {
+                deleteById(Tables.SETTINGS, invalidSetting.getId());
+            }
+        }
+
+        return settingsList.get(lastIndex);
+    }
+
+    @Override
+    public void saveSettings(Settings settings) {
+        settingsStore.setLanguage(settings.getLanguage());
+
+        notifyEntityChanged(settings);
+    }
+
+    @Override
+    public void addSettingsListener(SettingsListener listener) {
+        settingsStore.addListener(listener);
+    }
+
+    @Override
+    public void removeSettingsListener(SettingsListener listener) {
+        settingsStore.removeListener(listener);
+    }
+
+    @Override
+    public Product findProduct(Long id) {
+        return getCache().findProduct(id);
+    }
+
+    @Override
+    public Category findCategory(Long id) {
+        return getCache().findCategory(id);
+    }
+
+    @Override
+    public ShopItem findShopItem(Long id) {
+        return getCache().findShopItem(id);
+    }
+
+    @Nullable
+    @Override
+    public Product findProductByExternalId(String externalId, String listId) {
+        final Long internalId = compiledQueries.findInternalId(externalId, listId, Product.class);
+
+        return (internalId != null) ? findProduct(internalId) : null;
+    }
+
+    @Override
+    public <E extends Entity> EntitySynchronizationRecord<E> findSynchronizationRecord(
+            Long entityId, String listId, Class<E> clazz) {
+
+        return compiledQueries.findSyncRecord(entityId, listId, clazz);
+    }
+
+    @Override
+    public <E extends Entity> EntitySynchronizationRecord<E> findSynchronizationByExternalId(
+            String externalId, String listId, Class<E> clazz) {
+
+        return compiledQueries.findSyncRecord(externalId, listId, clazz);
+    }
+
+    @Nullable
+    @Override
+    public Product findProductByName(String name) {
+        final Long productId = findIdByName(name, Tables.PRODUCTS);
+
+        return (productId != null) ? findProduct(productId) : null;
+    }
+
+    @Nullable
+    @Override
+    public Category findCategoryByExternalId(String externalId, String listId) {
+        final Long internalId = compiledQueries.findInternalId(externalId, listId, Category.class);
+
+        return (internalId != null) ? findCategory(internalId) : null;
+    }
+
+    @Nullable
+    @Override
+    public ShopItem findShopItemByExternalId(String externalId, String listId) {
+        final Long internalId = compiledQueries.findInternalId(externalId, listId, ShopItem.class);
+
+        return (internalId != null) ? findShopItem(internalId) : null;
+    }
+
+    @Nullable
+    @Override
+    public ShopItem findShopItemByProductName(String productName) {
+        final Product product = findProductByName(productName);
+        if (product == null) {
+            return null;
+        }
+
+        final Long shopItemId = compiledQueries.findShopItemIdByProduct(product.getId());
+
+        return (shopItemId != null) ? findShopItem(shopItemId) : null;
+    }
+
+    @Nullable
+    @Override
+    public Category findCategoryByName(String name) {
+        final Long categoryId = findIdByName(name, Tables.CATEGORIES);
+
+        return (categoryId != null) ? findCategory(categoryId) : null;
+    }
+
+    @Nullable
+    private Long findIdByName(String name, String tableName) {
+        if (name == null) {
+            return null;
+        }
+
+        return compiledQueries.findIdByNormalizedName(tableName, ModelHelper.normalizeName(name));
+    }
+
+    @Override
+    public List<ShopItem> findLinkedItems(Product product) {
+        final List<ShopItem> linkedItems = new ArrayList<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id FROM " + Tables.SHOP_ITEMS + " WHERE Product = ?",
+                new String[]{String.valueOf(product.getId())});
+        try {
+            while (cursor.moveToNext()) {
+                final ShopItem shopItem = findShopItem(cursor.getLong(0));
+                if (shopItem != null) {
+                    linkedItems.add(shopItem);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return linkedItems;
+    }
+
+    @Override
+    public <T extends Entity> void addEntityListener(Class<T> clazz, EntityListener<T> listener) {
+        notifier.addListener(clazz, listener);
+    }
+
+    @Override
+    public <T extends Entity> void removeEntityListener(Class<T> entityClass, EntityListener<T> listener) {
+        notifier.removeListener(entityClass, listener);
+    }
+
+    @Override
+    public <T extends Entity> void addSynchronizationRecord(EntitySynchronizationRecord<T> record) {
+        final ContentValues values = new ContentValues();
+        values.put("EntityExternalId", record.getExternalId());
+        values.put("EntityInternalId", record.getInternalId());
+        values.put("Deleted", record.isDeleted());
+        putDate(values, "LastChangeDate", record.getLastChangeDate());
+        values.put("EntityType", EntityTypes.getCode(record.getEntityClass()));
+        values.put("ListId", record.getListId());
+
+        final long id = database.insertOrThrow(Tables.SYNC_RECORDS, null, values);
+        record.setId(id);
+
+        notifyEntityAdded(record);
+    }
+
+    @Override
+    public <T extends Entity> void removeSynchronizationRecord(EntitySynchronizationRecord<T> record) {
+        deleteById(Tables.SYNC_RECORDS, record.getId());
+
+        notifyEntityRemoved(record);
+    }
+
+    @Override
+    public <T extends Entity> void updateSynchronizationRecords(
+            Long internalId, Class<T> entityClass, Date changeDate, boolean deleted) {
+
+        final List<EntitySynchronizationRecord<T>> records = compiledQueries.findSyncRecords(
+                "EntityInternalId = ? AND EntityType = ?", internalId, EntityTypes.getCode(entityClass));
+        if (records.isEmpty()) {
+            return;
+        }
+
+        final ContentValues values = new ContentValues();
+        values.put("Deleted", deleted);
+        putDate(values, "LastChangeDate", changeDate);
+
+        database.update(Tables.SYNC_RECORDS, values, "EntityInternalId = ? AND EntityType = ?",
+                new String[]{String.valueOf(internalId), String.valueOf(EntityTypes.getCode(entityClass))});
+
+        for (EntitySynchronizationRecord<T> record : records) {
+            record.setDeleted(deleted);
+            record.setLastChangeDate(changeDate);
+
+            notifyEntityChanged(record);
+        }
+    }
+
+    @Override
+    public <T extends Entity> List<EntitySynchronizationRecord<T>> loadSynchronizationRecords(
+            @Nullable Class<T> entityClass, String listId) {
+
+        if (entityClass == null) {
+            return compiledQueries.findSyncRecords("ListId = ?", listId);
+        }
+
+        return compiledQueries.findSyncRecords(
+                "ListId = ? AND EntityType = ?", listId, EntityTypes.getCode(entityClass));
+    }
+
+    @Override
+    public List<EntitySynchronizationRecord<Entity>> loadDeletedSynchronizationRecords() {
+        return compiledQueries.findSyncRecords("Deleted = ?", 1);
+    }
+
+    @Override
+    public <T extends Entity> Map<String, T> mapExternalIds(Set<T> entities, String listId) throws MissingExternalIdException {
+        final Multimap<Class<? extends Entity>, Long> idsPerClass = LinkedHashMultimap.create();
+        for (T entity : entities) {
+            idsPerClass.put(entity.getClass(), entity.getId());
+        }
+
+        final Map<Class<? extends Entity>, Map<Long, String>> externalIdsPerClass = new LinkedHashMap<>();
+        for (Class<? extends Entity> entityClass : idsPerClass.keySet()) {
+            final String idsString = Joiner.on(",").join(idsPerClass.get(entityClass));
+
+            final List<EntitySynchronizationRecord<Entity>> records = compiledQueries.findSyncRecords(
+                    "EntityType = ? AND ListId = ? AND EntityInternalId IN (" + idsString + ")",
+                    EntityTypes.getCode(entityClass), listId);
+
+            final Map<Long, String> externalIds = new LinkedHashMap<>();
+            for (EntitySynchronizationRecord<Entity> record : records) {
+                externalIds.put(record.getInternalId(), record.getExternalId());
+            }
+            externalIdsPerClass.put(entityClass, externalIds);
+        }
+
+        final Map<String, T> result = new LinkedHashMap<>();
+        for (T entity : entities) {
+            final String externalId = externalIdsPerClass.get(entity.getClass()).get(entity.getId());
+            if (externalId == null) {
+                throw new MissingExternalIdException("Entity (" + entity + ") " +
+                        "has no sync record (listId=" + listId + "");
+            }
+
+            result.put(externalId, entity);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void runInTransaction(Runnable action) {
+        if (notifier.isInTransaction()) {
+            action.run();
+            return;
+        }
+
+        notifier.beginTransaction();
+
+        boolean successful = false;
+        database.beginTransaction();
+        try {
+            action.run();
+
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            database.endTransaction();
+
+            if (!successful) {
+                cache.invalidate();
+            }
+
+            notifier.endTransaction(successful);
+        }
+    }
+
+    @Override
+    public long getSuppressedWritesCount() {
+        return suppressedWrites.get();
+    }
+
+    @Override
+    public List<ChangeLogEntry> changesSince(long seq) {
+        return compiledQueries.findChangesSince(seq);
+    }
+
+    @Override
+    public long getLastChangeSeq() {
+        return compiledQueries.getLastChangeSeq();
+    }
+
+    @Override
+    public long getCompactedChangeSeq() {
+        return compiledQueries.getCompactedSeq();
+    }
+
+    private <T extends Entity> void notifyEntityAdded(T entity) {
+        logChange(entity, Operation.ADDED);
+        notifier.notify(Operation.ADDED, entity);
+    }
+
+    private <T extends Entity> void notifyEntityChanged(T entity) {
+        logChange(entity, Operation.CHANGED);
+        notifier.notify(Operation.CHANGED, entity);
+    }
+
+    private <T extends Entity> void notifyEntityRemoved(T entity) {
+        logChange(entity, Operation.REMOVED);
+        notifier.notify(Operation.REMOVED, entity);
+    }
+
+    // is called inside the transaction of the change itself, see runInTransaction
+    private void logChange(Entity entity, Operation operation) {
+        if (!LOGGED_CLASSES.contains(entity.getClass())) {
+            return;
+        }
+
+        compiledQueries.appendChange(entity, operation);
+
+        if ((appendedChanges.incrementAndGet() % CompiledQueries.CHANGE_LOG_COMPACTION_INTERVAL) == 0) {
+            maintenanceExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compactChangeLog();
+                    } catch (Exception e) {
+                        Log.e("PlainSqliteDao", "compactChangeLog: failed to compact change log", e);
+                    }
+                }
+            });
+        }
+    }
+
+    private Set<Long> loadLinkedCategoryIds(Long productId) {
+        final Set<Long> result = new LinkedHashSet<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT category FROM " + Tables.PRODUCT_CATEGORY_LINKS + " WHERE product = ?",
+                new String[]{String.valueOf(productId)});
+        try {
+            while (cursor.moveToNext()) {
+                result.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    private void addCategoryLinks(Long productId, Collection<Long> categoryIds) {
+        for (Long categoryId : categoryIds) {
+            final ContentValues values = new ContentValues();
+            values.put("product", productId);
+            values.put("category", categoryId);
+
+            database.insertOrThrow(Tables.PRODUCT_CATEGORY_LINKS, null, values);
+        }
+    }
+
+    private void checkCategoriesExist(Collection<Long> categoryIds) {
+        if (categoryIds.isEmpty()) {
+            return;
+        }
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT COUNT(*) FROM " + Tables.CATEGORIES
+                        + " WHERE Id IN (" + Joiner.on(",").join(categoryIds) + ")",
+                null);
+        try {
+            if (!cursor.moveToNext() || (cursor.getInt(0) != categoryIds.size())) {
+                throw new IllegalStateException("Not all categories were loaded");
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int updateById(String tableName, Long id, ContentValues values) {
+        return database.update(tableName, values, "Id = ?", new String[]{String.valueOf(id)});
+    }
+
+    private void deleteById(String tableName, Long id) {
+        database.delete(tableName, "Id = ?", new String[]{String.valueOf(id)});
+    }
+
+    private static ContentValues toValues(Category category) {
+        final ContentValues values = new ContentValues();
+        values.put("Name", category.getName());
+        values.put("Color", category.getColor());
+        values.put("NormalizedName", ModelHelper.normalizeName(category.getName()));
+
+        return values;
+    }
+
+    private static ContentValues toValues(Product product) {
+        final ContentValues values = new ContentValues();
+        values.put("Name", product.getName());
+        values.put("UnitOfMeasure", getName(product.getDefaultUnits()));
+        values.put("PeriodCount", product.getPeriodCount());
+        values.put("PeriodType", getName(product.getPeriodType()));
+        putDate(values, "LastBuyDate", product.getLastBuyDate());
+        values.put("NormalizedName", ModelHelper.normalizeName(product.getName()));
+        values.put("SearchWords", ProductSearchIndex.toSearchWords(product.getName()));
+
+        return values;
+    }
+
+    private static ContentValues toValues(ShopItem shopItem) {
+        final ContentValues values = new ContentValues();
+        values.put("Product", shopItem.getProduct().getId());
+        values.put("Quantity", (shopItem.getQuantity() != null) ? shopItem.getQuantity().toString() : null);
+        values.put("Comment", shopItem.getComment());
+        values.put("UnitOfMeasure", getName(shopItem.getUnitOfMeasure()));
+        values.put("Checked", shopItem.isChecked());
+
+        return values;
+    }
+
+    private static ContentValues toValues(Settings settings) {
+        final ContentValues values = new ContentValues();
+        values.put("Language", getName(settings.getLanguage()));
+
+        return values;
+    }
+
+    private static Set<Long> getIds(Collection<? extends Entity> entities) {
+        final Set<Long> result = new LinkedHashSet<>();
+        for (Entity entity : entities) {
+            result.add(entity.getId());
+        }
+
+        return result;
+    }
+
+    // the formats of ActiveAndroid: enums are stored by name, dates as millis, booleans as 0/1
+    @Nullable
+    private static String getName(@Nullable Enum<?> value) {
+        return (value != null) ? value.name() : null;
+    }
+
+    private static void putDate(ContentValues values, String column, @Nullable Date date) {
+        values.put(column, (date != null) ? date.getTime() : null);
+    }
+
+    @Nullable
+    private static <E extends Enum<E>> E getEnum(Cursor cursor, int index, Class<E> enumClass) {
+        return cursor.isNull(index) ? null : Enum.valueOf(enumClass, cursor.getString(index));
+    }
+
+    @Nullable
+    private static Date getDate(Cursor cursor, int index) {
+        return cursor.isNull(index) ? null : new Date(cursor.getLong(index));
+    }
+
+    private static boolean getBoolean(Cursor cursor, int index) {
+        return !cursor.isNull(index) && (cursor.getInt(index) != 0);
+    }
+
+    private static class IdComparator<T extends Entity> implements Comparator<T> {
+        @Override
+        public int compare(T o1, T o2) {
+            return o1.getId().compareTo(o2.getId());
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package net.buggy.shoplist.data;
+
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import net.buggy.shoplist.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+// keyset pagination over (NormalizedName, Id). The unique NormalizedName index includes the row id,
+// so it serves this order. NormalizedName can be NULL until the background backfill completes,
+// sqlite sorts such rows first. The order is the same as in ProductComparator
+final class ProductPageSource implements PageSource<Product> {
+
+    private final SQLiteDatabase database;
+    private final Dao dao;
+    private final ProductQuery query;
+    private final int pageSize;
+
+    // the first and the last key of each loaded page
+    private final LinkedList<Key[]> pages = new LinkedList<>();
+    private boolean hasMore = true;
+    private boolean hasPrevious = false;
+
+    ProductPageSource(SQLiteDatabase database, Dao dao, ProductQuery query, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size should be positive: " + pageSize);
+        }
+
+        this.database = database;
+        this.dao = dao;
+        this.query = query;
+        this.pageSize = pageSize;
+    }
+
+    // pages with no cached products are skipped, so an empty page is returned only at the end
+    @Override
+    public synchronized List<Product> loadNextPage() {
+        Key lastKey = pages.isEmpty() ? null : pages.getLast()[1];
+
+        while (hasMore) {
+            final List<String> conditions = new ArrayList<>();
+            final List<String> args = new ArrayList<>();
+            ProductQueries.fillConditions(query, conditions, args);
+
+            if (lastKey != null) {
+                if (lastKey.name == null) {
+                    conditions.add("((NormalizedName IS NULL AND Id > ?) OR NormalizedName IS NOT NULL)");
+                } else {
+                    conditions.add("(NormalizedName > ? OR (NormalizedName = ? AND Id > ?))");
+                    args.add(lastKey.name);
+                    args.add(lastKey.name);
+                }
+                args.add(String.valueOf(lastKey.id));
+            }
+
+            final List<Key> keys = new ArrayList<>(pageSize);
+            final List<Product> page = loadPage(conditions, args, "NormalizedName, Id", keys);
+
+            hasMore = (keys.size() == pageSize);
+
+            if (!page.isEmpty()) {
+                pages.addLast(new Key[]{keys.get(0), keys.get(keys.size() - 1)});
+                return page;
+            }
+
+            if (!keys.isEmpty()) {
+                lastKey = keys.get(keys.size() - 1);
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    @Override
+    public synchronized boolean hasMore() {
+        return hasMore;
+    }
+
+    @Override
+    public synchronized List<Product> loadPreviousPage() {
+        if (pages.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Key firstKey = pages.getFirst()[0];
+
+        while (hasPrevious) {
+            final List<String> conditions = new ArrayList<>();
+            final List<String> args = new ArrayList<>();
+            ProductQueries.fillConditions(query, conditions, args);
+
+            if (firstKey.name == null) {
+                conditions.add("(NormalizedName IS NULL AND Id < ?)");
+            } else {
+                conditions.add("(NormalizedName < ? OR (NormalizedName = ? AND Id < ?) OR NormalizedName IS NULL)");
+                args.add(firstKey.name);
+                args.add(firstKey.name);
+            }
+            args.add(String.valueOf(firstKey.id));
+
+            final List<Key> keys = new ArrayList<>(pageSize);
+            final List<Product> page = loadPage(conditions, args, "NormalizedName DESC, Id DESC", keys);
+            Collections.reverse(page);
+            Collections.reverse(keys);
+
+            hasPrevious = (keys.size() == pageSize);
+
+            if (!page.isEmpty()) {
+                pages.addFirst(new Key[]{keys.get(0), keys.get(keys.size() - 1)});
+                return page;
+            }
+
+            if (!keys.isEmpty()) {
+                firstKey = keys.get(0);
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    @Override
+    public synchronized boolean hasPrevious() {
+        return hasPrevious;
+    }
+
+    // when all the pages are dropped, the source starts from the beginning
+    @Override
+    public synchronized void dropFirstPage() {
+        if (pages.isEmpty()) {
+            return;
+        }
+
+        pages.removeFirst();
+        hasPrevious = !pages.isEmpty();
+        hasMore = hasMore || pages.isEmpty();
+    }
+
+    @Override
+    public synchronized void dropLastPage() {
+        if (pages.isEmpty()) {
+            return;
+        }
+
+        pages.removeLast();
+        hasMore = true;
+        hasPrevious = hasPrevious && !pages.isEmpty();
+    }
+
+    private List<Product> loadPage(List<String> conditions, List<String> args, String order, List<Key> keys) {
+        final List<Product> page = new ArrayList<>(pageSize);
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id, NormalizedName FROM " + Tables.PRODUCTS
+                        + ProductQueries.buildWhereClause(conditions)
+                        + " ORDER BY " + order + " LIMIT " + pageSize,
+                args.toArray(new String[args.size()]));
+        try {
+            while (cursor.moveToNext()) {
+                final long id = cursor.getLong(0);
+                keys.add(new Key(cursor.isNull(1) ? null : cursor.getString(1), id));
+
+                final Product product = dao.findProduct(id);
+                if (product != null) {
+                    page.add(product);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return page;
+    }
+
+    private static final class Key {
+        private final String name;
+        private final long id;
+
+        private Key(String name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+}
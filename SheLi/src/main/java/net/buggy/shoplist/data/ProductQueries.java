@@ -0,0 +1,104 @@
+package net.buggy.shoplist.data;
+
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.base.Joiner;
+
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.ModelHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Product filtering queries of the dao implementations. Queries return product ids,
+// the products themselves are taken from the entity cache
+final class ProductQueries {
+
+    private ProductQueries() {
+    }
+
+    static int count(SQLiteDatabase database, ProductQuery query) {
+        final List<String> conditions = new ArrayList<>();
+        final List<String> args = new ArrayList<>();
+        fillConditions(query, conditions, args);
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT COUNT(*) FROM " + Tables.PRODUCTS + buildWhereClause(conditions),
+                args.toArray(new String[args.size()]));
+        try {
+            return cursor.moveToNext() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static List<Long> search(SQLiteDatabase database, String query, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit should be positive: " + limit);
+        }
+
+        final List<String> conditions = new ArrayList<>();
+        final List<String> args = new ArrayList<>();
+        String order = "NormalizedName";
+
+        final List<String> searchWords = ModelHelper.splitSearchWords(query);
+        if (!searchWords.isEmpty()) {
+            final String normalizedQuery = ModelHelper.normalizeName(query);
+
+            conditions.add(ProductSearchIndex.getMatchCondition());
+            args.add(ProductSearchIndex.toMatchExpression(searchWords));
+
+            order = "(NormalizedName = ?) DESC, (NormalizedName LIKE ? ESCAPE '\\') DESC"
+                    + ", length(NormalizedName), NormalizedName";
+            args.add(normalizedQuery);
+            args.add(escapeLikePattern(normalizedQuery) + "%");
+        }
+
+        final List<Long> result = new ArrayList<>(limit);
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id FROM " + Tables.PRODUCTS
+                        + buildWhereClause(conditions)
+                        + " ORDER BY " + order + " LIMIT " + limit,
+                args.toArray(new String[args.size()]));
+        try {
+            while (cursor.moveToNext()) {
+                result.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
+    static void fillConditions(ProductQuery query, List<String> conditions, List<String> args) {
+        final List<String> searchWords = ModelHelper.splitSearchWords(query.getText());
+        if (!searchWords.isEmpty()) {
+            conditions.add(ProductSearchIndex.getMatchCondition());
+            args.add(ProductSearchIndex.toMatchExpression(searchWords));
+        }
+
+        for (Category category : query.getCategories()) {
+            conditions.add("Id IN (SELECT product FROM " + Tables.PRODUCT_CATEGORY_LINKS
+                    + " WHERE category = ?)");
+            args.add(String.valueOf(category.getId()));
+        }
+    }
+
+    static String buildWhereClause(List<String> conditions) {
+        if (conditions.isEmpty()) {
+            return "";
+        }
+
+        return " WHERE " + Joiner.on(" AND ").join(conditions);
+    }
+
+    private static String escapeLikePattern(String text) {
+        return text.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,42 @@
+package net.buggy.shoplist.data;
+
+
+import android.support.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+
+import net.buggy.shoplist.filters.ProductsFilter;
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Product;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Products having names with words starting with all the text words and having all the categories
+public class ProductQuery implements Serializable {
+
+    public static final ProductQuery ALL = new ProductQuery(null, Collections.<Category>emptyList());
+
+    private final String text;
+    private final List<Category> categories;
+
+    public ProductQuery(@Nullable String text, Collection<Category> categories) {
+        this.text = text;
+        this.categories = ImmutableList.copyOf(categories);
+    }
+
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    public boolean matches(Product product) {
+        return new ProductsFilter(text, categories).apply(product);
+    }
+}
@@ -0,0 +1,145 @@
+package net.buggy.shoplist.data;
+
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.common.base.Joiner;
+
+import net.buggy.shoplist.model.ModelHelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// FTS4 index over product search words. The index is maintained by triggers on the products
+// table, so all the write paths (including bulk deletes) keep it in sync.
+// The words are split in java (ModelHelper.splitSearchWords) and stored space separated,
+// so the FTS "simple" tokenizer sees exactly the same words, as the search query.
+// The table is created by the migration 20. ActiveAndroid doesn't run migrations on a fresh install
+// and its script parser cannot handle trigger bodies, so the triggers and the fresh install table
+// are created from the code
+final class ProductSearchIndex {
+
+    private static final String TABLE = "ProductsSearch";
+
+    private static final String[] TRIGGERS = {
+            TABLE + "_insert", TABLE + "_update", TABLE + "_delete"};
+
+    private ProductSearchIndex() {
+    }
+
+    // cheap, when the schema exists: the index is filled by backfill
+    static void ensureCreated(SQLiteDatabase database) {
+        if (countSchemaObjects(database) == (TRIGGERS.length + 1)) {
+            return;
+        }
+
+        final String productsTable = Tables.PRODUCTS;
+
+        database.beginTransaction();
+        try {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE + " USING fts4(SearchWords)");
+
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGERS[0]
+                    + " AFTER INSERT ON " + productsTable + " BEGIN"
+                    + " INSERT INTO " + TABLE + " (docid, SearchWords)"
+                    + " VALUES (new.Id, new.SearchWords);"
+                    + " END");
+            // migrated rows are not indexed yet, so the row is replaced instead of updated
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGERS[1]
+                    + " AFTER UPDATE OF SearchWords ON " + productsTable + " BEGIN"
+                    + " DELETE FROM " + TABLE + " WHERE docid = old.Id;"
+                    + " INSERT INTO " + TABLE + " (docid, SearchWords)"
+                    + " VALUES (new.Id, new.SearchWords);"
+                    + " END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS " + TRIGGERS[2]
+                    + " AFTER DELETE ON " + productsTable + " BEGIN"
+                    + " DELETE FROM " + TABLE + " WHERE docid = old.Id;"
+                    + " END");
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        Log.i("ProductSearchIndex", "ensureCreated: search index schema created");
+    }
+
+    // fills search words of migrated rows, the triggers add them to the index.
+    // Returns the number of filled rows
+    static int backfill(SQLiteDatabase database) {
+        final Map<Long, String> names = new LinkedHashMap<>();
+
+        final Cursor cursor = database.rawQuery(
+                "SELECT Id, Name FROM " + Tables.PRODUCTS + " WHERE SearchWords IS NULL", null);
+        try {
+            while (cursor.moveToNext()) {
+                names.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (names.isEmpty()) {
+            return 0;
+        }
+
+        final long startTime = SystemClock.elapsedRealtime();
+
+        database.beginTransaction();
+        try {
+            for (Map.Entry<Long, String> entry : names.entrySet()) {
+                final ContentValues values = new ContentValues();
+                values.put("SearchWords", toSearchWords(entry.getValue()));
+
+                database.update(Tables.PRODUCTS, values, "Id = ?", new String[]{String.valueOf(entry.getKey())});
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        Log.i("ProductSearchIndex", "backfill: search words filled" +
+                ". count=" + names.size()
+                + ", durationMs=" + (SystemClock.elapsedRealtime() - startTime));
+
+        return names.size();
+    }
+
+    // value of the SearchWords column for the product name
+    static String toSearchWords(String name) {
+        return Joiner.on(' ').join(ModelHelper.splitSearchWords(name));
+    }
+
+    // the condition expects a single argument, created by toMatchExpression
+    static String getMatchCondition() {
+        return "Id IN (SELECT docid FROM " + TABLE + " WHERE " + TABLE + " MATCH ?)";
+    }
+
+    // words are letters and digits only, so they cannot contain FTS query syntax
+    static String toMatchExpression(List<String> searchWords) {
+        final List<String> prefixes = new ArrayList<>(searchWords.size());
+        for (String word : searchWords) {
+            prefixes.add(word + "*");
+        }
+
+        return Joiner.on(' ').join(prefixes);
+    }
+
+    private static int countSchemaObjects(SQLiteDatabase database) {
+        final Cursor cursor = database.rawQuery(
+                "SELECT count(*) FROM sqlite_master WHERE name IN (?, ?, ?, ?)",
+                new String[]{TABLE, TRIGGERS[0], TRIGGERS[1], TRIGGERS[2]});
+        try {
+            return cursor.moveToNext() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package net.buggy.shoplist.data;
+
+
+// Is called on a background thread, after the changed settings are written to the database
+public interface SettingsListener {
+    void settingsSaved(SettingsSnapshot snapshot);
+
+    // the change stays in memory and is written with the next change
+    void settingsSaveFailed(SettingsSnapshot snapshot, Exception exception);
+}
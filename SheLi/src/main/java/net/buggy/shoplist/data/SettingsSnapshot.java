@@ -0,0 +1,63 @@
+package net.buggy.shoplist.data;
+
+
+import android.support.annotation.Nullable;
+
+import net.buggy.shoplist.model.Language;
+import net.buggy.shoplist.model.Settings;
+
+// Immutable state of the settings and the application metadata
+public final class SettingsSnapshot {
+
+    @Nullable
+    private final Language language;
+    private final boolean firstLaunch;
+    private final boolean showTips;
+
+    SettingsSnapshot(@Nullable Language language, boolean firstLaunch, boolean showTips) {
+        this.language = language;
+        this.firstLaunch = firstLaunch;
+        this.showTips = showTips;
+    }
+
+    @Nullable
+    public Language getLanguage() {
+        return language;
+    }
+
+    public boolean isFirstLaunch() {
+        return firstLaunch;
+    }
+
+    public boolean isShowTips() {
+        return showTips;
+    }
+
+    public Settings toSettings() {
+        final Settings settings = new Settings();
+        settings.setLanguage(language);
+
+        return settings;
+    }
+
+    SettingsSnapshot withLanguage(@Nullable Language language) {
+        return new SettingsSnapshot(language, firstLaunch, showTips);
+    }
+
+    SettingsSnapshot withFirstLaunch(boolean firstLaunch) {
+        return new SettingsSnapshot(language, firstLaunch, showTips);
+    }
+
+    SettingsSnapshot withShowTips(boolean showTips) {
+        return new SettingsSnapshot(language, firstLaunch, showTips);
+    }
+
+    @Override
+    public String toString() {
+        return "SettingsSnapshot{" +
+                "language=" + language +
+                ", firstLaunch=" + firstLaunch +
+                ", showTips=" + showTips +
+                '}';
+    }
+}
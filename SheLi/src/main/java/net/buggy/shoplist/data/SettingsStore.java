@@ -0,0 +1,124 @@
+package net.buggy.shoplist.data;
+
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.common.base.Objects;
+
+import net.buggy.shoplist.model.Language;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Settings and metadata are loaded once and read from the in-memory snapshot.
+// Changes replace the snapshot and are written by the executor. Writes are coalesced:
+// when several changes are made before the write starts, only the latest snapshot is written.
+// A failed write is retried a few times, then listeners are notified. The snapshot keeps the change,
+// so it's written together with the next one
+class SettingsStore {
+
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    private static final long RETRY_DELAY = 200;
+
+    private final Persister persister;
+    private final Executor writeExecutor;
+
+    private volatile SettingsSnapshot snapshot;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+    private final List<SettingsListener> listeners = new CopyOnWriteArrayList<>();
+
+    SettingsStore(SettingsSnapshot snapshot, Persister persister, Executor writeExecutor) {
+        this.snapshot = snapshot;
+        this.persister = persister;
+        this.writeExecutor = writeExecutor;
+    }
+
+    public SettingsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void addListener(SettingsListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SettingsListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void setLanguage(@Nullable Language language) {
+        if (!Objects.equal(snapshot.getLanguage(), language)) {
+            update(snapshot.withLanguage(language));
+        }
+    }
+
+    public synchronized void clearFirstLaunch() {
+        if (snapshot.isFirstLaunch()) {
+            update(snapshot.withFirstLaunch(false));
+        }
+    }
+
+    public synchronized void setShowTips(boolean showTips) {
+        if (snapshot.isShowTips() != showTips) {
+            update(snapshot.withShowTips(showTips));
+        }
+    }
+
+    private void update(SettingsSnapshot newSnapshot) {
+        snapshot = newSnapshot;
+
+        if (writeScheduled.compareAndSet(false, true)) {
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            });
+        }
+    }
+
+    private void write() {
+        // changes after this point schedule a new write
+        writeScheduled.set(false);
+
+        final SettingsSnapshot writtenSnapshot = snapshot;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                persister.persist(writtenSnapshot);
+                break;
+
+            } catch (RuntimeException e) {
+                if (attempt >= MAX_WRITE_ATTEMPTS) {
+                    Log.e("SettingsStore", "write: failed to save settings" +
+                            ". snapshot=" + writtenSnapshot + ", attempts=" + attempt, e);
+
+                    for (SettingsListener listener : listeners) {
+                        listener.settingsSaveFailed(writtenSnapshot, e);
+                    }
+                    return;
+                }
+
+                Log.w("SettingsStore", "write: failed to save settings, retrying" +
+                        ". attempt=" + attempt, e);
+
+                try {
+                    Thread.sleep(RETRY_DELAY * attempt);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        for (SettingsListener listener : listeners) {
+            listener.settingsSaved(writtenSnapshot);
+        }
+    }
+
+    interface Persister {
+        void persist(SettingsSnapshot snapshot);
+    }
+}
@@ -1,35 +1,40 @@
 package net.buggy.shoplist.data;
 
 
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.activeandroid.ActiveAndroid;
+import com.activeandroid.Cache;
 import com.activeandroid.Model;
 import com.activeandroid.annotation.Column;
 import com.activeandroid.annotation.Table;
 import com.activeandroid.query.Delete;
 import com.activeandroid.query.From;
 import com.activeandroid.query.Select;
-import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
-import com.google.common.base.Objects;
-import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import net.buggy.shoplist.data.ChangeLogEntry.Operation;
 import net.buggy.shoplist.model.Category;
 import net.buggy.shoplist.model.Entity;
 import net.buggy.shoplist.model.EntitySynchronizationRecord;
 import net.buggy.shoplist.model.Language;
 import net.buggy.shoplist.model.MissingExternalIdException;
+import net.buggy.shoplist.model.ModelHelper;
 import net.buggy.shoplist.model.PeriodType;
 import net.buggy.shoplist.model.Product;
 import net.buggy.shoplist.model.Settings;
 import net.buggy.shoplist.model.ShopItem;
 import net.buggy.shoplist.model.UnitOfMeasure;
 import net.buggy.shoplist.utils.CollectionUtils;
-import net.buggy.shoplist.utils.StringUtils;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -45,24 +50,105 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SuppressWarnings("HardCodedStringLiteral")
 public class SqlliteDao implements Serializable, Dao {
 
-    private StoredMetadata metadata;
+    private static final ExecutorService MAINTENANCE_SERVICE = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("dao-maintenance").setDaemon(true).build());
 
-    private Multimap<Class<? extends Entity>, EntityListener<? extends Entity>> listeners = LinkedHashMultimap.create();
+    // settings are changed by the user, so they are not queued behind the maintenance
+    private static final ExecutorService SETTINGS_SERVICE = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("dao-settings").setDaemon(true).build());
+
+    private final transient SettingsStore settingsStore;
+
+    private final transient EntityNotifier notifier = new EntityNotifier();
+
+    private static final Set<Class<? extends Entity>> LOGGED_CLASSES = ImmutableSet.of(
+            Category.class, Product.class, ShopItem.class);
+
+    private final EntityCache cache = new EntityCache();
+
+    // saves of unchanged entities, which were skipped
+    private final AtomicLong suppressedWrites = new AtomicLong();
+
+    // the change log is compacted after every CHANGE_LOG_COMPACTION_INTERVAL changes
+    private final AtomicLong appendedChanges = new AtomicLong();
+
+    private transient CompiledQueries compiledQueries;
 
     public SqlliteDao() {
-        initMetadata();
+        settingsStore = new SettingsStore(loadSettingsSnapshot(), new SettingsStore.Persister() {
+            @Override
+            public void persist(SettingsSnapshot snapshot) {
+                persistSettings(snapshot);
+            }
+        }, SETTINGS_SERVICE);
+
+        ProductSearchIndex.ensureCreated(Cache.openDatabase());
+
+        MAINTENANCE_SERVICE.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fillNormalizedNames();
+                } catch (Exception e) {
+                    Log.e("SqlliteDao", "fillNormalizedNames: failed to fill normalized names", e);
+                }
+
+                try {
+                    fillSearchWords();
+                } catch (Exception e) {
+                    Log.e("SqlliteDao", "fillSearchWords: failed to fill search words", e);
+                }
+
+                try {
+                    cleanDb();
+                } catch (Exception e) {
+                    Log.e("SqlliteDao", "cleanDb: failed to clean database", e);
+                }
+
+                try {
+                    compactChangeLog();
+                } catch (Exception e) {
+                    Log.e("SqlliteDao", "compactChangeLog: failed to compact change log", e);
+                }
+            }
+        });
+    }
+
+    private SettingsSnapshot loadSettingsSnapshot() {
+        final StoredMetadata storedMetadata = getMetadataInstance();
+        final StoredSettings storedSettings = loadSettingsInstance();
 
-        cleanDb();
+        return new SettingsSnapshot(
+                (storedSettings != null) ? storedSettings.language : null,
+                Boolean.TRUE.equals(storedMetadata.firstLaunch),
+                Boolean.TRUE.equals(storedMetadata.showTips));
     }
 
-    private void initMetadata() {
-        metadata = getMetadataInstance();
-        if (metadata.getId() == null) {
-            metadata.save();
+    private void persistSettings(SettingsSnapshot snapshot) {
+        ActiveAndroid.beginTransaction();
+        try {
+            final StoredMetadata storedMetadata = getMetadataInstance();
+            storedMetadata.firstLaunch = snapshot.isFirstLaunch();
+            storedMetadata.showTips = snapshot.isShowTips();
+            storedMetadata.save();
+
+            StoredSettings storedSettings = loadSettingsInstance();
+            if (storedSettings == null) {
+                storedSettings = new StoredSettings();
+            }
+            storedSettings.fillFrom(snapshot.toSettings());
+            storedSettings.save();
+
+            ActiveAndroid.setTransactionSuccessful();
+        } finally {
+            ActiveAndroid.endTransaction();
         }
     }
 
@@ -78,33 +164,90 @@ public class SqlliteDao implements Serializable, Dao {
         return metadataList.get(0);
     }
 
-    private void cleanDb() {
-        final List<StoredShopItem> items = new Select().from(StoredShopItem.class).execute();
-        for (StoredShopItem item : items) {
-            if (item.product == null) {
-                StoredShopItem.delete(StoredShopItem.class, item.getId());
-            }
+    private void fillNormalizedNames() {
+        final SQLiteDatabase database = Cache.openDatabase();
+
+        final int renamedCount = NormalizedNames.backfill(database, Tables.CATEGORIES)
+                + NormalizedNames.backfill(database, Tables.PRODUCTS);
+
+        // renamed duplicates could be already loaded with the old names
+        if (renamedCount > 0) {
+            cache.invalidate();
         }
     }
 
+    private void fillSearchWords() {
+        ProductSearchIndex.backfill(Cache.openDatabase());
+    }
+
+    private void cleanDb() {
+        final long startTime = SystemClock.elapsedRealtime();
+
+        final String productsTable = Cache.getTableName(StoredProduct.class);
+        new Delete()
+                .from(StoredShopItem.class)
+                .where("Product IS NULL OR Product NOT IN (SELECT Id FROM " + productsTable + ")")
+                .execute();
+
+        Log.i("SqlliteDao", "cleanDb: orphan shop items deleted" +
+                ". durationMs=" + (SystemClock.elapsedRealtime() - startTime));
+    }
+
     @Override
     public boolean isFirstLaunch() {
-        return metadata.firstLaunch;
+        return settingsStore.getSnapshot().isFirstLaunch();
     }
 
     @Override
     public boolean isShowTips() {
-        return metadata.showTips;
+        return settingsStore.getSnapshot().isShowTips();
     }
 
-    private Map<Long, ShopItem> loadShopItems() {
-        final Map<Long, Product> products = loadProducts();
+    private void compactChangeLog() {
+        final long startTime = SystemClock.elapsedRealtime();
 
+        final int deletedCount = getCompiledQueries().compactChangeLog();
+
+        Log.i("SqlliteDao", "compactChangeLog: change log compacted" +
+                ". deleted=" + deletedCount
+                + ", suppressedWrites=" + getSuppressedWritesCount()
+                + ", durationMs=" + (SystemClock.elapsedRealtime() - startTime));
+    }
+
+    private synchronized CompiledQueries getCompiledQueries() {
+        if (compiledQueries == null) {
+            compiledQueries = new CompiledQueries(Cache.openDatabase());
+        }
+
+        return compiledQueries;
+    }
+
+    private EntityCache getCache() {
+        synchronized (cache) {
+            if (!cache.isLoaded()) {
+                final Map<Long, Category> categories = loadCategories();
+                final Map<Long, Product> products = loadProducts(categories);
+                final Map<Long, ShopItem> shopItems = loadShopItems(products);
+
+                cache.load(categories, products, shopItems);
+            }
+        }
+
+        return cache;
+    }
+
+    private Map<Long, ShopItem> loadShopItems(Map<Long, Product> products) {
         final Map<Long, ShopItem> result = new LinkedHashMap<>();
 
         final List<StoredShopItem> storedItems = new Select().from(StoredShopItem.class).execute();
         for (StoredShopItem storedItem : storedItems) {
-            final Product product = products.get(storedItem.product.getId());
+            // orphan items are deleted by cleanDb in background
+            final Product product = (storedItem.product != null)
+                    ? products.get(storedItem.product.getId())
+                    : null;
+            if (product == null) {
+                continue;
+            }
 
             final ShopItem shopItem = storedItem.toModel(product);
 
@@ -114,14 +257,15 @@ public class SqlliteDao implements Serializable, Dao {
         return result;
     }
 
-    private Map<Long, Product> loadProducts() {
-        final Map<Long, Category> categoryMap = loadCategories();
+    private Map<Long, Product> loadProducts(Map<Long, Category> categoryMap) {
+        final Multimap<Long, Long> productCategoryIds = loadProductCategoryIds();
 
         final Map<Long, Product> result = new LinkedHashMap<>();
 
         final List<StoredProduct> storedProducts = new Select().from(StoredProduct.class).execute();
         for (StoredProduct storedProduct : storedProducts) {
-            final Product product = storedProduct.toProduct(categoryMap);
+            final Product product = storedProduct.toProduct(
+                    categoryMap, productCategoryIds.get(storedProduct.getId()));
 
             result.put(product.getId(), product);
         }
@@ -129,6 +273,25 @@ public class SqlliteDao implements Serializable, Dao {
         return result;
     }
 
+    // loads all links at once, otherwise each product would query its own links
+    private Multimap<Long, Long> loadProductCategoryIds() {
+        final String tableName = Cache.getTableName(StoredProductCategoryLink.class);
+
+        final Multimap<Long, Long> result = LinkedHashMultimap.create();
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(
+                "SELECT product, category FROM " + tableName, null);
+        try {
+            while (cursor.moveToNext()) {
+                result.put(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return result;
+    }
+
     private Map<Long, Category> loadCategories() {
         Map<Long, Category> result = new ConcurrentHashMap<>();
 
@@ -142,35 +305,47 @@ public class SqlliteDao implements Serializable, Dao {
         return result;
     }
 
+    // each write and its change log entry are stored in one transaction
     @Override
-    public void addShopItem(ShopItem shopItem) {
-        final StoredShopItem storedShopItem = StoredShopItem.create(shopItem);
-        final Long id = storedShopItem.save();
-        shopItem.setId(id);
+    public void addShopItem(final ShopItem shopItem) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final StoredShopItem storedShopItem = StoredShopItem.create(shopItem);
+                final Long id = storedShopItem.save();
+                shopItem.setId(id);
+
+                cache.putShopItem(shopItem);
 
-        notifyEntityAdded(shopItem);
+                notifyEntityAdded(shopItem);
+            }
+        });
     }
 
     @Override
-    public void addProduct(Product product) {
-        final StoredProduct existingProduct = findEntityByName(
-                product.getName(), StoredProduct.class);
-        if (existingProduct != null) {
+    public void addProduct(final Product product) {
+        if (findIdByName(product.getName(), StoredProduct.class) != null) {
             throw new IllegalStateException(
                     "Product with the name " + product.getName() + " already exists");
         }
 
-        final StoredProduct storedProduct = StoredProduct.create(product);
-        final Long id = storedProduct.customSave();
-        product.setId(id);
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final StoredProduct storedProduct = StoredProduct.create(product);
+                final Long id = storedProduct.customSave();
+                product.setId(id);
+
+                cache.putProduct(product);
 
-        notifyEntityAdded(product);
+                notifyEntityAdded(product);
+            }
+        });
     }
 
     @Override
     public List<ShopItem> getShopItems() {
-        final Map<Long, ShopItem> shopItems = loadShopItems();
-        final ArrayList<ShopItem> result = new ArrayList<>(shopItems.values());
+        final List<ShopItem> result = getCache().getShopItems();
         Collections.sort(result, new IdComparator<ShopItem>());
 
         return result;
@@ -178,8 +353,32 @@ public class SqlliteDao implements Serializable, Dao {
 
     @Override
     public List<Product> getProducts() {
-        final Map<Long, Product> products = loadProducts();
-        return ImmutableList.copyOf(products.values());
+        return getCache().getProducts();
+    }
+
+    @Override
+    public PageSource<Product> getProducts(ProductQuery query, int pageSize) {
+        return new ProductPageSource(Cache.openDatabase(), this, query, pageSize);
+    }
+
+    @Override
+    public int countProducts(ProductQuery query) {
+        return ProductQueries.count(Cache.openDatabase(), query);
+    }
+
+    @Override
+    public List<Product> searchProducts(String query, int limit) {
+        final List<Long> productIds = ProductQueries.search(Cache.openDatabase(), query, limit);
+
+        final List<Product> result = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            final Product product = findProduct(productId);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+
+        return result;
     }
 
     public static List<Class<? extends Model>> getModelClasses() {
@@ -190,131 +389,205 @@ public class SqlliteDao implements Serializable, Dao {
                 StoredProductCategoryLink.class,
                 StoredSettings.class,
                 StoredMetadata.class,
-                StoredSynchronizationRecord.class);
+                StoredSynchronizationRecord.class,
+                StoredChangeLogEntry.class);
     }
 
     @Override
-    public void saveProduct(Product product) {
-        final StoredProduct storedProduct = StoredProduct.load(StoredProduct.class, product.getId());
-        if (storedProduct == null) {
-            throw new IllegalStateException("Trying to save unexisting product");
-        }
+    public void saveProduct(final Product product) {
+        if (ChangeDetector.isUnchanged(getCache().findProduct(product.getId()), product)) {
+            suppressedWrites.incrementAndGet();
+            return;
+        }
+
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final StoredProduct storedProduct = StoredProduct.load(StoredProduct.class, product.getId());
+                if (storedProduct == null) {
+                    throw new IllegalStateException("Trying to save unexisting product");
+                }
+
+                storedProduct.fillFrom(product);
+                storedProduct.customSave();
 
-        storedProduct.fillFrom(product);
-        storedProduct.customSave();
+                cache.putProduct(product);
 
-        notifyEntityChanged(product);
+                notifyEntityChanged(product);
+            }
+        });
     }
 
     @Override
-    public void removeShopItem(ShopItem shopItem) {
-        StoredShopItem.delete(StoredShopItem.class, shopItem.getId());
+    public void removeShopItem(final ShopItem shopItem) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                StoredShopItem.delete(StoredShopItem.class, shopItem.getId());
+
+                cache.removeShopItem(shopItem);
 
-        notifyEntityRemoved(shopItem);
+                notifyEntityRemoved(shopItem);
+            }
+        });
     }
 
     @Override
-    public void removeProduct(Product product) {
-        new Delete()
-                .from(StoredProductCategoryLink.class)
-                .where("product = ? ", product.getId())
-                .execute();
+    public void removeProduct(final Product product) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                new Delete()
+                        .from(StoredProductCategoryLink.class)
+                        .where("product = ? ", product.getId())
+                        .execute();
+
+                StoredProduct.delete(StoredProduct.class, product.getId());
 
-        StoredProduct.delete(StoredProduct.class, product.getId());
+                cache.removeProduct(product);
 
-        notifyEntityRemoved(product);
+                notifyEntityRemoved(product);
+            }
+        });
     }
 
     @Override
-    public void saveShopItem(ShopItem shopItem) {
-        final StoredShopItem storedShopItem = StoredShopItem.load(StoredShopItem.class, shopItem.getId());
+    public void removeProductCascade(final Product product) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final List<ShopItem> linkedItems = findLinkedItems(product);
 
-        if (storedShopItem == null) {
-            throw new IllegalStateException("Trying to save unexisting shopItem");
-        }
+                new Delete()
+                        .from(StoredShopItem.class)
+                        .where("Product = ?", product.getId())
+                        .execute();
 
-        storedShopItem.fillFrom(shopItem);
-        storedShopItem.save();
+                for (ShopItem linkedItem : linkedItems) {
+                    cache.removeShopItem(linkedItem);
 
-        notifyEntityChanged(shopItem);
+                    notifyEntityRemoved(linkedItem);
+                }
+
+                removeProduct(product);
+            }
+        });
     }
 
     @Override
-    public void addCategory(Category category) {
-        final StoredCategory existingCategory = findEntityByName(
-                category.getName(), StoredCategory.class);
-        if (existingCategory != null) {
-            throw new IllegalStateException("Category with name " + category.getName() + " already exists");
+    public void saveShopItem(final ShopItem shopItem) {
+        if (ChangeDetector.isUnchanged(getCache().findShopItem(shopItem.getId()), shopItem)) {
+            suppressedWrites.incrementAndGet();
+            return;
         }
 
-        final StoredCategory storedCategory = StoredCategory.create(category);
-        final Long id = storedCategory.save();
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final StoredShopItem storedShopItem = StoredShopItem.load(StoredShopItem.class, shopItem.getId());
 
-        category.setId(id);
+                if (storedShopItem == null) {
+                    throw new IllegalStateException("Trying to save unexisting shopItem");
+                }
 
-        notifyEntityAdded(category);
-    }
+                storedShopItem.fillFrom(shopItem);
+                storedShopItem.save();
 
-    @Override
-    public List<Category> getCategories() {
-        final Map<Long, Category> categories = loadCategories();
-        return ImmutableList.copyOf(categories.values());
+                cache.putShopItem(shopItem);
+
+                notifyEntityChanged(shopItem);
+            }
+        });
     }
 
     @Override
-    public void removeCategory(Category category) {
-        final List<StoredProductCategoryLink> removedLinks = new Select()
-                .from(StoredProductCategoryLink.class)
-                .where("category = ? ", category.getId())
-                .execute();
+    public void addCategory(final Category category) {
+        if (findIdByName(category.getName(), StoredCategory.class) != null) {
+            throw new IllegalStateException("Category with name " + category.getName() + " already exists");
+        }
 
-        new Delete()
-                .from(StoredProductCategoryLink.class)
-                .where("category = ? ", category.getId())
-                .execute();
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final StoredCategory storedCategory = StoredCategory.create(category);
+                final Long id = storedCategory.save();
 
-        StoredCategory.delete(StoredCategory.class, category.getId());
+                category.setId(id);
 
-        notifyEntityRemoved(category);
+                cache.putCategory(category);
 
-        if (!CollectionUtils.isEmpty(removedLinks)) {
-            final Map<Long, Category> categoryMap = loadCategories();
-            for (StoredProductCategoryLink removedLink : removedLinks) {
-                final Product unlinkedProduct = removedLink.getProduct().toProduct(categoryMap);
-                notifyEntityChanged(unlinkedProduct);
+                notifyEntityAdded(category);
             }
-        }
+        });
+    }
+
+    @Override
+    public List<Category> getCategories() {
+        return getCache().getCategories();
     }
 
     @Override
-    public void saveCategory(Category category) {
-        final StoredCategory storedCategory = StoredCategory.load(StoredCategory.class, category.getId());
+    public void removeCategory(final Category category) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final List<StoredProductCategoryLink> removedLinks = new Select()
+                        .from(StoredProductCategoryLink.class)
+                        .where("category = ? ", category.getId())
+                        .execute();
+
+                new Delete()
+                        .from(StoredProductCategoryLink.class)
+                        .where("category = ? ", category.getId())
+                        .execute();
+
+                StoredCategory.delete(StoredCategory.class, category.getId());
+
+                cache.removeCategory(category);
+
+                notifyEntityRemoved(category);
+
+                if (!CollectionUtils.isEmpty(removedLinks)) {
+                    for (StoredProductCategoryLink removedLink : removedLinks) {
+                        final Product unlinkedProduct = findProduct(removedLink.getProduct().getId());
+                        if (unlinkedProduct != null) {
+                            notifyEntityChanged(unlinkedProduct);
+                        }
+                    }
+                }
+            }
+        });
+    }
 
-        if (storedCategory == null) {
-            throw new IllegalStateException("Trying to save unexisting category");
+    @Override
+    public void saveCategory(final Category category) {
+        if (ChangeDetector.isUnchanged(getCache().findCategory(category.getId()), category)) {
+            suppressedWrites.incrementAndGet();
+            return;
         }
 
-        storedCategory.fillFrom(category);
-        storedCategory.save();
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final StoredCategory storedCategory = StoredCategory.load(StoredCategory.class, category.getId());
 
-        notifyEntityChanged(category);
-    }
+                if (storedCategory == null) {
+                    throw new IllegalStateException("Trying to save unexisting category");
+                }
 
-    @Override
-    public Settings getSettings() {
+                storedCategory.fillFrom(category);
+                storedCategory.save();
 
-        StoredSettings storedSettings = loadSettingsInstance();
-        if (storedSettings == null) {
-            storedSettings = new StoredSettings();
-            storedSettings.fillFrom(new Settings());
-            storedSettings.save();
-        }
+                cache.putCategory(category);
 
-        final Settings settings = new Settings();
-        settings.setId(storedSettings.getId());
-        settings.setLanguage(storedSettings.language);
+                notifyEntityChanged(category);
+            }
+        });
+    }
 
-        return settings;
+    @Override
+    public Settings getSettings() {
+        return settingsStore.getSnapshot().toSettings();
     }
 
     private StoredSettings loadSettingsInstance() {
@@ -329,7 +602,7 @@ public class SqlliteDao implements Serializable, Dao {
         } else {
             final int lastIndex = storedSettingsList.size() - 1;
             List<StoredSettings> invalidSettings = storedSettingsList.subList(0, lastIndex);
-            Log.w("SqlliteDao", "getSettings: more than 1 settings instance found. " +
+            Log.w("SqlliteDao", "loadSettingsInstance: more than 1 settings instance found. " +
                     "Deleting " + invalidSettings.size());
             for (StoredSettings invalidSetting : invalidSettings) {
                 invalidSetting.delete();
@@ -341,149 +614,78 @@ public class SqlliteDao implements Serializable, Dao {
 
     @Override
     public void saveSettings(Settings settings) {
-        StoredSettings storedSettings = loadSettingsInstance();
-        if (storedSettings == null) {
-            storedSettings = new StoredSettings();
-        }
-
-        storedSettings.fillFrom(settings);
-        storedSettings.save();
-
-        if (settings.getId() == null) {
-            settings.setId(storedSettings.getId());
-        }
+        settingsStore.setLanguage(settings.getLanguage());
 
         notifyEntityChanged(settings);
     }
 
     @Override
-    public Product findProduct(Long id) {
-        final StoredProduct storedProduct = new Select()
-                .from(StoredProduct.class)
-                .where("Id = ?", id)
-                .executeSingle();
+    public void addSettingsListener(SettingsListener listener) {
+        settingsStore.addListener(listener);
+    }
 
-        if (storedProduct == null) {
-            return null;
-        }
+    @Override
+    public void removeSettingsListener(SettingsListener listener) {
+        settingsStore.removeListener(listener);
+    }
 
-        return storedProduct.toProduct();
+    @Override
+    public Product findProduct(Long id) {
+        return getCache().findProduct(id);
     }
 
     @Override
     public Category findCategory(Long id) {
-        final StoredCategory storedCategory = new Select()
-                .from(StoredCategory.class)
-                .where("Id = ?", id)
-                .executeSingle();
-
-        if (storedCategory == null) {
-            return null;
-        }
-
-        return storedCategory.toModel();
+        return getCache().findCategory(id);
     }
 
     @Override
     public ShopItem findShopItem(Long id) {
-        final StoredShopItem storedShopItem = new Select()
-                .from(StoredShopItem.class)
-                .where("Id = ?", id)
-                .executeSingle();
-
-        if (storedShopItem == null) {
-            return null;
-        }
-
-        final Long productId = storedShopItem.product.getId();
-        final Product product;
-        if (productId != null) {
-            product = findProduct(productId);
-        } else {
-            product = null;
-        }
-
-        return storedShopItem.toModel(product);
+        return getCache().findShopItem(id);
     }
 
 
     @Override
     public void clearFirstLaunch() {
-        if (metadata.firstLaunch) {
-            metadata.firstLaunch = false;
-
-            final StoredMetadata metadata = getMetadataInstance();
-            metadata.firstLaunch = false;
-            metadata.save();
-        }
+        settingsStore.clearFirstLaunch();
     }
 
     @Override
     public void setShowTips(boolean showTips) {
-        if (metadata.showTips != showTips) {
-            metadata.showTips = showTips;
-            metadata.save();
-        }
+        settingsStore.setShowTips(showTips);
     }
 
     @Nullable
     @Override
     public Product findProductByExternalId(String externalId, String listId) {
-        final StoredSynchronizationRecord record = findSynchronizationRecord(externalId, listId, Product.class);
+        final Long internalId = getCompiledQueries().findInternalId(externalId, listId, Product.class);
 
-        if (record == null) {
+        if (internalId == null) {
             return null;
         }
 
-        return findProduct(record.entityInternalId);
+        return findProduct(internalId);
     }
 
     @Override
     public <E extends Entity> EntitySynchronizationRecord<E> findSynchronizationRecord(
             Long entityId, String listId, Class<E> clazz) {
 
-        final StoredSynchronizationRecord storedRecord = new Select().from(StoredSynchronizationRecord.class)
-                .where("EntityInternalId = ?", entityId)
-                .and("EntityClass = ?", clazz.getName())
-                .and("ListId = ?", listId)
-                .executeSingle();
-
-        if (storedRecord == null) {
-            return null;
-        }
-
-        return storedRecord.toModel();
+        return getCompiledQueries().findSyncRecord(entityId, listId, clazz);
     }
 
     @Override
     public <E extends Entity> EntitySynchronizationRecord<E> findSynchronizationByExternalId(
             String externalId, String listId, Class<E> clazz) {
-        final StoredSynchronizationRecord record = findSynchronizationRecord(externalId, listId, clazz);
-
-        if (record == null) {
-            return null;
-        }
-
-        return record.toModel();
-    }
-
-    private StoredSynchronizationRecord findSynchronizationRecord(
-            String externalId, String listId, Class<? extends Entity> clazz) {
-
-        return new Select()
-                .from(StoredSynchronizationRecord.class)
-                .where("EntityExternalId = ?", externalId)
-                .and("ListId = ?", listId)
-                .and("EntityClass = ?", clazz.getName())
-                .executeSingle();
+        return getCompiledQueries().findSyncRecord(externalId, listId, clazz);
     }
 
     @Nullable
     @Override
     public Product findProductByName(String name) {
-        final StoredProduct storedProduct = findEntityByName(name, StoredProduct.class);
+        final Long productId = findIdByName(name, StoredProduct.class);
 
-        return storedProduct != null ? storedProduct.toProduct() : null; 
+        return productId != null ? findProduct(productId) : null;
     }
 
     @Nullable
@@ -493,13 +695,13 @@ public class SqlliteDao implements Serializable, Dao {
             return null;
         }
 
-        final StoredSynchronizationRecord record = findSynchronizationRecord(externalId, listId, Category.class);
+        final Long internalId = getCompiledQueries().findInternalId(externalId, listId, Category.class);
 
-        if (record == null) {
+        if (internalId == null) {
             return null;
         }
 
-        return findCategory(record.entityInternalId);
+        return findCategory(internalId);
     }
 
     @Nullable
@@ -509,12 +711,12 @@ public class SqlliteDao implements Serializable, Dao {
             return null;
         }
 
-        final StoredSynchronizationRecord record = findSynchronizationRecord(externalId, listId, ShopItem.class);
-        if (record == null) {
+        final Long internalId = getCompiledQueries().findInternalId(externalId, listId, ShopItem.class);
+        if (internalId == null) {
             return null;
         }
 
-        return findShopItem(record.entityInternalId);
+        return findShopItem(internalId);
     }
 
     @Nullable
@@ -529,73 +731,64 @@ public class SqlliteDao implements Serializable, Dao {
             return null;
         }
 
-        final StoredShopItem storedShopItem = new Select()
-                .from(StoredShopItem.class)
-                .where("Product = ?", product.getId())
-                .executeSingle();
+        final Long shopItemId = getCompiledQueries().findShopItemIdByProduct(product.getId());
 
-        if (storedShopItem == null) {
+        if (shopItemId == null) {
             return null;
         }
 
-        return storedShopItem.toModel(product);
+        return findShopItem(shopItemId);
     }
 
     @Nullable
     @Override
     public Category findCategoryByName(String name) {
-        final StoredCategory storedCategory = findEntityByName(name, StoredCategory.class);
+        final Long categoryId = findIdByName(name, StoredCategory.class);
 
-        return storedCategory != null ? storedCategory.toModel() : null;
+        return categoryId != null ? findCategory(categoryId) : null;
     }
 
     @Nullable
-    private <T extends Model & Named> T findEntityByName(String name, Class<T> clazz) {
-        boolean canSearchIgnoreCase = canSqlSearchIgnoreCase(name);
-
-        if (canSearchIgnoreCase) {
-            return new Select()
-                    .from(clazz)
-                    .where("name = ? COLLATE NOCASE", name)
-                    .executeSingle();
-        }
-
-        final List<T> existingCategories = new Select()
-                .from(clazz)
-                .execute();
-        for (T entity : existingCategories) {
-            if (StringUtils.equalIgnoreCase(entity.getName(), name)) {
-                return entity;
-            }
+    private <T extends Model & Named> Long findIdByName(String name, Class<T> clazz) {
+        if (name == null) {
+            return null;
         }
 
-        return null;
-    }
-
-    private boolean canSqlSearchIgnoreCase(String value) {
-        return (value == null) || CharMatcher.ascii().matchesAllOf(value);
+        return getCompiledQueries().findIdByNormalizedName(
+                Cache.getTableName(clazz), ModelHelper.normalizeName(name));
     }
 
     @Override
     public List<ShopItem> findLinkedItems(Product product) {
-        final List<ShopItem> shopItems = getShopItems();
+        final String tableName = Cache.getTableName(StoredShopItem.class);
+
         final List<ShopItem> linkedItems = new ArrayList<>();
-        for (ShopItem shopItem : shopItems) {
-            if (Objects.equal(product, shopItem.getProduct())) {
-                linkedItems.add(shopItem);
+
+        final Cursor cursor = Cache.openDatabase().rawQuery(
+                "SELECT Id FROM " + tableName + " WHERE Product = ?",
+                new String[]{String.valueOf(product.getId())});
+        try {
+            while (cursor.moveToNext()) {
+                final ShopItem shopItem = findShopItem(cursor.getLong(0));
+                if (shopItem != null) {
+                    linkedItems.add(shopItem);
+                }
             }
+        } finally {
+            cursor.close();
         }
+
         return linkedItems;
     }
 
     @Override
     public <T extends Entity> void addEntityListener(Class<T> clazz, EntityListener<T> listener) {
-        listeners.put(clazz, listener);
+        notifier.addListener(clazz, listener);
     }
 
     @Override
     public <T extends Entity> void removeEntityListener(Class<T> entityClass, EntityListener<T> listener) {
-        listeners.remove(entityClass, listener);
+        notifier.removeListener(entityClass, listener);
     }
 
     @Override
@@ -621,7 +814,7 @@ public class SqlliteDao implements Serializable, Dao {
 
         final List<StoredSynchronizationRecord> storedRecords = new Select()
                 .from(StoredSynchronizationRecord.class)
-                .where("EntityInternalId = ? AND EntityClass = ?", internalId, entityClass.getName())
+                .where("EntityInternalId = ? AND EntityType = ?", internalId, EntityTypes.getCode(entityClass))
                 .execute();
 
         for (StoredSynchronizationRecord storedRecord : storedRecords) {
@@ -640,7 +833,7 @@ public class SqlliteDao implements Serializable, Dao {
                 .where("ListId = ?", listId);
 
         if (entityClass != null) {
-            statement.and("EntityClass = ?", entityClass.getName());
+            statement.and("EntityType = ?", EntityTypes.getCode(entityClass));
         }
 
         final List<StoredSynchronizationRecord> records = statement.execute();
@@ -653,17 +846,52 @@ public class SqlliteDao implements Serializable, Dao {
         return result;
     }
 
+    @Override
+    public List<EntitySynchronizationRecord<Entity>> loadDeletedSynchronizationRecords() {
+        final List<StoredSynchronizationRecord> records = new Select()
+                .from(StoredSynchronizationRecord.class)
+                .where("Deleted = ?", true)
+                .execute();
+
+        final List<EntitySynchronizationRecord<Entity>> result = new ArrayList<>(records.size());
+        for (StoredSynchronizationRecord record : records) {
+            result.add(record.toModel());
+        }
+
+        return result;
+    }
+
     @Override
     public <T extends Entity> Map<String, T> mapExternalIds(Set<T> entities, String listId) throws MissingExternalIdException {
         Map<String, T> result = new LinkedHashMap<>();
 
+        final Multimap<Class<? extends Entity>, Long> idsPerClass = LinkedHashMultimap.create();
         for (T entity : entities) {
-            final StoredSynchronizationRecord record = new Select()
+            idsPerClass.put(entity.getClass(), entity.getId());
+        }
+
+        final Map<Class<? extends Entity>, Map<Long, StoredSynchronizationRecord>> recordsPerClass =
+                new LinkedHashMap<>();
+        for (Class<? extends Entity> entityClass : idsPerClass.keySet()) {
+            final String idsString = Joiner.on(",").join(idsPerClass.get(entityClass));
+
+            final List<StoredSynchronizationRecord> records = new Select()
                     .from(StoredSynchronizationRecord.class)
-                    .where("EntityClass = ?", entity.getClass().getName())
+                    .where("EntityType = ?", EntityTypes.getCode(entityClass))
                     .and("ListId = ?", listId)
-                    .and("EntityInternalId = ?", entity.getId())
-                    .executeSingle();
+                    .and("EntityInternalId IN (" + idsString + ")")
+                    .execute();
+
+            final Map<Long, StoredSynchronizationRecord> recordsMap = new LinkedHashMap<>();
+            for (StoredSynchronizationRecord record : records) {
+                recordsMap.put(record.entityInternalId, record);
+            }
+            recordsPerClass.put(entityClass, recordsMap);
+        }
+
+        for (T entity : entities) {
+            final StoredSynchronizationRecord record =
+                    recordsPerClass.get(entity.getClass()).get(entity.getId());
             if (record == null) {
                 throw new MissingExternalIdException("Entity (" + entity + ") " +
                         "has no sync record (listId=" + listId + "");
@@ -675,31 +903,91 @@ public class SqlliteDao implements Serializable, Dao {
         return result;
     }
 
-    private <T extends Entity> void notifyEntityAdded(T entity) {
-        final Collection<EntityListener<? extends Entity>> listeners = this.listeners.get(entity.getClass());
+    @Override
+    public void runInTransaction(Runnable action) {
+        if (notifier.isInTransaction()) {
+            action.run();
+            return;
+        }
+
+        notifier.beginTransaction();
+
+        boolean successful = false;
+        ActiveAndroid.beginTransaction();
+        try {
+            action.run();
 
-        for (EntityListener<? extends Entity> listener : listeners) {
-            ((EntityListener<T>) listener).entityAdded(entity);
+            ActiveAndroid.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            ActiveAndroid.endTransaction();
+
+            if (!successful) {
+                cache.invalidate();
+            }
+
+            notifier.endTransaction(successful);
         }
     }
 
-    private <T extends Entity> void notifyEntityChanged(T entity) {
-        final Collection<EntityListener<? extends Entity>> listeners = this.listeners.get(entity.getClass());
+    @Override
+    public long getSuppressedWritesCount() {
+        return suppressedWrites.get();
+    }
 
-        for (EntityListener<? extends Entity> listener : listeners) {
-            ((EntityListener<T>) listener).entityChanged(entity);
-        }
+    @Override
+    public List<ChangeLogEntry> changesSince(long seq) {
+        return getCompiledQueries().findChangesSince(seq);
+    }
+
+    @Override
+    public long getLastChangeSeq() {
+        return getCompiledQueries().getLastChangeSeq();
+    }
+
+    @Override
+    public long getCompactedChangeSeq() {
+        return getCompiledQueries().getCompactedSeq();
+    }
+
+    private <T extends Entity> void notifyEntityAdded(T entity) {
+        logChange(entity, Operation.ADDED);
+        notifier.notify(Operation.ADDED, entity);
+    }
+
+    private <T extends Entity> void notifyEntityChanged(T entity) {
+        logChange(entity, Operation.CHANGED);
+        notifier.notify(Operation.CHANGED, entity);
     }
 
     private <T extends Entity> void notifyEntityRemoved(T entity) {
-        final Collection<EntityListener<? extends Entity>> listeners = this.listeners.get(entity.getClass());
+        logChange(entity, Operation.REMOVED);
+        notifier.notify(Operation.REMOVED, entity);
+    }
 
-        for (EntityListener<? extends Entity> listener : listeners) {
-            ((EntityListener<T>) listener).entityRemoved(entity);
+    // is called inside the transaction of the change itself, see runInTransaction
+    private void logChange(Entity entity, Operation operation) {
+        if (!LOGGED_CLASSES.contains(entity.getClass())) {
+            return;
+        }
+
+        getCompiledQueries().appendChange(entity, operation);
+
+        if ((appendedChanges.incrementAndGet() % CompiledQueries.CHANGE_LOG_COMPACTION_INTERVAL) == 0) {
+            MAINTENANCE_SERVICE.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compactChangeLog();
+                    } catch (Exception e) {
+                        Log.e("SqlliteDao", "compactChangeLog: failed to compact change log", e);
+                    }
+                }
+            });
         }
     }
 
-    @Table(name = "Categories")
+    @Table(name = Tables.CATEGORIES)
     public static class StoredCategory extends Model implements Named {
         @Column(name = "Name")
         private String name;
@@ -707,6 +995,9 @@ public class SqlliteDao implements Serializable, Dao {
         @Column(name = "Color")
         private Integer color;
 
+        @Column(name = "NormalizedName", unique = true)
+        private String normalizedName;
+
         public StoredCategory() {
             super();
         }
@@ -721,6 +1012,8 @@ public class SqlliteDao implements Serializable, Dao {
         public void fillFrom(Category category) {
             this.name = category.getName();
             this.color = category.getColor();
+
+            fillNormalizedName();
         }
 
         public Category toModel() {
@@ -735,15 +1028,20 @@ public class SqlliteDao implements Serializable, Dao {
         public String getName() {
             return name;
         }
+
+        @Override
+        public void fillNormalizedName() {
+            normalizedName = ModelHelper.normalizeName(name);
+        }
     }
 
-    @Table(name = "ProductCategoryLinks")
+    @Table(name = Tables.PRODUCT_CATEGORY_LINKS)
     public static class StoredProductCategoryLink extends Model {
 
-        @Column(name = "product")
+        @Column(name = "product", index = true)
         private StoredProduct product;
 
-        @Column(name = "category")
+        @Column(name = "category", index = true)
         private StoredCategory category;
 
         public StoredProductCategoryLink() {
@@ -766,7 +1064,7 @@ public class SqlliteDao implements Serializable, Dao {
         }
     }
 
-    @Table(name = "Products")
+    @Table(name = Tables.PRODUCTS)
     public static class StoredProduct extends Model implements Named {
         @Column(name = "Name")
         private String name;
@@ -783,6 +1081,12 @@ public class SqlliteDao implements Serializable, Dao {
         @Column(name = "LastBuyDate")
         private Date lastBuyDate;
 
+        @Column(name = "NormalizedName", unique = true)
+        private String normalizedName;
+
+        @Column(name = "SearchWords")
+        private String searchWords;
+
         private final List<StoredProductCategoryLink> deletedLinks = new ArrayList<>();
         private final List<StoredProductCategoryLink> newLinks = new ArrayList<>();
 
@@ -805,6 +1109,9 @@ public class SqlliteDao implements Serializable, Dao {
             this.periodType = product.getPeriodType();
             this.lastBuyDate = product.getLastBuyDate();
 
+            fillNormalizedName();
+            searchWords = ProductSearchIndex.toSearchWords(name);
+
             Set<Long> categoryIds = new LinkedHashSet<>();
             for (Category category : product.getCategories()) {
                 categoryIds.add(category.getId());
@@ -838,14 +1145,6 @@ public class SqlliteDao implements Serializable, Dao {
         }
 
         public Product toProduct(@Nullable Map<Long, Category> categoryMap) {
-            Product product = new Product();
-            product.setName(this.name);
-            product.setId(this.getId());
-            product.setDefaultUnits(this.unitOfMeasure);
-            product.setPeriodCount(this.periodCount);
-            product.setPeriodType(this.periodType);
-            product.setLastBuyDate(this.lastBuyDate);
-
             Set<Category> productCategories = new LinkedHashSet<>();
             for (StoredCategory storedCategory : this.getCategories()) {
                 final Category category;
@@ -858,6 +1157,29 @@ public class SqlliteDao implements Serializable, Dao {
                 productCategories.add(category);
             }
 
+            return createProduct(productCategories);
+        }
+
+        public Product toProduct(Map<Long, Category> categoryMap, Collection<Long> categoryIds) {
+            Set<Category> productCategories = new LinkedHashSet<>();
+            for (Long categoryId : categoryIds) {
+                final Category category = categoryMap.get(categoryId);
+                if (category != null) {
+                    productCategories.add(category);
+                }
+            }
+
+            return createProduct(productCategories);
+        }
+
+        private Product createProduct(Set<Category> productCategories) {
+            Product product = new Product();
+            product.setName(this.name);
+            product.setId(this.getId());
+            product.setDefaultUnits(this.unitOfMeasure);
+            product.setPeriodCount(this.periodCount);
+            product.setPeriodType(this.periodType);
+            product.setLastBuyDate(this.lastBuyDate);
             product.setCategories(productCategories);
 
             return product;
@@ -893,6 +1215,11 @@ public class SqlliteDao implements Serializable, Dao {
         public String getName() {
             return name;
         }
+
+        @Override
+        public void fillNormalizedName() {
+            normalizedName = ModelHelper.normalizeName(name);
+        }
     }
 
     @NonNull
@@ -910,11 +1237,13 @@ public class SqlliteDao implements Serializable, Dao {
 
     private interface Named {
         String getName();
+
+        void fillNormalizedName();
     }
     
-    @Table(name = "ShopItems")
+    @Table(name = Tables.SHOP_ITEMS)
     public static class StoredShopItem extends Model {
-        @Column(name = "Product")
+        @Column(name = "Product", index = true)
         private StoredProduct product;
 
         @Column(name = "Quantity")
@@ -966,7 +1295,7 @@ public class SqlliteDao implements Serializable, Dao {
         }
     }
 
-    @Table(name = "Settings")
+    @Table(name = Tables.SETTINGS)
     public static class StoredSettings extends Model {
 
         @Column(name = "Language")
@@ -977,7 +1306,7 @@ public class SqlliteDao implements Serializable, Dao {
         }
     }
 
-    @Table(name = "Metadata")
+    @Table(name = Tables.METADATA)
     public static class StoredMetadata extends Model {
 
         @Column(name = "FirstLaunch")
@@ -989,13 +1318,30 @@ public class SqlliteDao implements Serializable, Dao {
 
     }
 
-    @Table(name = "StoredSynchronizationRecords")
+    @Table(name = Tables.CHANGE_LOG)
+    public static class StoredChangeLogEntry extends Model {
+
+        // code from EntityTypes
+        @Column(name = "EntityType", notNull = true)
+        private Integer entityType;
+
+        @Column(name = "EntityInternalId", notNull = true)
+        private Long entityInternalId;
+
+        @Column(name = "Operation", notNull = true)
+        private String operation;
+
+        @Column(name = "Timestamp", notNull = true)
+        private Long timestamp;
+    }
+
+    @Table(name = Tables.SYNC_RECORDS)
     public static class StoredSynchronizationRecord extends Model {
 
         @Column(name = "EntityExternalId", unique = true, notNull = true)
         private String entityExternalId;
 
-        @Column(name = "EntityInternalId", notNull = true)
+        @Column(name = "EntityInternalId", notNull = true, indexGroups = {"InternalIdLookup"})
         private Long entityInternalId;
 
         @Column(name = "Deleted")
@@ -1004,10 +1350,11 @@ public class SqlliteDao implements Serializable, Dao {
         @Column(name = "LastChangeDate")
         private Date lastChangeDate;
 
-        @Column(name = "EntityClass", notNull = true)
-        private String entityClass;
+        // code from EntityTypes
+        @Column(name = "EntityType", notNull = true, indexGroups = {"InternalIdLookup", "TypeListLookup"})
+        private Integer entityType;
 
-        @Column(name = "ListId")
+        @Column(name = "ListId", indexGroups = {"InternalIdLookup", "TypeListLookup"})
         private String listId;
 
         private static StoredSynchronizationRecord create(EntitySynchronizationRecord record) {
@@ -1018,7 +1365,7 @@ public class SqlliteDao implements Serializable, Dao {
         }
 
         public void fillFrom(EntitySynchronizationRecord record) {
-            entityClass = record.getEntityClass().getName();
+            entityType = EntityTypes.getCode(record.getEntityClass());
             entityExternalId = record.getExternalId();
             entityInternalId = record.getInternalId();
             deleted = record.isDeleted();
@@ -1034,12 +1381,7 @@ public class SqlliteDao implements Serializable, Dao {
             record.setDeleted(deleted);
             record.setLastChangeDate(lastChangeDate);
             record.setListId(listId);
-
-            try {
-                record.setEntityClass((Class<T>) Class.forName(entityClass));
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
+            record.setEntityClass((Class<T>) EntityTypes.getEntityClass(entityType));
 
             return record;
         }
@@ -0,0 +1,18 @@
+package net.buggy.shoplist.data;
+
+
+// Names of the tables, shared by ActiveAndroid models and hand written queries
+final class Tables {
+
+    static final String CATEGORIES = "Categories";
+    static final String PRODUCTS = "Products";
+    static final String PRODUCT_CATEGORY_LINKS = "ProductCategoryLinks";
+    static final String SHOP_ITEMS = "ShopItems";
+    static final String SETTINGS = "Settings";
+    static final String METADATA = "Metadata";
+    static final String CHANGE_LOG = "ChangeLog";
+    static final String SYNC_RECORDS = "StoredSynchronizationRecords";
+
+    private Tables() {
+    }
+}
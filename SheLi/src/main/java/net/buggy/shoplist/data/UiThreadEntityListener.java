@@ -1,52 +1,192 @@
 package net.buggy.shoplist.data;
 
 
+import android.annotation.TargetApi;
 import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
 
+import net.buggy.shoplist.data.ChangeLogEntry.Operation;
 import net.buggy.shoplist.model.Entity;
 
-public abstract class UiThreadEntityListener<T extends Entity> implements EntityListener<T> {
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Collects events of background threads and delivers them on the UI thread once per frame,
+// events of the UI thread are delivered immediately.
+// Consecutive events of the same type are delivered as a single batch
+public abstract class UiThreadEntityListener<T extends Entity> extends BatchEntityListener<T> {
 
     private final Activity activity;
 
+    private final Queue<PendingEvent<T>> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean(false);
+
     protected UiThreadEntityListener(Activity activity) {
         this.activity = activity;
     }
 
     @Override
     public void entityAdded(final T newEntity) {
-        activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                entityAddedUi(newEntity);
-            }
-        });
+        enqueue(Operation.ADDED, Collections.singletonList(newEntity));
     }
 
     @Override
     public void entityChanged(final T changedEntity) {
-        activity.runOnUiThread(new Runnable() {
+        enqueue(Operation.CHANGED, Collections.singletonList(changedEntity));
+    }
+
+    @Override
+    public void entityRemoved(final T removedEntity) {
+        enqueue(Operation.REMOVED, Collections.singletonList(removedEntity));
+    }
+
+    @Override
+    public void entitiesAdded(Collection<T> newEntities) {
+        enqueue(Operation.ADDED, newEntities);
+    }
+
+    @Override
+    public void entitiesChanged(Collection<T> changedEntities) {
+        enqueue(Operation.CHANGED, changedEntities);
+    }
+
+    @Override
+    public void entitiesRemoved(Collection<T> removedEntities) {
+        enqueue(Operation.REMOVED, removedEntities);
+    }
+
+    public abstract void entityAddedUi(T newEntity);
+
+    public abstract void entityChangedUi(T changedEntity);
+
+    public abstract void entityRemovedUi(T removedEntity);
+
+    public void entitiesAddedUi(List<T> newEntities) {
+        for (T newEntity : newEntities) {
+            entityAddedUi(newEntity);
+        }
+    }
+
+    public void entitiesChangedUi(List<T> changedEntities) {
+        for (T changedEntity : changedEntities) {
+            entityChangedUi(changedEntity);
+        }
+    }
+
+    public void entitiesRemovedUi(List<T> removedEntities) {
+        for (T removedEntity : removedEntities) {
+            entityRemovedUi(removedEntity);
+        }
+    }
+
+    private void enqueue(Operation operation, Collection<T> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        pendingEvents.add(new PendingEvent<>(operation, entities));
+
+        // UI thread writers read the adapter right after the write, so their events are not deferred.
+        // The earlier events of background threads are dispatched first to keep the order
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            dispatchPendingEvents();
+            return;
+        }
+
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleDispatch();
+                }
+            });
+        }
+    }
+
+    private void scheduleDispatch() {
+        final Runnable dispatchRunnable = new Runnable() {
             @Override
             public void run() {
-                entityChangedUi(changedEntity);
+                dispatchPendingEvents();
             }
-        });
+        };
 
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback(dispatchRunnable);
+        } else {
+            new Handler(Looper.getMainLooper()).post(dispatchRunnable);
+        }
     }
 
-    @Override
-    public void entityRemoved(final T removedEntity) {
-        activity.runOnUiThread(new Runnable() {
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void postFrameCallback(final Runnable runnable) {
+        Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
             @Override
-            public void run() {
-                entityRemovedUi(removedEntity);
+            public void doFrame(long frameTimeNanos) {
+                runnable.run();
             }
         });
     }
 
-    public abstract void entityAddedUi(T newEntity);
+    private void dispatchPendingEvents() {
+        dispatchScheduled.set(false);
 
-    public abstract void entityChangedUi(T changedEntity);
+        Operation batchOperation = null;
+        final Map<T, T> batch = new LinkedHashMap<>();
 
-    public abstract void entityRemovedUi(T removedEntity);
+        PendingEvent<T> event;
+        while ((event = pendingEvents.poll()) != null) {
+            if ((batchOperation != null) && (batchOperation != event.operation)) {
+                dispatchBatch(batchOperation, new ArrayList<>(batch.values()));
+                batch.clear();
+            }
+
+            batchOperation = event.operation;
+
+            // repeated events of the same entity are merged, the latest state wins
+            for (T entity : event.entities) {
+                batch.put(entity, entity);
+            }
+        }
+
+        if (batchOperation != null) {
+            dispatchBatch(batchOperation, new ArrayList<>(batch.values()));
+        }
+    }
+
+    private void dispatchBatch(Operation operation, List<T> entities) {
+        switch (operation) {
+            case ADDED:
+                entitiesAddedUi(entities);
+                break;
+            case CHANGED:
+                entitiesChangedUi(entities);
+                break;
+            case REMOVED:
+                entitiesRemovedUi(entities);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported operation " + operation);
+        }
+    }
+
+    private static final class PendingEvent<T> {
+        private final Operation operation;
+        private final Collection<T> entities;
+
+        private PendingEvent(Operation operation, Collection<T> entities) {
+            this.operation = operation;
+            this.entities = entities;
+        }
+    }
 }
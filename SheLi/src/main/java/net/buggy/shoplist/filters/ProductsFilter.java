@@ -1,32 +1,27 @@
 package net.buggy.shoplist.filters;
 
 import com.android.internal.util.Predicate;
-import com.google.common.base.Strings;
 
 import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.ModelHelper;
 import net.buggy.shoplist.model.Product;
 
 import java.util.List;
 
 public class ProductsFilter implements Predicate<Product> {
 
-    private final String text;
+    private final List<String> searchWords;
     private final List<Category> categories;
 
     public ProductsFilter(String text, List<Category> categories) {
-        this.text = text;
+        this.searchWords = ModelHelper.splitSearchWords(text);
         this.categories = categories;
     }
 
     @Override
     public boolean apply(Product product) {
-        if (!Strings.isNullOrEmpty(text)) {
-            final String name = product.getName().toLowerCase();
-            final String text = this.text.toLowerCase();
-
-            if (!name.contains(text)) {
-                return false;
-            }
+        if (!ModelHelper.matchesSearchWords(product.getName(), searchWords)) {
+            return false;
         }
 
         if (categories == null) {
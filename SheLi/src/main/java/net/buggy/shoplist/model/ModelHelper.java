@@ -15,7 +15,9 @@ import net.buggy.shoplist.data.Dao;
 import net.buggy.shoplist.utils.DateUtils;
 import net.buggy.shoplist.utils.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -69,19 +71,9 @@ public class ModelHelper {
 
     public static boolean isUnique(Category category, String name, ShopListActivity activity) {
         final Dao dao = activity.getDao();
-        final List<Category> categories = dao.getCategories();
+        final Category anotherCategory = dao.findCategoryByName(name);
 
-        for (Category anotherCategory : categories) {
-            if (Objects.equal(anotherCategory, category)) {
-                continue;
-            }
-
-            if (StringUtils.equalIgnoreCase(anotherCategory.getName(), name)) {
-                return false;
-            }
-        }
-
-        return true;
+        return (anotherCategory == null) || Objects.equal(anotherCategory, category);
     }
 
     public static Category createCategory(String name) {
@@ -189,6 +181,43 @@ public class ModelHelper {
         return name.trim().toLowerCase();
     }
 
+    // lower case words of the text, separated by any non letter or digit characters
+    public static List<String> splitSearchWords(@Nullable String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+
+        final List<String> result = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{Nd}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+
+        return result;
+    }
+
+    // every search word should start some word of the name
+    public static boolean matchesSearchWords(String name, List<String> searchWords) {
+        final List<String> nameWords = splitSearchWords(name);
+
+        for (String searchWord : searchWords) {
+            boolean found = false;
+            for (String nameWord : nameWords) {
+                if (nameWord.startsWith(searchWord)) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public static <T extends Entity> Map<Long, T> mapIds(Collection<T> entities) {
         final Map<Long, T> result = new LinkedHashMap<>();
 
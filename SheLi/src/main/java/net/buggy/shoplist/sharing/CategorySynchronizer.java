@@ -73,23 +73,24 @@ public class CategorySynchronizer extends DaoEntitySynchronizer<Category> {
         final EntitySynchronizationRecord<Category> synchronizationRecord = addSynchronizationRecord(
                 clientCategory.getId(), serverCategory.getKey(), listId, new Date());
 
-        updateServerEntity(clientCategory, serverCategory, synchronizationRecord);
+        serverCategory.updateChildren(getServerValues(clientCategory, synchronizationRecord));
     }
 
     @Override
-    public void updateServerEntity(Category clientEntity, DatabaseReference serverEntity) {
+    public Map<String, Object> getServerValues(Category clientEntity, DatabaseReference serverEntity) {
         final String listId = getListIdFromEntity(serverEntity);
         final EntitySynchronizationRecord<Category> synchronizationRecord = getDao().findSynchronizationRecord(
                 clientEntity.getId(), listId, Category.class);
 
         if (synchronizationRecord != null) {
-            updateServerEntity(clientEntity, serverEntity, synchronizationRecord);
-        } else {
-            Log.w("CategorySynchronizer", "updateServerEntity: sync record not found" +
-                    ". listId=" + listId +
-                    ", externalId=" + serverEntity +
-                    ", category=" + clientEntity);
+            return getServerValues(clientEntity, synchronizationRecord);
         }
+
+        Log.w("CategorySynchronizer", "getServerValues: sync record not found" +
+                ". listId=" + listId +
+                ", externalId=" + serverEntity +
+                ", category=" + clientEntity);
+        return null;
     }
 
     @Override
@@ -97,9 +98,8 @@ public class CategorySynchronizer extends DaoEntitySynchronizer<Category> {
         return getDao().findCategory(internalId);
     }
 
-    private void updateServerEntity(
+    private Map<String, Object> getServerValues(
             Category clientEntity,
-            DatabaseReference serverEntity,
             EntitySynchronizationRecord<Category> synchronizationRecord) {
 
         Map<String, Object> valuesMap = new LinkedHashMap<>();
@@ -108,7 +108,7 @@ public class CategorySynchronizer extends DaoEntitySynchronizer<Category> {
         valuesMap.put("lastChangeDate", serializeDate(synchronizationRecord.getLastChangeDate()));
         valuesMap.put("color", clientEntity.getColor());
 
-        serverEntity.updateChildren(valuesMap);
+        return valuesMap;
     }
 
     @Override
@@ -6,6 +6,7 @@ import com.google.firebase.database.DatabaseReference;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 public abstract class EntitySynchronizer<T> {
 
@@ -23,7 +24,15 @@ public abstract class EntitySynchronizer<T> {
 
     public abstract void createServerEntity(T clientEntity, DatabaseReference parentNode);
 
-    public abstract void updateServerEntity(T clientEntity, DatabaseReference serverEntity);
+    // returns null, if the entity cannot be written to the server
+    public abstract Map<String, Object> getServerValues(T clientEntity, DatabaseReference serverEntity);
+
+    public void updateServerEntity(T clientEntity, DatabaseReference serverEntity) {
+        final Map<String, Object> values = getServerValues(clientEntity, serverEntity);
+        if (values != null) {
+            serverEntity.updateChildren(values);
+        }
+    }
 
     public abstract T findOnClient(Long internalId);
 
@@ -11,8 +11,9 @@ import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.firebase.auth.FirebaseAuth;
@@ -35,6 +36,7 @@ import net.buggy.shoplist.model.ShopItem;
 import net.buggy.shoplist.utils.ExecutorServiceMonitoringDecorator;
 import net.buggy.shoplist.utils.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedHashMap;
@@ -44,6 +46,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -51,6 +54,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -59,18 +64,38 @@ import static net.buggy.shoplist.sharing.EntitySynchronizer.getLastChangeDate;
 public class FirebaseSynchronizer {
 
     public static final int RELOAD_EMAIL_DELAY = 30000;
+    public static final long TOMBSTONES_COLLECTION_DELAY = TimeUnit.MINUTES.toMillis(5);
+    public static final long TOMBSTONES_COLLECTION_PERIOD = TimeUnit.HOURS.toMillis(12);
+    private static final long TOMBSTONES_CHECK_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
     private final ExecutorServiceMonitoringDecorator BACKGROUND_SERVICE =
             createExecutor("Background-service");
 
+    // tombstone checks wait for the server, so they shouldn't block synchronization
+    private final ExecutorServiceMonitoringDecorator TOMBSTONES_SERVICE =
+            createExecutor("Tombstones-service");
+
     private final ExecutorServiceMonitoringDecorator FIREBASE_NOTIFICATIONS_SERVICE =
             createExecutor("Server-notification-service");
 
     private final Timer timer = new Timer("Synchronizer-timer", true);
 
+    private final ServerWriteBuffer writeBuffer = new ServerWriteBuffer(
+            timer,
+            ServerWriteBuffer.DEFAULT_FLUSH_DELAY,
+            ServerWriteBuffer.DEFAULT_MAX_PENDING_ENTITIES,
+            new ServerWriteBuffer.FailureListener() {
+                @Override
+                public void writeFailed(Entity clientEntity, Exception exception) {
+                    failureCallback.updateServerEntityFailed(clientEntity, exception);
+                }
+            });
+
     private FirebaseDatabase firebaseDatabase;
 
     private enum UpdateTarget {NONE, SERVER, CLIENT}
 
+    private enum ServerEntityState {EXISTS, REMOVED, INACCESSIBLE, UNKNOWN}
+
     enum State {UNSUBSCRIBED, INITIALIZING, SUBSCRIBED}
 
     private volatile FirebaseAuth.AuthStateListener authStateListener;
@@ -96,7 +121,7 @@ public class FirebaseSynchronizer {
     private final EntitySynchronizer<ShopItem> shopItemSynchronizer;
     private final FailureCallback failureCallback;
 
-    private final Map<Class<? extends Entity>, BiMap<Long, EntitySynchronizationRecord>>
+    private final Map<Class<? extends Entity>, SyncRecordIndex<? extends Entity>>
             synchronizationRecords = new ConcurrentHashMap<>();
 
     public FirebaseSynchronizer(Dao dao, FailureCallback failureCallback) {
@@ -153,6 +178,13 @@ public class FirebaseSynchronizer {
         subscribeOnClientChanges(productSynchronizer);
         subscribeOnClientChanges(shopItemSynchronizer);
         subscribeOnSynchronizationRecords();
+
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                collectTombstones(TombstonePolicy.DEFAULT);
+            }
+        }, TOMBSTONES_COLLECTION_DELAY, TOMBSTONES_COLLECTION_PERIOD);
     }
 
     private void waitEmailVerification(final FirebaseUser user) {
@@ -181,6 +213,8 @@ public class FirebaseSynchronizer {
         }
         daoListeners.clear();
 
+        writeBuffer.flush();
+        writeBuffer.logMetrics();
         timer.cancel();
     }
 
@@ -215,13 +249,22 @@ public class FirebaseSynchronizer {
 
     //tests only
     void waitBackgroundTasks() {
-        while (BACKGROUND_SERVICE.isExecuting() || FIREBASE_NOTIFICATIONS_SERVICE.isExecuting()) {
+        while (BACKGROUND_SERVICE.isExecuting()
+                || FIREBASE_NOTIFICATIONS_SERVICE.isExecuting()
+                || TOMBSTONES_SERVICE.isExecuting()) {
             try {
                 Thread.sleep(0);
             } catch (InterruptedException e) {
                 return;
             }
         }
+
+        writeBuffer.flush();
+    }
+
+    //tests only
+    ServerWriteBuffer getWriteBuffer() {
+        return writeBuffer;
     }
 
     private synchronized void subscribeOnFirebase() {
@@ -339,16 +382,24 @@ public class FirebaseSynchronizer {
                 try {
                     loadAndCacheSyncRecords(userList.getKey());
 
-                    final Future<Boolean> categoriesBulkFuture =
-                            bulkSynchronizeEntities(userList, categoriesSynchronizer);
+                    final Future<DataSnapshot> categoriesSnapshot =
+                            requestServerSnapshot(userList, categoriesSynchronizer);
+                    final Future<DataSnapshot> productsSnapshot =
+                            requestServerSnapshot(userList, productSynchronizer);
+                    final Future<DataSnapshot> shopItemsSnapshot =
+                            requestServerSnapshot(userList, shopItemSynchronizer);
+
+                    // applied in dependency order: products refer categories, shop items - products
+                    final Future<Boolean> categoriesBulkFuture = bulkSynchronizeEntities(
+                            userList, categoriesSynchronizer, waitFirebaseFuture(categoriesSnapshot));
                     waitFirebaseFuture(categoriesBulkFuture);
 
-                    final Future<Boolean> productsBulkFuture =
-                            bulkSynchronizeEntities(userList, productSynchronizer);
+                    final Future<Boolean> productsBulkFuture = bulkSynchronizeEntities(
+                            userList, productSynchronizer, waitFirebaseFuture(productsSnapshot));
                     waitFirebaseFuture(productsBulkFuture);
 
-                    final Future<Boolean> shopItemsBulkFuture =
-                            bulkSynchronizeEntities(userList, shopItemSynchronizer);
+                    final Future<Boolean> shopItemsBulkFuture = bulkSynchronizeEntities(
+                            userList, shopItemSynchronizer, waitFirebaseFuture(shopItemsSnapshot));
                     waitFirebaseFuture(shopItemsBulkFuture);
 
                     subscribeOnServerChanges(userList, categoriesSynchronizer);
@@ -378,11 +429,10 @@ public class FirebaseSynchronizer {
                 dao.loadSynchronizationRecords(null, listId);
 
         for (EntitySynchronizationRecord<Entity> record : recordsList) {
-            final BiMap<Long, EntitySynchronizationRecord<Entity>> map =
-                    getRecordsMapForClass(record.getEntityClass());
+            final SyncRecordIndex<Entity> index = getRecordsIndex(record.getEntityClass());
 
             final EntitySynchronizationRecord<Entity> cachedRecord =
-                    map.get(record.getInternalId());
+                    index.get(record.getInternalId());
             if (cachedRecord != null) {
                 Log.w("FirebaseSynchronizer", "loadAndCacheSyncRecords: "
                         + "2 records found with the same internal id. Removing the 2nd record"
@@ -390,9 +440,134 @@ public class FirebaseSynchronizer {
                         + ", record2=" + record);
                 dao.removeSynchronizationRecord(record);
             } else {
-                map.put(record.getInternalId(), record);
+                index.put(record);
+            }
+        }
+    }
+
+    // purges deleted sync records, which are confirmed by the server.
+    // Records of the lists, which cannot be read anymore, are purged when they are too old.
+    // Returns the number of purged records
+    public Future<Integer> collectTombstones(final TombstonePolicy policy) {
+        return TOMBSTONES_SERVICE.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                final DatabaseReference userList = activeUserList;
+                final String activeListId = (userList != null) ? userList.getKey() : null;
+                final long now = System.currentTimeMillis();
+
+                final List<EntitySynchronizationRecord<Entity>> records =
+                        dao.loadDeletedSynchronizationRecords();
+
+                // all the checks are issued at once and share the same deadline
+                final List<ListenableFuture<ServerEntityState>> checks = new ArrayList<>();
+                for (EntitySynchronizationRecord<Entity> record : records) {
+                    checks.add(checkServerEntity(record));
+                }
+
+                try {
+                    Futures.successfulAsList(checks).get(TOMBSTONES_CHECK_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    Log.i("FirebaseSynchronizer", "collectTombstones: not all server checks completed"
+                            + ", keeping unchecked tombstones");
+                }
+
+                final List<EntitySynchronizationRecord<Entity>> purgedRecords = new ArrayList<>();
+                for (int i = 0; i < records.size(); i++) {
+                    final EntitySynchronizationRecord<Entity> record = records.get(i);
+                    final ListenableFuture<ServerEntityState> check = checks.get(i);
+
+                    final ServerEntityState state = check.isDone()
+                            ? Futures.getUnchecked(check)
+                            : ServerEntityState.UNKNOWN;
+
+                    if (state == ServerEntityState.REMOVED) {
+                        purgedRecords.add(record);
+
+                    } else if (state == ServerEntityState.INACCESSIBLE) {
+                        final long maxAge = Objects.equal(record.getListId(), activeListId)
+                                ? policy.getActiveListMaxAge()
+                                : policy.getOtherListsMaxAge();
+
+                        // without the date the age is unknown, such records are kept
+                        final Date lastChangeDate = record.getLastChangeDate();
+                        if ((lastChangeDate != null) && (now - lastChangeDate.getTime() >= maxAge)) {
+                            purgedRecords.add(record);
+                        }
+                    }
+                }
+
+                dao.runInTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (EntitySynchronizationRecord<Entity> record : purgedRecords) {
+                            dao.removeSynchronizationRecord(record);
+                        }
+                    }
+                });
+
+                Log.i("FirebaseSynchronizer", "collectTombstones: tombstones collected"
+                        + ". purged=" + purgedRecords.size()
+                        + ", kept=" + (records.size() - purgedRecords.size()));
+
+                return purgedRecords.size();
             }
+        });
+    }
+
+    // the returned future never fails: failed checks are reported as UNKNOWN
+    private ListenableFuture<ServerEntityState> checkServerEntity(
+            final EntitySynchronizationRecord<Entity> record) {
+
+        final SettableFuture<ServerEntityState> stateFuture = SettableFuture.create();
+
+        try {
+            final String listName = getFirebaseListName(record.getEntityClass());
+            final DatabaseReference serverEntity = firebaseDatabase.getReference("lists")
+                    .child(record.getListId())
+                    .child(listName)
+                    .child(record.getExternalId());
+
+            serverEntity.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot dataSnapshot) {
+                    stateFuture.set(dataSnapshot.exists()
+                            ? ServerEntityState.EXISTS
+                            : ServerEntityState.REMOVED);
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+                    Log.i("FirebaseSynchronizer", "checkServerEntity.onCancelled: "
+                            + "cannot read server entity"
+                            + ". listId=" + record.getListId()
+                            + ", externalId=" + record.getExternalId()
+                            + ", error=" + databaseError.getMessage());
+                    stateFuture.set(ServerEntityState.INACCESSIBLE);
+                }
+            });
+
+        } catch (RuntimeException e) {
+            Log.w("FirebaseSynchronizer", "checkServerEntity: server check failed"
+                    + ", keeping the tombstone"
+                    + ". listId=" + record.getListId()
+                    + ", externalId=" + record.getExternalId(), e);
+            stateFuture.set(ServerEntityState.UNKNOWN);
         }
+
+        return stateFuture;
+    }
+
+    private String getFirebaseListName(Class<?> entityClass) {
+        if (Category.class.isAssignableFrom(entityClass)) {
+            return categoriesSynchronizer.getFirebaseListName();
+        } else if (Product.class.isAssignableFrom(entityClass)) {
+            return productSynchronizer.getFirebaseListName();
+        } else if (ShopItem.class.isAssignableFrom(entityClass)) {
+            return shopItemSynchronizer.getFirebaseListName();
+        }
+
+        throw new IllegalStateException("Unknown entity class " + entityClass);
     }
 
     private void subscribeOnSynchronizationRecords() {
@@ -406,11 +581,9 @@ public class FirebaseSynchronizer {
 
         final Class<T> entityClass = syncRecord.getEntityClass();
 
-        BiMap<Long, EntitySynchronizationRecord<T>> map = getRecordsMapForClass(entityClass);
+        final SyncRecordIndex<T> index = getRecordsIndex(entityClass);
 
-        final EntitySynchronizationRecord existingRecord =
-                map.remove(syncRecord.getInternalId());
-        map.put(syncRecord.getInternalId(), syncRecord);
+        final EntitySynchronizationRecord existingRecord = index.put(syncRecord);
 
         if ((existingRecord != null) && (!syncRecordsEqual(syncRecord, existingRecord))) {
             throw new IllegalStateException(
@@ -539,8 +712,10 @@ public class FirebaseSynchronizer {
                             final DatabaseReference entitiesListNode = userList.child(
                                     entitySynchronizer.getFirebaseListName());
 
-                            entitySynchronizer.updateServerEntity(
-                                    changedEntity, entitiesListNode.child(record.getExternalId()));
+                            writeServerEntity(
+                                    changedEntity,
+                                    entitiesListNode.child(record.getExternalId()),
+                                    entitySynchronizer);
                         } catch (Exception e) {
                             Log.e("FirebaseSynchronizer", "entityChanged:" +
                                     " failed to update server " + type +
@@ -706,7 +881,7 @@ public class FirebaseSynchronizer {
     private <T extends Entity> EntitySynchronizationRecord getSyncRecord(
             Class<T> entityClass,
             Long internalId) {
-        final BiMap<Long, EntitySynchronizationRecord> classRecords =
+        final SyncRecordIndex<? extends Entity> classRecords =
                 synchronizationRecords.get(entityClass);
         if (classRecords == null) {
             return null;
@@ -718,30 +893,25 @@ public class FirebaseSynchronizer {
     private <T extends Entity> EntitySynchronizationRecord getSyncRecord(
             Class<T> entityClass,
             String externalId) {
-        final BiMap<Long, EntitySynchronizationRecord<T>> classRecords =
-                getRecordsMapForClass(entityClass);
-
-        for (EntitySynchronizationRecord record : classRecords.values()) {
-            if (record.getExternalId().equals(externalId)) {
-                return record;
-            }
+        final SyncRecordIndex<? extends Entity> classRecords =
+                synchronizationRecords.get(entityClass);
+        if (classRecords == null) {
+            return null;
         }
 
-        return null;
+        return classRecords.getByExternalId(externalId);
     }
 
     @SuppressWarnings("unchecked")
-    private <T extends Entity> BiMap<Long, EntitySynchronizationRecord<T>> getRecordsMapForClass(
-            Class<T> entityClass) {
-
-        BiMap<Long, EntitySynchronizationRecord> records = synchronizationRecords.get(entityClass);
+    private <T extends Entity> SyncRecordIndex<T> getRecordsIndex(Class<T> entityClass) {
+        SyncRecordIndex<? extends Entity> records = synchronizationRecords.get(entityClass);
 
         if (records == null) {
-            records = Maps.synchronizedBiMap(HashBiMap.<Long, EntitySynchronizationRecord>create());
+            records = new SyncRecordIndex<T>();
             synchronizationRecords.put(entityClass, records);
         }
 
-        return (BiMap<Long, EntitySynchronizationRecord<T>>) (BiMap) records;
+        return (SyncRecordIndex<T>) records;
     }
 
     private <T extends Entity> void addDaoListener(
@@ -758,9 +928,9 @@ public class FirebaseSynchronizer {
     }
 
     @SuppressWarnings("DuplicateThrows")
-    private void waitFirebaseFuture(Future<?> future) throws Exception, InterruptedException {
+    private <T> T waitFirebaseFuture(Future<T> future) throws Exception, InterruptedException {
         try {
-            future.get();
+            return future.get();
         } catch (ExecutionException e) {
             if (e.getCause() instanceof Exception) {
                 throw (Exception) e.getCause();
@@ -964,7 +1134,7 @@ public class FirebaseSynchronizer {
                     + ", clientChangeDate=" + clientChangeDate
                     + ", serverChangeDate=" + serverChangeDate);
 
-            entitySynchronizer.updateServerEntity(clientEntity, serverEntity.getRef());
+            writeServerEntity(clientEntity, serverEntity.getRef(), entitySynchronizer);
         } else if (updateTarget == UpdateTarget.CLIENT) {
             Log.i("FirebaseSynchronizer", "mergeEntity: updating " + type + " on client" +
                     ". naturalId=" + naturalId
@@ -990,168 +1160,183 @@ public class FirebaseSynchronizer {
         childListeners.put(databaseReference, childListener);
     }
 
+    // server snapshots of all the entity types are requested at once, to save round trips
+    private <T extends Entity> Future<DataSnapshot> requestServerSnapshot(
+            DatabaseReference userList, EntitySynchronizer<T> entitySynchronizer) {
+
+        final SettableFuture<DataSnapshot> snapshotFuture = SettableFuture.create();
+
+        final String type =
+                StringUtils.lowerFirstLetter(entitySynchronizer.getEntityClass().getSimpleName());
+
+        userList.child(entitySynchronizer.getFirebaseListName())
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot dataSnapshot) {
+                        snapshotFuture.set(dataSnapshot);
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError databaseError) {
+                        Log.e("FirebaseSynchronizer",
+                              "requestServerSnapshot.onCancelled: request cancelled. type=" + type,
+                              databaseError.toException());
+                        snapshotFuture.setException(databaseError.toException());
+                    }
+                });
+
+        return snapshotFuture;
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     private <T extends Entity> Future<Boolean> bulkSynchronizeEntities(
-            final DatabaseReference userList, final EntitySynchronizer<T> entitySynchronizer) {
-
-        final SettableFuture<Boolean> resultFuture = SettableFuture.create();
+            final DatabaseReference userList,
+            final EntitySynchronizer<T> entitySynchronizer,
+            final DataSnapshot dataSnapshot) {
 
         final String type =
                 StringUtils.lowerFirstLetter(entitySynchronizer.getEntityClass().getSimpleName());
 
         final DatabaseReference entitiesNode =
                 userList.child(entitySynchronizer.getFirebaseListName());
-        final List<T> clientEntities = entitySynchronizer.loadEntities();
-        final Map<Long, EntitySynchronizationRecord<T>> syncRecordsMap =
-                getRecordsMapForClass(entitySynchronizer.getEntityClass());
-        final Collection<EntitySynchronizationRecord<T>> syncRecords = new LinkedHashSet<>(
-                syncRecordsMap.values());
 
-        entitiesNode.addListenerForSingleValueEvent(wrapInBackgroundThread(new ValueEventListener() {
+        return FIREBASE_NOTIFICATIONS_SERVICE.submit(new Callable<Boolean>() {
             @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-                try {
-                    Map<String, DataSnapshot> serverEntityIdsMap =
-                            mapToExternalIds(dataSnapshot.getChildren());
-                    final Map<String, DataSnapshot> serverEntityNaturalIdsMap = mapToNaturalIds(
-                            dataSnapshot.getChildren(), entitySynchronizer);
-
-                    final Map<Long, T> entityIdsMap = ModelHelper.mapIds(clientEntities);
-
-                    final BiMap<T, String> clientExternalIdsMap = HashBiMap.create();
-                    final Set<EntitySynchronizationRecord<T>> removalRecords =
-                            new LinkedHashSet<>();
-                    for (EntitySynchronizationRecord<T> record : syncRecords) {
-                        final T entity = entityIdsMap.get(record.getInternalId());
-
-                        if (record.isDeleted()) {
-                            removalRecords.add(record);
-                            continue;
-                        } else if (entity == null) {
-                            Log.w("FirebaseSynchronizer",
-                                  "bulkSynchronizeEntities: " + type + " not found" +
-                                          " for synchronization record, removing the record" +
-                                          ". internalId=" + record.getInternalId() +
-                                          ", externalId=" + record.getExternalId());
-                            dao.removeSynchronizationRecord(record);
-                            continue;
-                        }
+            public Boolean call() throws Exception {
+                // loaded only now, entities of the previous types are already synchronized
+                final List<T> clientEntities = entitySynchronizer.loadEntities();
+                final SyncRecordIndex<T> syncRecordsIndex =
+                        getRecordsIndex(entitySynchronizer.getEntityClass());
+                final Collection<EntitySynchronizationRecord<T>> syncRecords = new LinkedHashSet<>(
+                        syncRecordsIndex.values());
+
+                Map<String, DataSnapshot> serverEntityIdsMap =
+                        mapToExternalIds(dataSnapshot.getChildren());
+                final Map<String, DataSnapshot> serverEntityNaturalIdsMap = mapToNaturalIds(
+                        dataSnapshot.getChildren(), entitySynchronizer);
+
+                final Map<Long, T> entityIdsMap = ModelHelper.mapIds(clientEntities);
+
+                final BiMap<T, String> clientExternalIdsMap = HashBiMap.create();
+                final Set<EntitySynchronizationRecord<T>> removalRecords =
+                        new LinkedHashSet<>();
+                for (EntitySynchronizationRecord<T> record : syncRecords) {
+                    final T entity = entityIdsMap.get(record.getInternalId());
 
-                        clientExternalIdsMap.put(entity, record.getExternalId());
+                    if (record.isDeleted()) {
+                        removalRecords.add(record);
+                        continue;
+                    } else if (entity == null) {
+                        Log.w("FirebaseSynchronizer",
+                              "bulkSynchronizeEntities: " + type + " not found" +
+                                      " for synchronization record, removing the record" +
+                                      ". internalId=" + record.getInternalId() +
+                                      ", externalId=" + record.getExternalId());
+                        dao.removeSynchronizationRecord(record);
+                        continue;
                     }
 
-                    final Set<T> newClientEntities = new LinkedHashSet<>(clientEntities);
-                    newClientEntities.removeAll(clientExternalIdsMap.keySet());
+                    clientExternalIdsMap.put(entity, record.getExternalId());
+                }
 
-                    Set<String> clientEntitiesToRemove = Sets.newLinkedHashSet(Sets.difference(
-                            clientExternalIdsMap.values(), serverEntityIdsMap.keySet()));
-                    for (String externalId : clientEntitiesToRemove) {
-                        final T entity = clientExternalIdsMap.inverse().get(externalId);
-                        Log.i("FirebaseSynchronizer",
-                              "bulkSynchronizeEntities: removing client " + type + ". " +
-                                      "externalId=" + externalId);
+                final Set<T> newClientEntities = new LinkedHashSet<>(clientEntities);
+                newClientEntities.removeAll(clientExternalIdsMap.keySet());
 
-                        removingClientEntities.add(externalId);
-                        entitySynchronizer.removeFromClient(entity);
-                        clientExternalIdsMap.inverse().remove(externalId);
+                Set<String> clientEntitiesToRemove = Sets.newLinkedHashSet(Sets.difference(
+                        clientExternalIdsMap.values(), serverEntityIdsMap.keySet()));
+                for (String externalId : clientEntitiesToRemove) {
+                    final T entity = clientExternalIdsMap.inverse().get(externalId);
+                    Log.i("FirebaseSynchronizer",
+                          "bulkSynchronizeEntities: removing client " + type + ". " +
+                                  "externalId=" + externalId);
 
-                        final EntitySynchronizationRecord<T> syncRecord =
-                                syncRecordsMap.get(entity.getId());
-                        if (syncRecord != null) {
-                            dao.removeSynchronizationRecord(syncRecord);
-                        }
+                    removingClientEntities.add(externalId);
+                    entitySynchronizer.removeFromClient(entity);
+                    clientExternalIdsMap.inverse().remove(externalId);
+
+                    final EntitySynchronizationRecord<T> syncRecord =
+                            syncRecordsIndex.get(entity.getId());
+                    if (syncRecord != null) {
+                        dao.removeSynchronizationRecord(syncRecord);
                     }
+                }
 
-                    for (final EntitySynchronizationRecord<T> removalRecord : removalRecords) {
-                        final String externalId = removalRecord.getExternalId();
+                for (final EntitySynchronizationRecord<T> removalRecord : removalRecords) {
+                    final String externalId = removalRecord.getExternalId();
 
-                        if (serverEntityIdsMap.containsKey(externalId)) {
-                            Log.i("FirebaseSynchronizer",
-                                  "bulkSynchronizeEntities: removing server " + type +
-                                          ". externalId=" + externalId);
-                            final Task<Void> removalTask =
-                                    removeServerSnapshot(dataSnapshot.getRef(), externalId);
-
-                            removalTask.addOnCompleteListener(new OnCompleteListener<Void>() {
-                                @Override
-                                public void onComplete(@NonNull Task<Void> task) {
-                                    if (task.isSuccessful()) {
-                                        Log.i("FirebaseSynchronizer",
-                                              "bulkSynchronizeEntities.onComplete:" +
-                                                      " server " + type
-                                                      + " removed, deleting sync record" +
-                                                      ". externalId=" + externalId);
-                                        dao.removeSynchronizationRecord(removalRecord);
-                                    } else {
-                                        Log.e("FirebaseSynchronizer",
-                                              "bulkSynchronizeEntities.onComplete:" +
-                                                      " failed to remove server " + type +
-                                                      ". externalId=" + externalId,
-                                              task.getException());
-                                        failureCallback.updateServerEntityFailed(null,
-                                                                                 task.getException());
-                                    }
+                    if (serverEntityIdsMap.containsKey(externalId)) {
+                        Log.i("FirebaseSynchronizer",
+                              "bulkSynchronizeEntities: removing server " + type +
+                                      ". externalId=" + externalId);
+                        final Task<Void> removalTask =
+                                removeServerSnapshot(dataSnapshot.getRef(), externalId);
+
+                        removalTask.addOnCompleteListener(new OnCompleteListener<Void>() {
+                            @Override
+                            public void onComplete(@NonNull Task<Void> task) {
+                                if (task.isSuccessful()) {
+                                    Log.i("FirebaseSynchronizer",
+                                          "bulkSynchronizeEntities.onComplete:" +
+                                                  " server " + type
+                                                  + " removed, deleting sync record" +
+                                                  ". externalId=" + externalId);
+                                    dao.removeSynchronizationRecord(removalRecord);
+                                } else {
+                                    Log.e("FirebaseSynchronizer",
+                                          "bulkSynchronizeEntities.onComplete:" +
+                                                  " failed to remove server " + type +
+                                                  ". externalId=" + externalId,
+                                          task.getException());
+                                    failureCallback.updateServerEntityFailed(null,
+                                                                             task.getException());
                                 }
-                            });
+                            }
+                        });
 
-                            serverEntityIdsMap.remove(externalId);
-                        } else {
-                            Log.w("FirebaseSynchronizer",
-                                  "bulkSynchronizeEntities: server " + type + " is missing" +
-                                          " for a removal record, deleting the record" +
-                                          ". externalId=" + externalId);
-                            dao.removeSynchronizationRecord(removalRecord);
-                        }
+                        serverEntityIdsMap.remove(externalId);
+                    } else {
+                        Log.w("FirebaseSynchronizer",
+                              "bulkSynchronizeEntities: server " + type + " is missing" +
+                                      " for a removal record, deleting the record" +
+                                      ". externalId=" + externalId);
+                        dao.removeSynchronizationRecord(removalRecord);
                     }
+                }
 
-                    Set<String> missingClientEntities = Sets.difference(
-                            serverEntityIdsMap.keySet(), clientExternalIdsMap.values());
-                    for (String externalId : missingClientEntities) {
-                        final DataSnapshot serverEntity = serverEntityIdsMap.get(externalId);
-                        final String naturalId = entitySynchronizer.getNaturalId(serverEntity);
+                Set<String> missingClientEntities = Sets.difference(
+                        serverEntityIdsMap.keySet(), clientExternalIdsMap.values());
+                for (String externalId : missingClientEntities) {
+                    final DataSnapshot serverEntity = serverEntityIdsMap.get(externalId);
+                    final String naturalId = entitySynchronizer.getNaturalId(serverEntity);
 
-                        Log.i("FirebaseSynchronizer",
-                              "bulkSynchronizeEntities: adding new client " + type +
-                                      ". externalId=" + externalId + ", naturalId=" + naturalId);
-                        createOrLinkClientEntity(serverEntity, entitySynchronizer);
-                    }
+                    Log.i("FirebaseSynchronizer",
+                          "bulkSynchronizeEntities: adding new client " + type +
+                                  ". externalId=" + externalId + ", naturalId=" + naturalId);
+                    createOrLinkClientEntity(serverEntity, entitySynchronizer);
+                }
 
-                    for (T clientEntity : newClientEntities) {
-                        final String naturalId = entitySynchronizer.getNaturalId(clientEntity);
+                for (T clientEntity : newClientEntities) {
+                    final String naturalId = entitySynchronizer.getNaturalId(clientEntity);
 
-                        final DataSnapshot serverEntity = serverEntityNaturalIdsMap.get(naturalId);
-                        if (serverEntity == null) {
-                            Log.i("FirebaseSynchronizer",
-                                  "bulkSynchronizeEntities: adding new " + type + " to server" +
-                                          ", naturalId=" + naturalId);
-                            entitySynchronizer.createServerEntity(clientEntity, entitiesNode);
+                    final DataSnapshot serverEntity = serverEntityNaturalIdsMap.get(naturalId);
+                    if (serverEntity == null) {
+                        Log.i("FirebaseSynchronizer",
+                              "bulkSynchronizeEntities: adding new " + type + " to server" +
+                                      ", naturalId=" + naturalId);
+                        entitySynchronizer.createServerEntity(clientEntity, entitiesNode);
 
-                        } else {
-                            Log.i("FirebaseSynchronizer", "bulkSynchronizeEntities: " +
-                                    "client " + type + " matched server " + type + " by naturalId" +
-                                    ", should have been linked by previous step" +
-                                    ". naturalId=" + naturalId +
-                                    ". externalId=" + serverEntity.getKey());
-                        }
+                    } else {
+                        Log.i("FirebaseSynchronizer", "bulkSynchronizeEntities: " +
+                                "client " + type + " matched server " + type + " by naturalId" +
+                                ", should have been linked by previous step" +
+                                ". naturalId=" + naturalId +
+                                ". externalId=" + serverEntity.getKey());
                     }
-
-                    resultFuture.set(true);
-
-                } catch (Exception e) {
-                    resultFuture.setException(e);
                 }
-            }
 
-            @Override
-            public void onCancelled(DatabaseError databaseError) {
-                Log.e("FirebaseSynchronizer",
-                      "bulkSynchronizeEntities.onCancelled: request cancelled. type=" + type,
-                      databaseError.toException());
-                resultFuture.setException(databaseError.toException());
+                return true;
             }
-        }));
-
-        return resultFuture;
+        });
     }
 
     private ValueEventListener wrapInBackgroundThread(final ValueEventListener valueEventListener) {
@@ -1258,8 +1443,21 @@ public class FirebaseSynchronizer {
     }
 
 
+    // changes of existing server entities are buffered and sent in batches
+    private <T extends Entity> void writeServerEntity(
+            T clientEntity, DatabaseReference serverEntity, EntitySynchronizer<T> entitySynchronizer) {
+
+        final Map<String, Object> values = entitySynchronizer.getServerValues(clientEntity, serverEntity);
+        if (values != null) {
+            writeBuffer.write(serverEntity, values, clientEntity);
+        }
+    }
+
     private Task<Void> removeServerSnapshot(DatabaseReference parentReference, String externalId) {
-        return parentReference.child(externalId).getRef().removeValue();
+        final DatabaseReference serverEntity = parentReference.child(externalId).getRef();
+        writeBuffer.discard(serverEntity);
+
+        return serverEntity.removeValue();
     }
 
     @NonNull
@@ -1365,6 +1563,15 @@ public class FirebaseSynchronizer {
         changingClientEntities.put(clientEntity, serverEntity);
 
         entitySynchronizer.updateClientEntity(clientEntity, serverEntity);
+
+        // dao skips saving unchanged entities, so entityChanged is not called for them
+        if (changingClientEntities.remove(clientEntity) != null) {
+            dao.updateSynchronizationRecords(
+                    clientEntity.getId(),
+                    entitySynchronizer.getEntityClass(),
+                    EntitySynchronizer.getLastChangeDate(serverEntity),
+                    false);
+        }
     }
 
     @NonNull
@@ -1452,17 +1659,7 @@ public class FirebaseSynchronizer {
                           type +
                           ". externalId=" + externalId);
 
-            final String listName;
-            if (Category.class.isAssignableFrom(entityClass)) {
-                listName = categoriesSynchronizer.getFirebaseListName();
-            } else if (Product.class.isAssignableFrom(entityClass)) {
-                listName = productSynchronizer.getFirebaseListName();
-            } else if (ShopItem.class.isAssignableFrom(entityClass)) {
-                listName = shopItemSynchronizer.getFirebaseListName();
-            } else {
-                throw new IllegalStateException(
-                        "Unknown entity class " + entityClass);
-            }
+            final String listName = getFirebaseListName(entityClass);
 
             final DatabaseReference userList =
                     FirebaseSynchronizer.this.activeUserList;
@@ -1483,20 +1680,15 @@ public class FirebaseSynchronizer {
                   "removedSynchronizationRecord: removed record for " + type
                           + ". externalId=" + externalId);
 
-            final BiMap<Long, EntitySynchronizationRecord<? extends Entity>> map =
-                    getRecordsMapForClass(removedEntity.getEntityClass());
+            final SyncRecordIndex index = getRecordsIndex(removedEntity.getEntityClass());
 
             final Long internalId = removedEntity.getInternalId();
-            final EntitySynchronizationRecord<? extends Entity> existingRecord =
-                    map.remove(internalId);
-
-            if ((existingRecord != null) && (!Objects.equal(existingRecord, removedEntity))) {
+            if (!index.remove(removedEntity)) {
                 Log.w("FirebaseSynchronizer",
                       "entityRemoved: attempt to remove record (" + type
                               + ") from cache with the same internal id"
                               + ". internalId=" + internalId
                               + ", externalId=" + externalId);
-                map.put(internalId, existingRecord);
             }
         }
 
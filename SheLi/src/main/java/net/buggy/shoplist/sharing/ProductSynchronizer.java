@@ -15,7 +15,6 @@ import net.buggy.shoplist.model.MissingExternalIdException;
 import net.buggy.shoplist.model.ModelHelper;
 import net.buggy.shoplist.model.PeriodType;
 import net.buggy.shoplist.model.Product;
-import net.buggy.shoplist.model.ShopItem;
 import net.buggy.shoplist.model.UnitOfMeasure;
 
 import java.util.Date;
@@ -71,12 +70,7 @@ public class ProductSynchronizer extends DaoEntitySynchronizer<Product> {
 
     @Override
     public void removeFromClient(Product product) {
-        final List<ShopItem> linkedItems = getDao().findLinkedItems(product);
-        for (ShopItem linkedItem : linkedItems) {
-            getDao().removeShopItem(linkedItem);
-        }
-
-        getDao().removeProduct(product);
+        getDao().removeProductCascade(product);
     }
 
     @Override
@@ -88,24 +82,25 @@ public class ProductSynchronizer extends DaoEntitySynchronizer<Product> {
         final EntitySynchronizationRecord<Product> synchronizationRecord =
                 addSynchronizationRecord(clientProduct.getId(), serverProduct.getKey(), listId, new Date());
 
-        updateServerEntity(clientProduct, serverProduct, synchronizationRecord);
+        serverProduct.updateChildren(getServerValues(clientProduct, synchronizationRecord));
     }
 
     @Override
-    public void updateServerEntity(Product clientProduct, DatabaseReference serverEntity) {
+    public Map<String, Object> getServerValues(Product clientProduct, DatabaseReference serverEntity) {
         final String listId = getListIdFromEntity(serverEntity);
 
         final EntitySynchronizationRecord<Product> productRecord = getDao().findSynchronizationRecord(
                 clientProduct.getId(), listId, Product.class);
 
         if (productRecord != null) {
-            updateServerEntity(clientProduct, serverEntity, productRecord);
-        } else {
-            Log.w("ProductSynchronizer", "updateServerEntity: record not found" +
-                    ". listId=" + listId +
-                    ", externalId=" + serverEntity.getKey() +
-                    ", product=" + clientProduct);
-        } 
+            return getServerValues(clientProduct, productRecord);
+        }
+
+        Log.w("ProductSynchronizer", "getServerValues: record not found" +
+                ". listId=" + listId +
+                ", externalId=" + serverEntity.getKey() +
+                ", product=" + clientProduct);
+        return null;
     }
 
     @Override
@@ -113,8 +108,8 @@ public class ProductSynchronizer extends DaoEntitySynchronizer<Product> {
         return getDao().findProduct(internalId);
     }
 
-    private void updateServerEntity(
-            Product clientProduct, DatabaseReference serverEntity, EntitySynchronizationRecord<Product> productRecord) {
+    private Map<String, Object> getServerValues(
+            Product clientProduct, EntitySynchronizationRecord<Product> productRecord) {
         Map<String, Object> valuesMap = new LinkedHashMap<>();
         valuesMap.put("name", clientProduct.getName());
         valuesMap.put("naturalId", ModelHelper.normalizeName(clientProduct.getName()));
@@ -138,7 +133,7 @@ public class ProductSynchronizer extends DaoEntitySynchronizer<Product> {
             valuesMap.put("categories", null);
         }
 
-        serverEntity.updateChildren(valuesMap);
+        return valuesMap;
     }
 
     @Override
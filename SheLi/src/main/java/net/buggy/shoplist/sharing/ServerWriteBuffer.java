@@ -0,0 +1,329 @@
+package net.buggy.shoplist.sharing;
+
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.firebase.database.DatabaseReference;
+
+import net.buggy.shoplist.model.Entity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Collects updates of server entities and writes them as a single multi-path update of the database root.
+// Updates of the same entity are merged, the latest value of each field wins.
+// Pending updates are flushed after a short delay or when too many entities are pending.
+// A batch is atomic, so a single rejected path fails all of it. Failed batches are retried entity by entity,
+// entities, which fail again, are reported to the failure listener
+class ServerWriteBuffer {
+
+    public static final long DEFAULT_FLUSH_DELAY = 300;
+    public static final int DEFAULT_MAX_PENDING_ENTITIES = 50;
+
+    private final Timer timer;
+    private final long flushDelay;
+    private final int maxPendingEntities;
+    private final FailureListener failureListener;
+
+    // entity path -> field values
+    private Map<String, Map<String, Object>> pendingWrites = new LinkedHashMap<>();
+    // entity path -> client entity of the latest write
+    private Map<String, Entity> pendingEntities = new LinkedHashMap<>();
+    // field path -> the last batch, which sent the field. Retries skip fields, which are sent again later
+    private final Map<String, Long> fieldBatches = new HashMap<>();
+    private long lastBatchId;
+    private DatabaseReference root;
+    private long firstWriteTime;
+    private TimerTask flushTask;
+
+    private final AtomicLong flushesCount = new AtomicLong();
+    private final AtomicLong flushedEntitiesCount = new AtomicLong();
+    private final AtomicLong mergedWritesCount = new AtomicLong();
+    private final AtomicLong failedBatchesCount = new AtomicLong();
+    private final AtomicLong failedEntitiesCount = new AtomicLong();
+    private final AtomicLong totalFlushLatency = new AtomicLong();
+    private final AtomicLong maxFlushLatency = new AtomicLong();
+    private volatile int lastBatchSize;
+
+    ServerWriteBuffer(
+            Timer timer, long flushDelay, int maxPendingEntities, FailureListener failureListener) {
+        if (maxPendingEntities <= 0) {
+            throw new IllegalArgumentException("maxPendingEntities should be positive: " + maxPendingEntities);
+        }
+
+        this.timer = timer;
+        this.flushDelay = flushDelay;
+        this.maxPendingEntities = maxPendingEntities;
+        this.failureListener = failureListener;
+    }
+
+    public synchronized void write(
+            DatabaseReference serverEntity, Map<String, Object> values, Entity clientEntity) {
+        if (root == null) {
+            root = getRoot(serverEntity);
+        }
+
+        final String path = getPath(serverEntity);
+
+        final Map<String, Object> pendingValues = pendingWrites.get(path);
+        if (pendingValues != null) {
+            pendingValues.putAll(values);
+            mergedWritesCount.incrementAndGet();
+        } else {
+            if (pendingWrites.isEmpty()) {
+                firstWriteTime = System.currentTimeMillis();
+            }
+
+            pendingWrites.put(path, new LinkedHashMap<>(values));
+        }
+        pendingEntities.put(path, clientEntity);
+
+        if ((pendingWrites.size() >= maxPendingEntities) || !scheduleFlush()) {
+            flush();
+        }
+    }
+
+    // should be called, when the entity is removed from the server. Otherwise pending fields would restore it
+    public synchronized void discard(DatabaseReference serverEntity) {
+        final String path = getPath(serverEntity);
+
+        pendingWrites.remove(path);
+        pendingEntities.remove(path);
+
+        // sent fields are not retried anymore
+        final Iterator<String> fieldPaths = fieldBatches.keySet().iterator();
+        while (fieldPaths.hasNext()) {
+            if (fieldPaths.next().startsWith(path + "/")) {
+                fieldPaths.remove();
+            }
+        }
+    }
+
+    // batches are sent under the lock, so they reach the server in the order of writes.
+    // updateChildren only queues the write, it doesn't wait for the server
+    public synchronized void flush() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        final Map<String, Map<String, Object>> batch = pendingWrites;
+        final Map<String, Entity> batchEntities = pendingEntities;
+        final long batchStartTime = firstWriteTime;
+        final long batchId = ++lastBatchId;
+
+        pendingWrites = new LinkedHashMap<>();
+        pendingEntities = new LinkedHashMap<>();
+
+        final Map<String, Object> rootValues = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> entityEntry : batch.entrySet()) {
+            for (Map.Entry<String, Object> fieldEntry : entityEntry.getValue().entrySet()) {
+                final String fieldPath = entityEntry.getKey() + "/" + fieldEntry.getKey();
+
+                rootValues.put(fieldPath, fieldEntry.getValue());
+                fieldBatches.put(fieldPath, batchId);
+            }
+        }
+
+        final int batchSize = batch.size();
+        root.updateChildren(rootValues).addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                final long latency = System.currentTimeMillis() - batchStartTime;
+
+                if (!task.isSuccessful()) {
+                    Log.w("ServerWriteBuffer", "flush.onComplete: failed to write batch, retrying by entity" +
+                            ". batchSize=" + batchSize, task.getException());
+                    failedBatchesCount.incrementAndGet();
+
+                    retryByEntity(batchId, batch, batchEntities);
+                    return;
+                }
+
+                releaseFields(batchId, batch);
+                recordFlush(batchSize, latency);
+
+                Log.d("ServerWriteBuffer", "flush.onComplete: batch written" +
+                        ". batchSize=" + batchSize + ", latencyMs=" + latency);
+            }
+        });
+    }
+
+    // fields, which were sent by later batches, are skipped, so the retry doesn't overwrite newer values
+    private synchronized void retryByEntity(
+            long batchId,
+            Map<String, Map<String, Object>> batch,
+            Map<String, Entity> batchEntities) {
+
+        for (Map.Entry<String, Map<String, Object>> entityEntry : batch.entrySet()) {
+            final String path = entityEntry.getKey();
+
+            final Map<String, Object> retriedValues = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> fieldEntry : entityEntry.getValue().entrySet()) {
+                final String fieldPath = path + "/" + fieldEntry.getKey();
+
+                if (Objects.equal(fieldBatches.get(fieldPath), batchId)) {
+                    retriedValues.put(fieldPath, fieldEntry.getValue());
+                }
+            }
+
+            releaseFields(batchId, Collections.singletonMap(path, entityEntry.getValue()));
+
+            if (retriedValues.isEmpty()) {
+                continue;
+            }
+
+            final Entity clientEntity = batchEntities.get(path);
+            root.updateChildren(retriedValues).addOnCompleteListener(new OnCompleteListener<Void>() {
+                @Override
+                public void onComplete(@NonNull Task<Void> task) {
+                    if (task.isSuccessful()) {
+                        return;
+                    }
+
+                    Log.e("ServerWriteBuffer", "retryByEntity.onComplete: failed to write entity" +
+                            ". path=" + path, task.getException());
+                    failedEntitiesCount.incrementAndGet();
+
+                    failureListener.writeFailed(clientEntity, task.getException());
+                }
+            });
+        }
+    }
+
+    // forgets fields of the batch, unless they were sent again later
+    private synchronized void releaseFields(long batchId, Map<String, Map<String, Object>> batch) {
+        for (Map.Entry<String, Map<String, Object>> entityEntry : batch.entrySet()) {
+            for (String field : entityEntry.getValue().keySet()) {
+                final String fieldPath = entityEntry.getKey() + "/" + field;
+
+                if (Objects.equal(fieldBatches.get(fieldPath), batchId)) {
+                    fieldBatches.remove(fieldPath);
+                }
+            }
+        }
+    }
+
+    private void recordFlush(int batchSize, long latency) {
+        lastBatchSize = batchSize;
+        flushesCount.incrementAndGet();
+        flushedEntitiesCount.addAndGet(batchSize);
+        totalFlushLatency.addAndGet(latency);
+
+        long currentMax = maxFlushLatency.get();
+        while ((latency > currentMax) && !maxFlushLatency.compareAndSet(currentMax, latency)) {
+            currentMax = maxFlushLatency.get();
+        }
+    }
+
+    // returns false, if the flush cannot be scheduled (timer is already stopped)
+    private boolean scheduleFlush() {
+        if (flushTask != null) {
+            return true;
+        }
+
+        flushTask = new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+
+        try {
+            timer.schedule(flushTask, flushDelay);
+            return true;
+        } catch (IllegalStateException e) {
+            Log.w("ServerWriteBuffer", "scheduleFlush: timer is stopped, flushing immediately");
+            flushTask = null;
+            return false;
+        }
+    }
+
+    private static String getPath(DatabaseReference reference) {
+        final LinkedList<String> keys = new LinkedList<>();
+
+        for (DatabaseReference node = reference; node.getParent() != null; node = node.getParent()) {
+            keys.addFirst(node.getKey());
+        }
+
+        return Joiner.on('/').join(keys);
+    }
+
+    private static DatabaseReference getRoot(DatabaseReference reference) {
+        DatabaseReference node = reference;
+        while (node.getParent() != null) {
+            node = node.getParent();
+        }
+
+        return node;
+    }
+
+    public long getFlushesCount() {
+        return flushesCount.get();
+    }
+
+    public long getFlushedEntitiesCount() {
+        return flushedEntitiesCount.get();
+    }
+
+    public long getMergedWritesCount() {
+        return mergedWritesCount.get();
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public long getFailedBatchesCount() {
+        return failedBatchesCount.get();
+    }
+
+    public long getFailedEntitiesCount() {
+        return failedEntitiesCount.get();
+    }
+
+    public long getMaxFlushLatency() {
+        return maxFlushLatency.get();
+    }
+
+    public long getAverageFlushLatency() {
+        final long flushes = flushesCount.get();
+        if (flushes == 0) {
+            return 0;
+        }
+
+        return totalFlushLatency.get() / flushes;
+    }
+
+    public void logMetrics() {
+        Log.i("ServerWriteBuffer", "logMetrics: write buffer metrics" +
+                ". flushes=" + getFlushesCount()
+                + ", flushedEntities=" + getFlushedEntitiesCount()
+                + ", mergedWrites=" + getMergedWritesCount()
+                + ", lastBatchSize=" + getLastBatchSize()
+                + ", failedBatches=" + getFailedBatchesCount()
+                + ", failedEntities=" + getFailedEntitiesCount()
+                + ", averageFlushLatencyMs=" + getAverageFlushLatency()
+                + ", maxFlushLatencyMs=" + getMaxFlushLatency());
+    }
+
+    public interface FailureListener {
+        void writeFailed(Entity clientEntity, Exception exception);
+    }
+}
@@ -79,24 +79,28 @@ public class ShopItemSynchronizer extends DaoEntitySynchronizer<ShopItem> {
         final EntitySynchronizationRecord<ShopItem> synchronizationRecord =
                 addSynchronizationRecord(clientEntity.getId(), serverItem.getKey(), listId, new Date());
 
-        updateServerEntity(clientEntity, serverItem, synchronizationRecord);
+        final Map<String, Object> values = getServerValues(clientEntity, synchronizationRecord);
+        if (values != null) {
+            serverItem.updateChildren(values);
+        }
     }
 
     @Override
-    public void updateServerEntity(ShopItem clientEntity, DatabaseReference serverEntity) {
+    public Map<String, Object> getServerValues(ShopItem clientEntity, DatabaseReference serverEntity) {
         final String listId = getListIdFromEntity(serverEntity);
 
         final EntitySynchronizationRecord<ShopItem> itemRecord =
                 getDao().findSynchronizationRecord(clientEntity.getId(), listId, ShopItem.class);
 
         if (itemRecord != null) {
-            updateServerEntity(clientEntity, serverEntity, itemRecord);
-        } else {
-            Log.w("ShopItemSynchronizer", "updateServerEntity: sync record not found" +
-                    ". listId=" + listId +
-                    ", externalId=" + serverEntity.getKey() +
-                    ", shopItem=" + clientEntity);
+            return getServerValues(clientEntity, itemRecord);
         }
+
+        Log.w("ShopItemSynchronizer", "getServerValues: sync record not found" +
+                ". listId=" + listId +
+                ", externalId=" + serverEntity.getKey() +
+                ", shopItem=" + clientEntity);
+        return null;
     }
 
     @Override
@@ -104,8 +108,8 @@ public class ShopItemSynchronizer extends DaoEntitySynchronizer<ShopItem> {
         return getDao().findShopItem(internalId);
     }
 
-    private void updateServerEntity(
-            ShopItem clientEntity, DatabaseReference serverEntity, EntitySynchronizationRecord<ShopItem> itemRecord) {
+    private Map<String, Object> getServerValues(
+            ShopItem clientEntity, EntitySynchronizationRecord<ShopItem> itemRecord) {
 
         Map<String, Object> valuesMap = new LinkedHashMap<>();
         valuesMap.put("lastChangeDate", serializeDate(itemRecord.getLastChangeDate()));
@@ -120,12 +124,12 @@ public class ShopItemSynchronizer extends DaoEntitySynchronizer<ShopItem> {
         if (productRecord != null) {
             valuesMap.put("product", productRecord.getExternalId());
         } else {
-            Log.w("ShopItemSynchronizer", "updateServerEntity: product has no externalId, won't save" +
+            Log.w("ShopItemSynchronizer", "getServerValues: product has no externalId, won't save" +
                     ". productName=" + clientEntity.getProduct().getName());
-            return;
+            return null;
         }
 
-        serverEntity.updateChildren(valuesMap);
+        return valuesMap;
     }
 
     @Override
@@ -0,0 +1,86 @@
+package net.buggy.shoplist.sharing;
+
+
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Objects;
+
+import net.buggy.shoplist.model.Entity;
+import net.buggy.shoplist.model.EntitySynchronizationRecord;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Synchronization records of a single entity class, indexed both by internal and by external id.
+// External ids are unique, so a record with an already indexed external id replaces the old record
+class SyncRecordIndex<T extends Entity> {
+
+    private final Map<Long, EntitySynchronizationRecord<T>> byInternalId = new HashMap<>();
+    private final Map<String, EntitySynchronizationRecord<T>> byExternalId = new HashMap<>();
+
+    @Nullable
+    public synchronized EntitySynchronizationRecord<T> get(Long internalId) {
+        return byInternalId.get(internalId);
+    }
+
+    @Nullable
+    public synchronized EntitySynchronizationRecord<T> getByExternalId(String externalId) {
+        return byExternalId.get(externalId);
+    }
+
+    // returns the replaced record with the same internal id
+    @Nullable
+    public synchronized EntitySynchronizationRecord<T> put(EntitySynchronizationRecord<T> record) {
+        final EntitySynchronizationRecord<T> previousRecord =
+                byInternalId.put(record.getInternalId(), record);
+        if (previousRecord != null) {
+            removeExternalId(previousRecord);
+        }
+
+        final EntitySynchronizationRecord<T> sameExternalIdRecord =
+                byExternalId.put(record.getExternalId(), record);
+        if ((sameExternalIdRecord != null)
+                && (!Objects.equal(sameExternalIdRecord.getInternalId(), record.getInternalId()))) {
+            byInternalId.remove(sameExternalIdRecord.getInternalId());
+        }
+
+        return previousRecord;
+    }
+
+    // returns false, if another record is cached for the same internal id. It is kept then
+    public synchronized boolean remove(EntitySynchronizationRecord<T> record) {
+        final Long internalId = record.getInternalId();
+
+        final EntitySynchronizationRecord<T> existingRecord = byInternalId.get(internalId);
+        if (existingRecord == null) {
+            return true;
+        }
+
+        if (!Objects.equal(existingRecord, record)) {
+            return false;
+        }
+
+        byInternalId.remove(internalId);
+        removeExternalId(existingRecord);
+
+        return true;
+    }
+
+    public synchronized List<EntitySynchronizationRecord<T>> values() {
+        return new ArrayList<>(byInternalId.values());
+    }
+
+    public synchronized int size() {
+        return byInternalId.size();
+    }
+
+    private void removeExternalId(EntitySynchronizationRecord<T> record) {
+        final String externalId = record.getExternalId();
+
+        if (byExternalId.get(externalId) == record) {
+            byExternalId.remove(externalId);
+        }
+    }
+}
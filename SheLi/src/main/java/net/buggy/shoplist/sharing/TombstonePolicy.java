@@ -0,0 +1,36 @@
+package net.buggy.shoplist.sharing;
+
+
+import java.util.concurrent.TimeUnit;
+
+// How long deleted sync records are kept, when the server entity cannot be checked
+// (e.g. the list is not shared with the user anymore).
+// Records, which removal is confirmed by the server, are purged regardless of the age
+public class TombstonePolicy {
+
+    public static final TombstonePolicy DEFAULT = new TombstonePolicy(
+            TimeUnit.DAYS.toMillis(30),
+            TimeUnit.DAYS.toMillis(7));
+
+    private final long activeListMaxAge;
+    private final long otherListsMaxAge;
+
+    public TombstonePolicy(long activeListMaxAge, long otherListsMaxAge) {
+        if ((activeListMaxAge < 0) || (otherListsMaxAge < 0)) {
+            throw new IllegalArgumentException("Max age cannot be negative"
+                    + ". activeListMaxAge=" + activeListMaxAge
+                    + ", otherListsMaxAge=" + otherListsMaxAge);
+        }
+
+        this.activeListMaxAge = activeListMaxAge;
+        this.otherListsMaxAge = otherListsMaxAge;
+    }
+
+    public long getActiveListMaxAge() {
+        return activeListMaxAge;
+    }
+
+    public long getOtherListsMaxAge() {
+        return otherListsMaxAge;
+    }
+}
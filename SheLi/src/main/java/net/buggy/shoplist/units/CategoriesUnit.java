@@ -16,17 +16,17 @@ import net.buggy.shoplist.ShopListActivity;
 import net.buggy.shoplist.compare.CategoryComparator;
 import net.buggy.shoplist.components.EditableCategoryCellFactory;
 import net.buggy.shoplist.components.FastCreationPanel;
+import net.buggy.shoplist.data.AsyncDao;
 import net.buggy.shoplist.data.Dao;
+import net.buggy.shoplist.data.ProductQuery;
 import net.buggy.shoplist.data.UiThreadEntityListener;
 import net.buggy.shoplist.model.Category;
 import net.buggy.shoplist.model.ModelHelper;
-import net.buggy.shoplist.model.Product;
 import net.buggy.shoplist.units.views.InflatingViewRenderer;
 import net.buggy.shoplist.units.views.ViewRenderer;
 
-import java.util.LinkedHashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 import static net.buggy.shoplist.ShopListActivity.MAIN_VIEW_ID;
 import static net.buggy.shoplist.ShopListActivity.TOOLBAR_VIEW_ID;
@@ -97,7 +97,7 @@ public class CategoriesUnit extends Unit<ShopListActivity> {
             adapter.setSorter(new CategoryComparator());
 
             final Dao dao = activity.getDao();
-            adapter.addAll(dao.getCategories());
+            loadCategories(activity, null);
 
             final RecyclerView categoriesView = parentView.findViewById(R.id.unit_categories_list);
             ListDecorator.decorateList(categoriesView);
@@ -113,26 +113,23 @@ public class CategoriesUnit extends Unit<ShopListActivity> {
                 }
 
                 @Override
-                public void onDelete(int position, SwipeToRemoveHandler.DeletionCallback callback) {
+                public void onDelete(int position, final SwipeToRemoveHandler.DeletionCallback callback) {
                     final Category category = adapter.getItem(position);
 
-                    final List<Product> products = dao.getProducts();
-                    final Set<Product> matchingProducts = new LinkedHashSet<>();
-                    for (Product product : products) {
-                        if (product.getCategories().contains(category)) {
-                            matchingProducts.add(product);
+                    final ProductQuery query = new ProductQuery(null, Collections.singletonList(category));
+                    activity.getAsyncDao().countProducts(query, new AsyncDao.UiCallback<Integer>() {
+                        @Override
+                        public void onResult(Integer count) {
+                            if (count == 0) {
+                                callback.delete();
+
+                            } else {
+                                final String confirmation = activity.getResources().getQuantityString(
+                                        R.plurals.unit_categories_unlink_confirmation, count, count);
+                                callback.askConfirmation(confirmation);
+                            }
                         }
-                    }
-
-                    if (matchingProducts.isEmpty()) {
-                        callback.delete();
-
-                    } else {
-                        final int count = matchingProducts.size();
-                        final String confirmation = activity.getResources().getQuantityString(
-                                R.plurals.unit_categories_unlink_confirmation, count, count);
-                        callback.askConfirmation(confirmation);
-                    }
+                    });
                 }
             });
 
@@ -170,10 +167,7 @@ public class CategoriesUnit extends Unit<ShopListActivity> {
             swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
                 @Override
                 public void onRefresh() {
-                    adapter.clear();
-                    adapter.addAll(dao.getCategories());
-
-                    swipeRefreshLayout.setRefreshing(false);
+                    loadCategories(activity, swipeRefreshLayout);
                 }
             });
 
@@ -182,6 +176,29 @@ public class CategoriesUnit extends Unit<ShopListActivity> {
             addTemporalDaoListener(dao, Category.class, listener, CategoriesUnit.this);
         }
 
+        private void loadCategories(ShopListActivity activity, final SwipeRefreshLayout refreshLayout) {
+            activity.getAsyncDao().getCategories(new AsyncDao.UiCallback<List<Category>>() {
+                @Override
+                public void onResult(List<Category> categories) {
+                    adapter.clear();
+                    adapter.addAll(categories);
+
+                    if (refreshLayout != null) {
+                        refreshLayout.setRefreshing(false);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    super.onFailure(throwable);
+
+                    if (refreshLayout != null) {
+                        refreshLayout.setRefreshing(false);
+                    }
+                }
+            });
+        }
+
         private void initAddCategory(final ViewGroup parentView, final ShopListActivity activity) {
             final FastCreationPanel creationPanel = parentView.findViewById(R.id.unit_categories_creation_panel);
             creationPanel.setListener(new FastCreationPanel.Listener() {
@@ -25,6 +25,7 @@ import net.buggy.shoplist.ShopListActivity;
 import net.buggy.shoplist.compare.CategoryComparator;
 import net.buggy.shoplist.components.CategoryCellFactory;
 import net.buggy.shoplist.components.WheelPickerUtils;
+import net.buggy.shoplist.data.AsyncDao;
 import net.buggy.shoplist.data.Dao;
 import net.buggy.shoplist.model.Category;
 import net.buggy.shoplist.model.PeriodType;
@@ -34,12 +35,10 @@ import net.buggy.shoplist.units.views.ViewRenderer;
 import net.buggy.shoplist.utils.CollectionUtils;
 import net.buggy.shoplist.utils.PeriodTypeStringifier;
 import net.buggy.shoplist.utils.SimpleStringifier;
-import net.buggy.shoplist.utils.StringUtils;
 import net.buggy.shoplist.utils.UnitOfMeasureStringifier;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -137,26 +136,26 @@ public class EditProductUnit extends Unit<ShopListActivity> {
                 @Override
                 public void onClick(View v) {
                     final String name = toName(nameField.getText());
-                    final boolean valid = validateProductName(name, product, parentView, activity);
-                    if (!valid) {
-                        return;
-                    }
-
-                    product.setCategories(categoriesAdapter.getSelectedItems());
-                    product.setName(name);
+                    validateProductName(name, product, parentView, saveButton, activity, new Runnable() {
+                        @Override
+                        public void run() {
+                            product.setCategories(categoriesAdapter.getSelectedItems());
+                            product.setName(name);
 
-                    final UnitOfMeasure unitOfMeasure = unitsField.getSelectedItem();
-                    product.setDefaultUnits(unitOfMeasure);
+                            final UnitOfMeasure unitOfMeasure = unitsField.getSelectedItem();
+                            product.setDefaultUnits(unitOfMeasure);
 
-                    final Integer periodCount = parsePeriodCount(periodCountField.getText().toString());
-                    product.setPeriodCount(periodCount);
+                            final Integer periodCount = parsePeriodCount(periodCountField.getText().toString());
+                            product.setPeriodCount(periodCount);
 
-                    final PeriodType periodType = periodTypeField.getSelectedItem();
-                    product.setPeriodType(periodType);
+                            final PeriodType periodType = periodTypeField.getSelectedItem();
+                            product.setPeriodType(periodType);
 
-                    activity.stopUnit(EditProductUnit.this);
+                            activity.stopUnit(EditProductUnit.this);
 
-                    fireEvent(new ProductEditedEvent(product));
+                            fireEvent(new ProductEditedEvent(product));
+                        }
+                    });
                 }
             });
 
@@ -257,34 +256,46 @@ public class EditProductUnit extends Unit<ShopListActivity> {
         return categoriesAdapter;
     }
 
-    public static boolean validateProductName(
-            String name, Product product, ViewGroup parentView, ShopListActivity activity) {
+    // the name is checked in background, the save button is disabled meanwhile, so the product is saved once
+    public static void validateProductName(
+            String name, final Product product, final ViewGroup parentView, final View saveButton,
+            final ShopListActivity activity, final Runnable validCallback) {
 
         if (name.isEmpty()) {
             final Toast toast = Toast.makeText(parentView.getContext(),
                     activity.getString(R.string.unit_edit_product_empty_name_not_allowed),
                     Toast.LENGTH_LONG);
             toast.show();
-            return false;
+            return;
         }
 
-        final List<Product> products = activity.getDao().getProducts();
-        for (Product anotherProduct : products) {
-            if (Objects.equal(anotherProduct, product)) {
-                continue;
+        saveButton.setEnabled(false);
+
+        activity.getAsyncDao().findProductByName(name, new AsyncDao.UiCallback<Product>() {
+            @Override
+            public void onResult(Product anotherProduct) {
+                saveButton.setEnabled(true);
+
+                if ((anotherProduct != null) && (!Objects.equal(anotherProduct, product))) {
+                    final Toast toast = Toast.makeText(parentView.getContext(),
+                            activity.getString(
+                                    R.string.products_unit_already_exists,
+                                    anotherProduct.getName()),
+                            Toast.LENGTH_LONG);
+                    toast.show();
+                    return;
+                }
+
+                validCallback.run();
             }
 
-            if (StringUtils.equalIgnoreCase(anotherProduct.getName(), name)) {
-                final Toast toast = Toast.makeText(parentView.getContext(),
-                        activity.getString(
-                                R.string.products_unit_already_exists,
-                                anotherProduct.getName()),
-                        Toast.LENGTH_LONG);
-                toast.show();
-                return false;
+            @Override
+            public void onFailure(Throwable throwable) {
+                super.onFailure(throwable);
+
+                saveButton.setEnabled(true);
             }
-        }
-        return true;
+        });
     }
 
     private static String getPeriodCountString(Integer count) {
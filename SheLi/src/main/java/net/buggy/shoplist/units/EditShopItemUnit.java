@@ -123,29 +123,29 @@ public class EditShopItemUnit extends Unit<ShopListActivity> {
                 public void onClick(View v) {
                     final Product product = shopItem.getProduct();
                     final String productName = nameField.getText().toString().trim();
-                    final boolean nameValid = EditProductUnit.validateProductName(
-                            productName, product, parentView, activity);
-                    if (!nameValid) {
-                        return;
-                    }
+                    EditProductUnit.validateProductName(
+                            productName, product, parentView, saveButton, activity, new Runnable() {
+                                @Override
+                                public void run() {
+                                    final String comment = commentField.getText().toString().trim();
 
-                    final String comment = commentField.getText().toString().trim();
+                                    shopItem.setComment(comment);
 
-                    shopItem.setComment(comment);
+                                    final UnitOfMeasure selectedItem = unitsField.getSelectedItem();
+                                    shopItem.setUnitOfMeasure(selectedItem);
 
-                    final UnitOfMeasure selectedItem = unitsField.getSelectedItem();
-                    shopItem.setUnitOfMeasure(selectedItem);
+                                    product.setName(productName);
+                                    product.setDefaultUnits(defaultUnitsField.getSelectedItem());
+                                    final String periodCountText = periodCountField.getText().toString();
+                                    product.setPeriodCount(EditProductUnit.parsePeriodCount(periodCountText));
+                                    product.setPeriodType(periodTypeField.getSelectedItem());
+                                    product.setCategories(new LinkedHashSet<>(selectedCategories));
 
-                    product.setName(productName);
-                    product.setDefaultUnits(defaultUnitsField.getSelectedItem());
-                    final String periodCountText = periodCountField.getText().toString();
-                    product.setPeriodCount(EditProductUnit.parsePeriodCount(periodCountText));
-                    product.setPeriodType(periodTypeField.getSelectedItem());
-                    product.setCategories(new LinkedHashSet<>(selectedCategories));
+                                    activity.stopUnit(EditShopItemUnit.this);
 
-                    activity.stopUnit(EditShopItemUnit.this);
-
-                    fireEvent(new ShopItemEditedEvent(shopItem, product));
+                                    fireEvent(new ShopItemEditedEvent(shopItem, product));
+                                }
+                            });
                 }
             });
         }
@@ -0,0 +1,195 @@
+package net.buggy.shoplist.units;
+
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import net.buggy.shoplist.data.AsyncDao;
+import net.buggy.shoplist.data.Dao;
+import net.buggy.shoplist.data.PageSource;
+
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+// Loads a list page by page: the first page right away and the next ones,
+// when the list is scrolled close to the end of the loaded items.
+// At most MAX_LOADED_PAGES are kept: pages at the other end of the list are dropped
+// and loaded again, when the list is scrolled back
+class PagedListLoader<T> {
+
+    private static final int PREFETCH_DISTANCE = 10;
+    private static final int MAX_LOADED_PAGES = 5;
+
+    private final AsyncDao asyncDao;
+    private final Comparator<T> comparator;
+    private final PageListener<T> listener;
+
+    private RecyclerView recyclerView;
+
+    private PageSource<T> source;
+    private final LinkedList<List<T>> pages = new LinkedList<>();
+    private boolean loading;
+    private boolean hasMore;
+    private boolean hasPrevious;
+
+    // the comparator should give the same order, as the page source
+    PagedListLoader(AsyncDao asyncDao, Comparator<T> comparator, PageListener<T> listener) {
+        this.asyncDao = asyncDao;
+        this.comparator = comparator;
+        this.listener = listener;
+    }
+
+    public void attach(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                loadIfNeeded();
+            }
+        });
+    }
+
+    // should be called from the UI thread, results of the previous source are dropped
+    public void reload(PageSource<T> source) {
+        this.source = source;
+        this.pages.clear();
+        this.loading = false;
+        this.hasMore = true;
+        this.hasPrevious = false;
+
+        loadPage(true, true);
+    }
+
+    // true, if the item belongs to the loaded part of the list.
+    // Items outside of it are shown, when their page is loaded
+    public boolean isInLoadedRange(T item) {
+        if (pages.isEmpty()) {
+            return !hasMore && !hasPrevious;
+        }
+
+        if (hasPrevious && (comparator.compare(item, getFirstLoadedItem()) < 0)) {
+            return false;
+        }
+
+        return !(hasMore && (comparator.compare(item, getLastLoadedItem()) > 0));
+    }
+
+    private void loadIfNeeded() {
+        if ((recyclerView == null) || loading || (source == null) || pages.isEmpty()) {
+            return;
+        }
+
+        final RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (!(layoutManager instanceof LinearLayoutManager)) {
+            return;
+        }
+
+        final LinearLayoutManager linearLayoutManager = (LinearLayoutManager) layoutManager;
+
+        // items, which are not shown (e.g. filtered out), are treated as the list ends
+        if (hasMore) {
+            int lastLoadedPosition = listener.getPosition(getLastLoadedItem());
+            if (lastLoadedPosition < 0) {
+                lastLoadedPosition = layoutManager.getItemCount() - 1;
+            }
+
+            final int lastVisiblePosition = linearLayoutManager.findLastVisibleItemPosition();
+            if ((lastVisiblePosition + PREFETCH_DISTANCE) >= lastLoadedPosition) {
+                loadPage(false, true);
+                return;
+            }
+        }
+
+        if (hasPrevious) {
+            final int firstLoadedPosition = Math.max(listener.getPosition(getFirstLoadedItem()), 0);
+
+            final int firstVisiblePosition = linearLayoutManager.findFirstVisibleItemPosition();
+            if ((firstVisiblePosition - PREFETCH_DISTANCE) <= firstLoadedPosition) {
+                loadPage(false, false);
+            }
+        }
+    }
+
+    private T getFirstLoadedItem() {
+        return pages.getFirst().get(0);
+    }
+
+    private T getLastLoadedItem() {
+        final List<T> lastPage = pages.getLast();
+
+        return lastPage.get(lastPage.size() - 1);
+    }
+
+    private void loadPage(final boolean firstPage, final boolean next) {
+        final PageSource<T> loadingSource = source;
+        loading = true;
+
+        asyncDao.submit(new AsyncDao.DaoCall<List<T>>() {
+            @Override
+            public List<T> call(Dao dao) {
+                return next ? loadingSource.loadNextPage() : loadingSource.loadPreviousPage();
+            }
+        }, new AsyncDao.UiCallback<List<T>>() {
+            @Override
+            public void onResult(List<T> page) {
+                if (loadingSource != source) {
+                    return;
+                }
+
+                loading = false;
+
+                // sources don't keep empty pages either
+                if (!page.isEmpty()) {
+                    if (next) {
+                        pages.addLast(page);
+                    } else {
+                        pages.addFirst(page);
+                    }
+                }
+
+                listener.pageLoaded(page, firstPage);
+
+                if (pages.size() > MAX_LOADED_PAGES) {
+                    final List<T> droppedPage;
+                    if (next) {
+                        droppedPage = pages.removeFirst();
+                        loadingSource.dropFirstPage();
+                    } else {
+                        droppedPage = pages.removeLast();
+                        loadingSource.dropLastPage();
+                    }
+
+                    listener.pageDropped(droppedPage);
+                }
+
+                hasMore = loadingSource.hasMore();
+                hasPrevious = loadingSource.hasPrevious();
+
+                loadIfNeeded();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                super.onFailure(throwable);
+
+                if (loadingSource == source) {
+                    loading = false;
+                    hasMore = false;
+                    hasPrevious = false;
+                }
+            }
+        });
+    }
+
+    public interface PageListener<T> {
+        void pageLoaded(List<T> page, boolean firstPage);
+
+        // the page is out of the loaded range, its items should be removed from the list
+        void pageDropped(List<T> page);
+
+        // position of the item in the list, -1 if it's not shown
+        int getPosition(T item);
+    }
+}
@@ -18,7 +18,9 @@ import net.buggy.shoplist.ShopListActivity;
 import net.buggy.shoplist.compare.ProductComparator;
 import net.buggy.shoplist.components.ProductCellFactory;
 import net.buggy.shoplist.components.SearchEditText;
+import net.buggy.shoplist.data.AsyncDao;
 import net.buggy.shoplist.data.Dao;
+import net.buggy.shoplist.data.ProductQuery;
 import net.buggy.shoplist.data.UiThreadEntityListener;
 import net.buggy.shoplist.filters.ProductsFilter;
 import net.buggy.shoplist.model.Category;
@@ -27,8 +29,11 @@ import net.buggy.shoplist.model.ShopItem;
 import net.buggy.shoplist.units.views.InflatingViewRenderer;
 import net.buggy.shoplist.units.views.ViewRenderer;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static net.buggy.shoplist.ShopListActivity.MAIN_VIEW_ID;
 import static net.buggy.shoplist.ShopListActivity.TOOLBAR_VIEW_ID;
@@ -36,6 +41,8 @@ import static net.buggy.shoplist.units.UnitsHelper.addTemporalDaoListener;
 
 public class ProductsUnit extends Unit<ShopListActivity> {
 
+    private static final int PAGE_SIZE = 50;
+
     @Override
     public void initialize() {
         addRenderer(MAIN_VIEW_ID, new MainViewRenderer());
@@ -66,6 +73,7 @@ public class ProductsUnit extends Unit<ShopListActivity> {
 
         private transient FactoryBasedAdapter<Product> adapter;
         private transient String searchedText;
+        private transient PagedListLoader<Product> productsLoader;
 
         @Override
         public void renderTo(RelativeLayout parentView, final ShopListActivity activity) {
@@ -84,15 +92,51 @@ public class ProductsUnit extends Unit<ShopListActivity> {
         private void setupList(RelativeLayout parentView, final ShopListActivity activity) {
             adapter = new FactoryBasedAdapter<>(new ProductCellFactory());
             adapter.setSelectionMode(FactoryBasedAdapter.SelectionMode.SINGLE);
-            adapter.setSorter(new ProductComparator());
+            adapter.setSorter(ProductComparator.INSTANCE);
 
             final Dao dao = activity.getDao();
-            adapter.addAll(dao.getProducts());
 
             final RecyclerView productsList = parentView.findViewById(R.id.unit_products_list);
             ListDecorator.decorateList(productsList);
             productsList.setAdapter(adapter);
 
+            final SwipeRefreshLayout swipeRefreshLayout = parentView.findViewById(R.id.unit_products_swipe_refresh);
+            productsLoader = new PagedListLoader<>(activity.getAsyncDao(), ProductComparator.INSTANCE,
+                    new PagedListLoader.PageListener<Product>() {
+                        @Override
+                        public void pageLoaded(List<Product> page, boolean firstPage) {
+                            if (firstPage) {
+                                adapter.clear();
+                                swipeRefreshLayout.setRefreshing(false);
+                            }
+
+                            // products could be already added by the dao listener
+                            final Set<Product> shownProducts = new HashSet<>(adapter.getAllItems());
+                            final List<Product> newProducts = new ArrayList<>(page.size());
+                            for (Product product : page) {
+                                if (shownProducts.add(product)) {
+                                    newProducts.add(product);
+                                }
+                            }
+
+                            adapter.addAll(newProducts);
+                        }
+
+                        @Override
+                        public void pageDropped(List<Product> page) {
+                            for (Product product : page) {
+                                adapter.remove(product);
+                            }
+                        }
+
+                        @Override
+                        public int getPosition(Product product) {
+                            return UnitsHelper.getPosition(adapter, product);
+                        }
+                    });
+            productsLoader.attach(productsList);
+            loadProducts(activity);
+
             adapter.addSelectionListener(new FactoryBasedAdapter.SelectionListener<Product>() {
                 @Override
                 public void selectionChanged(Product item, boolean selected) {
@@ -112,12 +156,7 @@ public class ProductsUnit extends Unit<ShopListActivity> {
 
                 @Override
                 public void removed(Product item) {
-                    final List<ShopItem> linkedItems = dao.findLinkedItems(item);
-                    for (ShopItem linkedItem : linkedItems) {
-                        dao.removeShopItem(linkedItem);
-                    }
-
-                    dao.removeProduct(item);
+                    dao.removeProductCascade(item);
                 }
 
                 @Override
@@ -135,21 +174,45 @@ public class ProductsUnit extends Unit<ShopListActivity> {
                 }
 
                 @Override
-                public void onDelete(int position, SwipeToRemoveHandler.DeletionCallback callback) {
+                public void onDelete(int position, final SwipeToRemoveHandler.DeletionCallback callback) {
                     final Product item = adapter.getItem(position);
 
-                    final List<ShopItem> linkedItems = dao.findLinkedItems(item);
-                    if (linkedItems.isEmpty()) {
-                        callback.delete();
-                    } else {
-                        callback.askConfirmation(activity.getString(
-                                R.string.products_unit_delete_from_cart));
-                    }
+                    activity.getAsyncDao().findLinkedItems(item, new AsyncDao.UiCallback<List<ShopItem>>() {
+                        @Override
+                        public void onResult(List<ShopItem> linkedItems) {
+                            if (linkedItems.isEmpty()) {
+                                callback.delete();
+                            } else {
+                                callback.askConfirmation(activity.getString(
+                                        R.string.products_unit_delete_from_cart));
+                            }
+                        }
+                    });
                 }
             });
 
-            final UiThreadEntityListener<Product> listener = new TableAdapterEntityListener<>(
-                    adapter, getHostingActivity());
+            // products out of the loaded range are shown, when their page is loaded
+            final UiThreadEntityListener<Product> listener = new TableAdapterEntityListener<Product>(
+                    adapter, getHostingActivity()) {
+                @Override
+                public void entityAddedUi(Product newEntity) {
+                    if (productsLoader.isInLoadedRange(newEntity)) {
+                        super.entityAddedUi(newEntity);
+                    }
+                }
+
+                @Override
+                public void entitiesAddedUi(List<Product> newEntities) {
+                    final List<Product> loadedEntities = new ArrayList<>(newEntities.size());
+                    for (Product newEntity : newEntities) {
+                        if (productsLoader.isInLoadedRange(newEntity)) {
+                            loadedEntities.add(newEntity);
+                        }
+                    }
+
+                    super.entitiesAddedUi(loadedEntities);
+                }
+            };
             addTemporalDaoListener(dao, Product.class, listener, ProductsUnit.this);
         }
 
@@ -172,16 +235,17 @@ public class ProductsUnit extends Unit<ShopListActivity> {
             swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
                 @Override
                 public void onRefresh() {
-                    final Dao dao = activity.getDao();
-
-                    adapter.clear();
-                    adapter.addAll(dao.getProducts());
-
-                    swipeRefreshLayout.setRefreshing(false);
+                    loadProducts(activity);
                 }
             });
         }
 
+        private void loadProducts(ShopListActivity activity) {
+            final ProductQuery query = new ProductQuery(searchedText, Collections.<Category>emptyList());
+
+            productsLoader.reload(activity.getDao().getProducts(query, PAGE_SIZE));
+        }
+
         private void setupSearchField(RelativeLayout parentView) {
             final SearchEditText searchTextField = parentView.findViewById(
                     R.id.unit_products_search_field);
@@ -205,7 +269,10 @@ public class ProductsUnit extends Unit<ShopListActivity> {
         }
 
         private void filterProducts(String searchedText) {
+            // the filter hides not matching products, which are added by the dao listener
             adapter.setFilter(new ProductsFilter(searchedText, Collections.<Category>emptyList()));
+
+            loadProducts(getHostingActivity());
         }
     }
 
@@ -16,7 +16,9 @@ import net.buggy.shoplist.ShopListActivity;
 import net.buggy.shoplist.compare.ProductComparator;
 import net.buggy.shoplist.components.CategoriesFilter;
 import net.buggy.shoplist.components.SelectableShopItemCellFactory;
+import net.buggy.shoplist.data.AsyncDao;
 import net.buggy.shoplist.data.Dao;
+import net.buggy.shoplist.data.ProductQuery;
 import net.buggy.shoplist.data.UiThreadEntityListener;
 import net.buggy.shoplist.filters.ProductsFilter;
 import net.buggy.shoplist.model.Category;
@@ -30,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,7 +46,10 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
     private static final int ACTIVITY_VIEW_ID = R.id.main_activity_view;
     private static final int TOOLBAR_VIEW_ID = R.id.toolbar_container;
 
+    private static final int PAGE_SIZE = 50;
+
     private transient FactoryBasedAdapter<ShopItem> adapter;
+    private transient PagedListLoader<Product> productsLoader;
 
     private final Set<ShopItem> existingItems;
     private final List<Category> selectedCategories = new ArrayList<>();
@@ -146,6 +152,40 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
 
             productsList.setAdapter(adapter);
 
+            productsLoader = new PagedListLoader<>(
+                    activity.getAsyncDao(),
+                    ProductComparator.INSTANCE,
+                    new PagedListLoader.PageListener<Product>() {
+                        @Override
+                        public void pageLoaded(List<Product> page, boolean firstPage) {
+                            if (firstPage) {
+                                removePagedItems();
+                            }
+
+                            addProducts(page);
+                        }
+
+                        @Override
+                        public void pageDropped(List<Product> page) {
+                            removeProducts(page);
+                        }
+
+                        @Override
+                        public int getPosition(Product product) {
+                            final ShopItem shopItem = cachedItems.get(product);
+                            if (shopItem == null) {
+                                return -1;
+                            }
+
+                            return UnitsHelper.getPosition(adapter, shopItem);
+                        }
+                    });
+            productsLoader.attach(productsList);
+            productsLoader.reload(activity.getDao().getProducts(
+                    new ProductQuery(null, selectedCategories), PAGE_SIZE));
+
+            loadOverdueProducts(activity);
+
             final View acceptButton = parentView.findViewById(R.id.unit_select_shopitems_accept_button);
             acceptButton.setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -173,19 +213,6 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
             adapter.setSelectionMode(MULTI);
             adapter.setSorter(createComparator());
 
-            final List<Product> products = dao.getProducts();
-            for (Product product : products) {
-                ShopItem shopItem = getOrCreateShopItem(product);
-
-                if (!existingItems.contains(shopItem)) {
-                    adapter.add(shopItem);
-                }
-            }
-
-            for (ShopItem selectedItem : selectedItems) {
-                adapter.selectItem(selectedItem);
-            }
-
             adapter.addSelectionListener(new FactoryBasedAdapter.SelectionListener<ShopItem>() {
                 @Override
                 public void selectionChanged(ShopItem item, boolean selected) {
@@ -218,7 +245,7 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
                 public void entityAddedUi(Product newEntity) {
                     final ShopItem shopItem = getOrCreateShopItem(newEntity);
 
-                    if (!existingItems.contains(shopItem)) {
+                    if (!existingItems.contains(shopItem) && isShownProduct(newEntity)) {
                         if (!adapter.getAllItems().contains(shopItem)) {
                             adapter.add(shopItem);
                         }
@@ -232,10 +259,10 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
                     if (!existingItems.contains(shopItem)) {
                         shopItem.setProduct(changedEntity);
 
-                        if (!adapter.getAllItems().contains(shopItem)) {
-                            adapter.add(shopItem);
-                        } else {
+                        if (adapter.getAllItems().contains(shopItem)) {
                             adapter.update(shopItem);
+                        } else if (isShownProduct(changedEntity)) {
+                            adapter.add(shopItem);
                         }
                     }
                 }
@@ -250,6 +277,69 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
             };
             addTemporalDaoListener(dao, Product.class, listener, SelectShopItemsUnit.this);
         }
+
+        // overdue products are shown first, so all of them are loaded at once, before the pages
+        private void loadOverdueProducts(ShopListActivity activity) {
+            activity.getAsyncDao().submit(new AsyncDao.DaoCall<List<Product>>() {
+                @Override
+                public List<Product> call(Dao dao) {
+                    final List<Product> result = new ArrayList<>();
+                    for (Product product : dao.getProducts()) {
+                        if (isOverdue(product)) {
+                            result.add(product);
+                        }
+                    }
+
+                    return result;
+                }
+            }, new AsyncDao.UiCallback<List<Product>>() {
+                @Override
+                public void onResult(List<Product> overdueProducts) {
+                    addProducts(overdueProducts);
+                }
+            });
+        }
+
+        // selected items are always shown, even if their products are not loaded yet
+        private void addProducts(List<Product> products) {
+            final Set<ShopItem> shownItems = new HashSet<>(adapter.getAllItems());
+
+            for (Product product : products) {
+                ShopItem shopItem = getOrCreateShopItem(product);
+
+                if (!existingItems.contains(shopItem) && shownItems.add(shopItem)) {
+                    adapter.add(shopItem);
+                }
+            }
+
+            for (ShopItem selectedItem : selectedItems) {
+                if (shownItems.add(selectedItem)) {
+                    adapter.add(selectedItem);
+                }
+
+                adapter.selectItem(selectedItem);
+            }
+        }
+
+        // items of the previous query, selected and overdue items are kept
+        private void removePagedItems() {
+            for (ShopItem shopItem : new ArrayList<>(adapter.getAllItems())) {
+                if (!selectedItems.contains(shopItem) && !isOverdue(shopItem.getProduct())) {
+                    adapter.remove(shopItem);
+                }
+            }
+        }
+
+        // selected and overdue items are kept
+        private void removeProducts(List<Product> products) {
+            for (Product product : products) {
+                final ShopItem shopItem = cachedItems.get(product);
+
+                if ((shopItem != null) && !selectedItems.contains(shopItem) && !isOverdue(product)) {
+                    adapter.remove(shopItem);
+                }
+            }
+        }
     }
 
     private class ToolbarRenderer extends ViewRenderer<ShopListActivity, RelativeLayout> {
@@ -280,9 +370,16 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
         }
     }
 
-    private Comparator<ShopItem> createComparator() {
-        final ProductComparator productComparator = new ProductComparator();
+    private boolean isShownProduct(Product product) {
+        return isOverdue(product) || (productsLoader == null) || productsLoader.isInLoadedRange(product);
+    }
+
+    private static boolean isOverdue(Product product) {
+        return ModelHelper.ageToPercent(product) >= ModelHelper.MIN_OVERDUE_AGE_PERCENT;
+    }
 
+    // overdue products first, the rest in the order of the product pages
+    private Comparator<ShopItem> createComparator() {
         return new Comparator<ShopItem>() {
             @Override
             public int compare(ShopItem i1, ShopItem i2) {
@@ -301,11 +398,12 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
                     return 1;
                 }
 
-                return productComparator.compare(p1, p2);
+                return ProductComparator.INSTANCE.compare(p1, p2);
             }
         };
     }
 
+    // pages are loaded by the categories, the filter hides overdue and selected items of other categories
     private void filterProducts(final List<Category> categories) {
         final ProductsFilter productsFilter = new ProductsFilter("", categories);
 
@@ -315,6 +413,11 @@ public class SelectShopItemsUnit extends Unit<ShopListActivity> {
                 return productsFilter.apply(shopItem.getProduct());
             }
         });
+
+        if (productsLoader != null) {
+            productsLoader.reload(getHostingActivity().getDao().getProducts(
+                    new ProductQuery(null, categories), PAGE_SIZE));
+        }
     }
 
 }
@@ -41,6 +41,8 @@ import net.buggy.shoplist.components.CategoriesFilter;
 import net.buggy.shoplist.components.SearchProductCellFactory;
 import net.buggy.shoplist.components.SearchProductCellFactory.SearchedProduct;
 import net.buggy.shoplist.components.ToBuyShopItemCellFactory;
+import net.buggy.shoplist.data.AsyncDao;
+import net.buggy.shoplist.data.ChangeLogEntry;
 import net.buggy.shoplist.data.Dao;
 import net.buggy.shoplist.data.UiThreadEntityListener;
 import net.buggy.shoplist.model.Category;
@@ -53,12 +55,12 @@ import net.buggy.shoplist.utils.StringUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -68,9 +70,12 @@ import static net.buggy.shoplist.units.UnitsHelper.addTemporalDaoListener;
 
 public class ShopItemListUnit extends Unit<ShopListActivity> {
 
+    private static final int SEARCH_RESULTS_LIMIT = 5;
+
     private transient FactoryBasedAdapter<ShopItem> adapter;
     private transient EditText searchField;
     private transient ImageButton cleanCheckedButton;
+    private transient long lastChangeSeq;
     private Boolean showTipsOnEmpty;
 
     private final List<Category> filterCategories = new ArrayList<>();
@@ -95,18 +100,23 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
                 itemsPerProduct.put(item.getProduct(), item);
             }
 
-            for (ShopItem newItem : newItems) {
-                final ShopItem existingItem = itemsPerProduct.get(newItem.getProduct());
-                if (existingItem == null) {
-                    dao.addShopItem(newItem);
-                } else {
-                    Log.w("ShopItemListUnit", "onEvent: " + newItem + " shopItem already exists");
-                    existingItem.setQuantity(newItem.getQuantity());
-                    existingItem.setComment(newItem.getComment());
-                    existingItem.setUnitOfMeasure(newItem.getUnitOfMeasure());
-                    dao.saveShopItem(existingItem);
+            dao.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (ShopItem newItem : newItems) {
+                        final ShopItem existingItem = itemsPerProduct.get(newItem.getProduct());
+                        if (existingItem == null) {
+                            dao.addShopItem(newItem);
+                        } else {
+                            Log.w("ShopItemListUnit", "onEvent: " + newItem + " shopItem already exists");
+                            existingItem.setQuantity(newItem.getQuantity());
+                            existingItem.setComment(newItem.getComment());
+                            existingItem.setUnitOfMeasure(newItem.getUnitOfMeasure());
+                            dao.saveShopItem(existingItem);
+                        }
+                    }
                 }
-            }
+            });
 
             return;
 
@@ -244,6 +254,7 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
             adapter.setSelectionMode(MULTI);
             adapter.setSorter(new ShopItemComparator());
 
+            lastChangeSeq = dao.getLastChangeSeq();
             refreshShopItems(dao.getShopItems(), adapter);
 
             itemsList.setAdapter(adapter);
@@ -283,9 +294,40 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
             swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
                 @Override
                 public void onRefresh() {
-                    refreshShopItems(dao.getShopItems(), adapter);
+                    final long sinceSeq = lastChangeSeq;
+
+                    activity.getAsyncDao().submit(new AsyncDao.DaoCall<RefreshResult>() {
+                        @Override
+                        public RefreshResult call(Dao dao) {
+                            // the removals, which were not read yet, can be dropped by compaction
+                            if (sinceSeq < dao.getCompactedChangeSeq()) {
+                                final long lastSeq = dao.getLastChangeSeq();
+
+                                return RefreshResult.reloaded(dao.getShopItems(), lastSeq);
+                            }
+
+                            return RefreshResult.changed(dao.changesSince(sinceSeq));
+                        }
+                    }, new AsyncDao.UiCallback<RefreshResult>() {
+                        @Override
+                        public void onResult(RefreshResult result) {
+                            if (result.shopItems != null) {
+                                lastChangeSeq = result.lastChangeSeq;
+                                refreshShopItems(result.shopItems, adapter);
+                            } else {
+                                applyChanges(result.changes, adapter, dao);
+                            }
+
+                            swipeRefreshLayout.setRefreshing(false);
+                        }
 
-                    swipeRefreshLayout.setRefreshing(false);
+                        @Override
+                        public void onFailure(Throwable throwable) {
+                            super.onFailure(throwable);
+
+                            swipeRefreshLayout.setRefreshing(false);
+                        }
+                    });
                 }
             });
 
@@ -460,6 +502,55 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
         }
     }
 
+    // updates only the items, which were changed since the last load
+    private void applyChanges(List<ChangeLogEntry> changes, FactoryBasedAdapter<ShopItem> adapter, Dao dao) {
+        final Set<Long> changedItemIds = new LinkedHashSet<>();
+        final Set<Long> changedProductIds = new HashSet<>();
+
+        for (ChangeLogEntry change : changes) {
+            lastChangeSeq = Math.max(lastChangeSeq, change.getSeq());
+
+            if (change.getEntityClass().equals(ShopItem.class)) {
+                changedItemIds.add(change.getInternalId());
+            } else if (change.getEntityClass().equals(Product.class)) {
+                changedProductIds.add(change.getInternalId());
+            }
+        }
+
+        final Map<Long, ShopItem> shownItems = new LinkedHashMap<>();
+        for (ShopItem shownItem : adapter.getAllItems()) {
+            shownItems.put(shownItem.getId(), shownItem);
+
+            if (changedProductIds.contains(shownItem.getProduct().getId())) {
+                changedItemIds.add(shownItem.getId());
+            }
+        }
+
+        for (Long itemId : changedItemIds) {
+            final ShopItem shopItem = dao.findShopItem(itemId);
+            final ShopItem shownItem = shownItems.get(itemId);
+
+            if (shopItem == null) {
+                if (shownItem != null) {
+                    adapter.remove(shownItem);
+                }
+                continue;
+            }
+
+            if (shownItem != null) {
+                adapter.update(shopItem);
+            } else {
+                adapter.add(shopItem);
+            }
+
+            if (shopItem.isChecked()) {
+                adapter.selectItem(shopItem);
+            } else {
+                adapter.deselectItem(shopItem);
+            }
+        }
+    }
+
     private void refreshShopItems(List<ShopItem> setShopItems, FactoryBasedAdapter<ShopItem> adapter) {
         adapter.clear();
         adapter.addAll(setShopItems);
@@ -471,6 +562,27 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
         }
     }
 
+    // either the changes since the last seq or all the items, when the log doesn't have the changes
+    private static final class RefreshResult {
+        private final List<ChangeLogEntry> changes;
+        private final List<ShopItem> shopItems;
+        private final long lastChangeSeq;
+
+        private RefreshResult(List<ChangeLogEntry> changes, List<ShopItem> shopItems, long lastChangeSeq) {
+            this.changes = changes;
+            this.shopItems = shopItems;
+            this.lastChangeSeq = lastChangeSeq;
+        }
+
+        private static RefreshResult changed(List<ChangeLogEntry> changes) {
+            return new RefreshResult(changes, null, 0);
+        }
+
+        private static RefreshResult reloaded(List<ShopItem> shopItems, long lastChangeSeq) {
+            return new RefreshResult(null, shopItems, lastChangeSeq);
+        }
+    }
+
     private class ToolbarRenderer extends ViewRenderer<ShopListActivity, RelativeLayout> {
         @Override
         public void renderTo(final RelativeLayout parentView, final ShopListActivity activity) {
@@ -591,25 +703,22 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
                 @Override
                 public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
                     if (actionId == EditorInfo.IME_ACTION_DONE) {
-                        final List<Product> products = activity.getDao().getProducts();
-
-                        Product foundProduct = null;
                         final String searchString = v.getText().toString().trim();
-                        for (Product product : products) {
-                            if (StringUtils.equalIgnoreCase(product.getName(), searchString)) {
-                                foundProduct = product;
-                                break;
-                            }
-                        }
-
-                        if (foundProduct == null) {
-                            foundProduct = new Product();
-                            foundProduct.setName(searchString);
-                        }
 
                         ViewUtils.hideSoftKeyboard(v);
                         v.clearFocus();
-                        addItemClicked(foundProduct);
+
+                        activity.getAsyncDao().findProductByName(searchString, new AsyncDao.UiCallback<Product>() {
+                            @Override
+                            public void onResult(Product foundProduct) {
+                                if (foundProduct == null) {
+                                    foundProduct = new Product();
+                                    foundProduct.setName(searchString);
+                                }
+
+                                addItemClicked(foundProduct);
+                            }
+                        });
 
                         return true;
                     }
@@ -740,44 +849,41 @@ public class ShopItemListUnit extends Unit<ShopListActivity> {
         protected List<SearchedProduct> doInBackground(String[] params) {
             String searchString = params[0];
 
-            final String searchStringLower = searchString.toLowerCase();
             final Dao dao = getHostingActivity().getDao();
 
             Set<Product> existingProducts = getAddedProducts();
 
-            List<Product> products = new ArrayList<>(
-                    dao.getProducts());
-            final Iterator<Product> iterator = products.iterator();
+            // the dao ranks the matches. Already added products are shown last,
+            // so the limit covers the case, when all of them are ranked first
+            List<Product> products = dao.searchProducts(
+                    searchString, SEARCH_RESULTS_LIMIT + existingProducts.size());
             boolean hasExactMatch = false;
-            while (iterator.hasNext()) {
-                final Product product = iterator.next();
-                if (!product.getName().toLowerCase().contains(searchStringLower)) {
-                    iterator.remove();
-                    continue;
-                }
-
+            for (Product product : products) {
                 if (StringUtils.equalIgnoreCase(product.getName(), searchString)) {
                     hasExactMatch = true;
+                    break;
                 }
             }
 
+            List<SearchedProduct> result = new ArrayList<>();
             if (!hasExactMatch && (!searchString.isEmpty())) {
                 final Product stubProduct = new Product();
                 stubProduct.setName(searchString);
-                products.add(stubProduct);
+                result.add(new SearchedProduct(stubProduct, false));
             }
 
-            List<SearchedProduct> result = new ArrayList<>();
+            List<SearchedProduct> addedResult = new ArrayList<>();
             for (Product product : products) {
-                boolean exists = existingProducts.contains(product);
-
-                result.add(new SearchedProduct(product, exists));
+                if (existingProducts.contains(product)) {
+                    addedResult.add(new SearchedProduct(product, true));
+                } else {
+                    result.add(new SearchedProduct(product, false));
+                }
             }
+            result.addAll(addedResult);
 
-            Collections.sort(result, new SearchedProductComparator(searchStringLower));
-
-            if (result.size() > 5) {
-                result = result.subList(0, 5);
+            if (result.size() > SEARCH_RESULTS_LIMIT) {
+                result = result.subList(0, SEARCH_RESULTS_LIMIT);
             }
 
             return result;
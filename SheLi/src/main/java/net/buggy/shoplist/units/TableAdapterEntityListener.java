@@ -6,6 +6,11 @@ import net.buggy.components.list.FactoryBasedAdapter;
 import net.buggy.shoplist.data.UiThreadEntityListener;
 import net.buggy.shoplist.model.Entity;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 
 public class TableAdapterEntityListener<T extends Entity> extends UiThreadEntityListener<T> {
     private final FactoryBasedAdapter<T> adapter;
@@ -23,6 +28,20 @@ public class TableAdapterEntityListener<T extends Entity> extends UiThreadEntity
         }
     }
 
+    @Override
+    public void entitiesAddedUi(List<T> newEntities) {
+        final Set<T> existingEntities = new HashSet<>(adapter.getAllItems());
+
+        final List<T> addedEntities = new ArrayList<>(newEntities.size());
+        for (T newEntity : newEntities) {
+            if (existingEntities.add(newEntity)) {
+                addedEntities.add(newEntity);
+            }
+        }
+
+        adapter.addAll(addedEntities);
+    }
+
     @Override
     public void entityChangedUi(T changedEntity) {
         adapter.update(changedEntity);
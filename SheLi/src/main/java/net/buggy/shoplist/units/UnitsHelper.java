@@ -1,6 +1,9 @@
 package net.buggy.shoplist.units;
 
 
+import com.google.common.base.Objects;
+
+import net.buggy.components.list.FactoryBasedAdapter;
 import net.buggy.shoplist.data.Dao;
 import net.buggy.shoplist.data.EntityListener;
 import net.buggy.shoplist.model.Entity;
@@ -27,4 +30,14 @@ public class UnitsHelper {
         });
     }
 
+    // linear search, paged lists keep a limited number of items
+    public static <T> int getPosition(FactoryBasedAdapter<T> adapter, T item) {
+        for (int i = 0; i < adapter.getItemCount(); i++) {
+            if (Objects.equal(adapter.getItem(i), item)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
 }
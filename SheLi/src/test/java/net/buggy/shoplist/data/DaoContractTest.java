@@ -0,0 +1,385 @@
+package net.buggy.shoplist.data;
+
+import com.google.common.collect.ImmutableSet;
+
+import net.buggy.shoplist.data.ChangeLogEntry.Operation;
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Entity;
+import net.buggy.shoplist.model.EntitySynchronizationRecord;
+import net.buggy.shoplist.model.Language;
+import net.buggy.shoplist.model.MissingExternalIdException;
+import net.buggy.shoplist.model.PeriodType;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.Settings;
+import net.buggy.shoplist.model.ShopItem;
+import net.buggy.shoplist.model.UnitOfMeasure;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Behaviour, which every Dao implementation should provide.
+// Implementation specific tests (storage format, migrations) stay in the subclasses
+public abstract class DaoContractTest {
+
+    protected static final int DEFAULT_TIMEOUT = 10000;
+
+    protected static final String LIST_ID = "list-1";
+
+    protected Dao dao;
+
+    @Before
+    public void setUp() throws Exception {
+        dao = createDao();
+    }
+
+    protected abstract Dao createDao();
+
+    // a dao over the same storage, only the stored state is visible through it
+    protected abstract Dao reopenDao();
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testEntitiesAreStored() {
+        final Category category = addCategory("Dairy");
+        category.setColor(0xFF00FF00);
+        dao.saveCategory(category);
+
+        final Product product = createProduct("Milk", category);
+        product.setDefaultUnits(UnitOfMeasure.LITER);
+        product.setPeriodCount(2);
+        product.setPeriodType(PeriodType.WEEKS);
+        product.setLastBuyDate(new Date(1500000000000L));
+        dao.addProduct(product);
+
+        final ShopItem shopItem = createShopItem(product);
+        shopItem.setQuantity(new BigDecimal("1.5"));
+        shopItem.setComment("Fresh");
+        shopItem.setUnitOfMeasure(UnitOfMeasure.BOTTLE);
+        shopItem.setChecked(true);
+        dao.addShopItem(shopItem);
+
+        final Dao reopenedDao = reopenDao();
+
+        final Category storedCategory = reopenedDao.findCategory(category.getId());
+        assertEquals("Dairy", storedCategory.getName());
+        assertEquals(Integer.valueOf(0xFF00FF00), storedCategory.getColor());
+
+        final Product storedProduct = reopenedDao.findProduct(product.getId());
+        assertEquals("Milk", storedProduct.getName());
+        assertEquals(UnitOfMeasure.LITER, storedProduct.getDefaultUnits());
+        assertEquals(Integer.valueOf(2), storedProduct.getPeriodCount());
+        assertEquals(PeriodType.WEEKS, storedProduct.getPeriodType());
+        assertEquals(new Date(1500000000000L), storedProduct.getLastBuyDate());
+        assertEquals(ImmutableSet.of(storedCategory), storedProduct.getCategories());
+
+        final ShopItem storedShopItem = reopenedDao.findShopItem(shopItem.getId());
+        assertEquals(storedProduct, storedShopItem.getProduct());
+        assertEquals(0, new BigDecimal("1.5").compareTo(storedShopItem.getQuantity()));
+        assertEquals("Fresh", storedShopItem.getComment());
+        assertEquals(UnitOfMeasure.BOTTLE, storedShopItem.getUnitOfMeasure());
+        assertTrue(storedShopItem.isChecked());
+
+        assertEquals(storedShopItem, reopenedDao.findShopItemByProductName("MILK"));
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testAddDuplicateProductFails() {
+        dao.addProduct(createProduct("Milk"));
+
+        try {
+            dao.addProduct(createProduct("milk"));
+            fail("Duplicate product was added");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(1, reopenDao().getProducts().size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSaveUnexistingCategoryFails() {
+        final Category category = new Category();
+        category.setId(100L);
+        category.setName("Dairy");
+
+        try {
+            dao.saveCategory(category);
+            fail("Unexisting category was saved");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSaveProductCategories() {
+        final Category category1 = addCategory("Category 1");
+        final Category category2 = addCategory("Category 2");
+        final Category category3 = addCategory("Category 3");
+
+        final Product product = createProduct("Product 1", category1, category2);
+        dao.addProduct(product);
+
+        product.setCategories(Arrays.asList(category2, category3));
+        dao.saveProduct(product);
+
+        final Product storedProduct = reopenDao().findProduct(product.getId());
+        assertEquals(ImmutableSet.of(category2, category3), storedProduct.getCategories());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    @SuppressWarnings("unchecked")
+    public void testRemoveCategoryNotifiesLinkedProducts() {
+        final Category category = addCategory("Dairy");
+        final Product product = createProduct("Milk", category);
+        dao.addProduct(product);
+
+        final EntityListener<Product> listener = Mockito.mock(EntityListener.class);
+        dao.addEntityListener(Product.class, listener);
+
+        dao.removeCategory(category);
+
+        Mockito.verify(listener).entityChanged(product);
+        assertTrue(reopenDao().findProduct(product.getId()).getCategories().isEmpty());
+        assertNull(reopenDao().findCategory(category.getId()));
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testRemoveProductCascade() {
+        final Product product = createProduct("Milk");
+        dao.addProduct(product);
+        dao.addShopItem(createShopItem(product));
+
+        dao.removeProductCascade(product);
+
+        final Dao reopenedDao = reopenDao();
+        assertTrue(reopenedDao.getProducts().isEmpty());
+        assertTrue(reopenedDao.getShopItems().isEmpty());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    @SuppressWarnings("unchecked")
+    public void testFailedTransactionIsRolledBack() {
+        final EntityListener<Product> listener = Mockito.mock(EntityListener.class);
+        dao.addEntityListener(Product.class, listener);
+
+        final long initialSeq = dao.getLastChangeSeq();
+
+        try {
+            dao.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    dao.addProduct(createProduct("Milk"));
+
+                    throw new IllegalStateException("Test failure");
+                }
+            });
+            fail("Transaction didn't fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Mockito.verifyZeroInteractions(listener);
+        assertTrue(dao.getProducts().isEmpty());
+        assertNull(dao.findProductByName("Milk"));
+        assertTrue(dao.changesSince(initialSeq).isEmpty());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSearchProducts() {
+        for (String name : Arrays.asList("Almond milk", "Bread", "Milk chocolate", "Milk")) {
+            dao.addProduct(createProduct(name));
+        }
+
+        assertEquals(Arrays.asList("Milk", "Milk chocolate", "Almond milk"),
+                getNames(dao.searchProducts("milk", 5)));
+        assertEquals(Arrays.asList("Almond milk", "Bread"),
+                getNames(dao.searchProducts("", 2)));
+        assertTrue(dao.searchProducts("cheese", 5).isEmpty());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSearchProductsPunctuation() {
+        for (String name : Arrays.asList("Кефир «Домик в деревне»", "Milk–chocolate", "Молоко 3,2%")) {
+            dao.addProduct(createProduct(name));
+        }
+
+        assertEquals(Arrays.asList("Кефир «Домик в деревне»"), getNames(dao.searchProducts("домик", 5)));
+        assertEquals(Arrays.asList("Milk–chocolate"), getNames(dao.searchProducts("choc", 5)));
+        assertEquals(Arrays.asList("Молоко 3,2%"), getNames(dao.searchProducts("молоко 2", 5)));
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testProductPages() {
+        final Category category = addCategory("Category 1");
+        for (int i = 0; i < 25; i++) {
+            final Product product = (i % 2 == 0)
+                    ? createProduct(String.format("Product %02d", i), category)
+                    : createProduct(String.format("Product %02d", i));
+            dao.addProduct(product);
+        }
+
+        final PageSource<Product> pages = dao.getProducts(ProductQuery.ALL, 10);
+        assertEquals(10, pages.loadNextPage().size());
+        assertEquals(10, pages.loadNextPage().size());
+
+        final List<Product> lastPage = pages.loadNextPage();
+        assertEquals(5, lastPage.size());
+        assertEquals("Product 24", lastPage.get(4).getName());
+        assertFalse(pages.hasMore());
+
+        assertEquals(13, dao.countProducts(
+                new ProductQuery(null, Collections.singletonList(category))));
+        assertEquals(10, dao.countProducts(
+                new ProductQuery("product 1", Collections.<Category>emptyList())));
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSynchronizationRecords() throws MissingExternalIdException {
+        final Category category = addCategory("Dairy");
+        final Product product = createProduct("Milk");
+        dao.addProduct(product);
+
+        dao.addSynchronizationRecord(createSyncRecord(category, "external-1"));
+        dao.addSynchronizationRecord(createSyncRecord(product, "external-2"));
+
+        assertEquals(category, dao.findCategoryByExternalId("external-1", LIST_ID));
+        assertEquals(product, dao.findProductByExternalId("external-2", LIST_ID));
+        assertNull(dao.findProductByExternalId("external-1", LIST_ID));
+
+        final Date changeDate = new Date(1500000000000L);
+        dao.updateSynchronizationRecords(product.getId(), Product.class, changeDate, true);
+
+        final EntitySynchronizationRecord<Product> record = dao.findSynchronizationByExternalId(
+                "external-2", LIST_ID, Product.class);
+        assertTrue(record.isDeleted());
+        assertEquals(changeDate, record.getLastChangeDate());
+        assertEquals(Product.class, record.getEntityClass());
+
+        assertEquals(1, dao.loadDeletedSynchronizationRecords().size());
+        assertEquals(2, dao.loadSynchronizationRecords(null, LIST_ID).size());
+        assertEquals(1, dao.loadSynchronizationRecords(Category.class, LIST_ID).size());
+
+        final Map<String, Entity> externalIds = dao.mapExternalIds(
+                ImmutableSet.<Entity>of(category, product), LIST_ID);
+        assertEquals(ImmutableSet.of("external-1", "external-2"), externalIds.keySet());
+
+        try {
+            dao.mapExternalIds(ImmutableSet.of(category), "list-2");
+            fail("Missing external id was mapped");
+        } catch (MissingExternalIdException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testChangeLog() {
+        final long initialSeq = dao.getLastChangeSeq();
+
+        final Product product = createProduct("Milk");
+        dao.addProduct(product);
+        product.setPeriodCount(3);
+        dao.saveProduct(product);
+        dao.removeProduct(product);
+
+        final List<ChangeLogEntry> changes = dao.changesSince(initialSeq);
+        assertEquals(3, changes.size());
+        assertEquals(Operation.ADDED, changes.get(0).getOperation());
+        assertEquals(Operation.CHANGED, changes.get(1).getOperation());
+        assertEquals(Operation.REMOVED, changes.get(2).getOperation());
+        assertEquals(product.getId(), changes.get(2).getInternalId());
+        assertEquals(changes.get(2).getSeq(), dao.getLastChangeSeq());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSettingsAndMetadata() {
+        assertTrue(dao.isFirstLaunch());
+        assertTrue(dao.isShowTips());
+
+        final List<SettingsSnapshot> savedSnapshots = new ArrayList<>();
+        dao.addSettingsListener(new SettingsListener() {
+            @Override
+            public void settingsSaved(SettingsSnapshot snapshot) {
+                savedSnapshots.add(snapshot);
+            }
+
+            @Override
+            public void settingsSaveFailed(SettingsSnapshot snapshot, Exception exception) {
+                fail("Settings were not saved: " + exception);
+            }
+        });
+
+        dao.clearFirstLaunch();
+        dao.clearFirstLaunch();
+        dao.setShowTips(false);
+
+        final Settings settings = dao.getSettings();
+        settings.setLanguage(Language.RU);
+        dao.saveSettings(settings);
+
+        assertEquals(3, savedSnapshots.size());
+        assertEquals(Language.RU, savedSnapshots.get(2).getLanguage());
+        assertFalse(savedSnapshots.get(2).isShowTips());
+
+        final Dao reopenedDao = reopenDao();
+        assertFalse(reopenedDao.isFirstLaunch());
+        assertFalse(reopenedDao.isShowTips());
+        assertEquals(Language.RU, reopenedDao.getSettings().getLanguage());
+    }
+
+    protected Category addCategory(String name) {
+        final Category category = new Category();
+        category.setName(name);
+        dao.addCategory(category);
+
+        return category;
+    }
+
+    protected static Product createProduct(String name, Category... categories) {
+        final Product product = new Product();
+        product.setName(name);
+        product.setCategories(Arrays.asList(categories));
+
+        return product;
+    }
+
+    protected static ShopItem createShopItem(Product product) {
+        final ShopItem shopItem = new ShopItem();
+        shopItem.setProduct(product);
+
+        return shopItem;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static <T extends Entity> EntitySynchronizationRecord<T> createSyncRecord(T entity, String externalId) {
+        final EntitySynchronizationRecord<T> record = new EntitySynchronizationRecord<>();
+        record.setExternalId(externalId);
+        record.setInternalId(entity.getId());
+        record.setEntityClass((Class<T>) entity.getClass());
+        record.setListId(LIST_ID);
+
+        return record;
+    }
+
+    protected static List<String> getNames(List<Product> products) {
+        final List<String> result = new ArrayList<>();
+        for (Product product : products) {
+            result.add(product.getName());
+        }
+
+        return result;
+    }
+}
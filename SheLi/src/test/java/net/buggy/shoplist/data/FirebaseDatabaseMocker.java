@@ -40,6 +40,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -64,6 +65,8 @@ public class FirebaseDatabaseMocker {
 
     private final List<Exception> backgroundExceptions = new CopyOnWriteArrayList<>();
 
+    private final Set<String> rejectedKeys = new CopyOnWriteArraySet<>();
+
     private final static AtomicLong UNIQUE_ID_COUNTER = new AtomicLong();
 
     public FirebaseDatabaseMocker() {
@@ -104,6 +107,11 @@ public class FirebaseDatabaseMocker {
         });
     }
 
+    // updateChildren fails, if any of the updated paths contains the key
+    public void rejectWrites(String key) {
+        rejectedKeys.add(key);
+    }
+
     public List<Exception> getBackgroundExceptions() {
         return backgroundExceptions;
     }
@@ -260,6 +268,16 @@ public class FirebaseDatabaseMocker {
                 public Task<Void> answer(InvocationOnMock invocationOnMock) throws Throwable {
                     Map<String, Object> newChildren = invocationOnMock.getArgument(0);
 
+                    if (isRejected(newChildren)) {
+                        return new FinishedTask<Void>(null, new IllegalStateException("Write rejected: " + newChildren));
+                    }
+
+                    if (hasPathKeys(newChildren)) {
+                        mergeChildren(newChildren);
+
+                        return new FinishedTask<>(null);
+                    }
+
                     boolean exists = valueExists();
 
                     Map<String, Node> removedNodes = new LinkedHashMap<>(children);
@@ -320,6 +338,74 @@ public class FirebaseDatabaseMocker {
             Mockito.doReturn(databaseReference).when(databaseReference).getRef();
         }
 
+        private boolean isRejected(Map<String, Object> values) {
+            for (Node node = this; node != null; node = node.parent) {
+                if (rejectedKeys.contains(node.key)) {
+                    return true;
+                }
+            }
+
+            for (String path : values.keySet()) {
+                for (String key : path.split("/")) {
+                    if (rejectedKeys.contains(key)) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        private boolean hasPathKeys(Map<String, Object> values) {
+            for (String key : values.keySet()) {
+                if (key.contains("/")) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // multi-path update: only the listed paths are changed, other children are kept
+        private void mergeChildren(Map<String, Object> values) {
+            final boolean exists = valueExists();
+
+            final Map<String, Map<String, Object>> nestedValues = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                final String path = entry.getKey();
+                final int separatorIndex = path.indexOf('/');
+
+                if (separatorIndex < 0) {
+                    final Node childNode = getOrCreateChild(path);
+                    childNode.value = entry.getValue();
+                    childNode.notifyValueChanged();
+                    continue;
+                }
+
+                final String childKey = path.substring(0, separatorIndex);
+                Map<String, Object> childValues = nestedValues.get(childKey);
+                if (childValues == null) {
+                    childValues = new LinkedHashMap<>();
+                    nestedValues.put(childKey, childValues);
+                }
+                childValues.put(path.substring(separatorIndex + 1), entry.getValue());
+            }
+
+            for (Map.Entry<String, Map<String, Object>> entry : nestedValues.entrySet()) {
+                getOrCreateChild(entry.getKey()).mergeChildren(entry.getValue());
+            }
+
+            if (parent == null) {
+                return;
+            }
+
+            if (exists) {
+                notifyNodeChanged();
+            } else {
+                notifyNodeAdded();
+            }
+        }
+
         private void notifyNodeAdded() {
             final List<ChildEventListener> childListeners = parent.childListeners;
             if (!childListeners.isEmpty()) {
@@ -478,9 +564,15 @@ public class FirebaseDatabaseMocker {
         private class FinishedTask<T> extends Task<T> {
 
             private final T result;
+            private final Exception exception;
 
             private FinishedTask(T result) {
+                this(result, null);
+            }
+
+            private FinishedTask(T result, Exception exception) {
                 this.result = result;
+                this.exception = exception;
             }
 
             @Override
@@ -490,7 +582,7 @@ public class FirebaseDatabaseMocker {
 
             @Override
             public boolean isSuccessful() {
-                return true;
+                return exception == null;
             }
 
             @Override
@@ -506,7 +598,7 @@ public class FirebaseDatabaseMocker {
             @Nullable
             @Override
             public Exception getException() {
-                return null;
+                return exception;
             }
 
             @NonNull
@@ -7,6 +7,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 
+import net.buggy.shoplist.compare.ProductComparator;
 import net.buggy.shoplist.model.Category;
 import net.buggy.shoplist.model.Entity;
 import net.buggy.shoplist.model.EntitySynchronizationRecord;
@@ -21,6 +22,7 @@ import net.buggy.shoplist.utils.StringUtils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -29,6 +31,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -37,7 +40,9 @@ public class InMemoryDao implements Dao {
     private Settings settings = new Settings();
 
     private final AtomicBoolean firstLaunch = new AtomicBoolean(true);
-    private final AtomicBoolean showTips = new AtomicBoolean();
+    private final AtomicBoolean showTips = new AtomicBoolean(true);
+
+    private final List<SettingsListener> settingsListeners = new CopyOnWriteArrayList<>();
 
     private final InMemoryTable<ShopItem> shopItemsTable = new InMemoryTable<>();
     private final InMemoryTable<Category> categoriesTable = new InMemoryTable<>();
@@ -46,6 +51,11 @@ public class InMemoryDao implements Dao {
 
     private Multimap<Class<? extends Entity>, EntityListener<? extends Entity>> listeners = LinkedHashMultimap.create();
 
+    private final ThreadLocal<List<EntityChange>> transactionChanges = new ThreadLocal<>();
+
+    private final List<ChangeLogEntry> changeLog = new CopyOnWriteArrayList<>();
+    private final AtomicLong changeSeq = new AtomicLong();
+
     @Override
     public boolean isFirstLaunch() {
         return firstLaunch.get();
@@ -80,6 +90,74 @@ public class InMemoryDao implements Dao {
         return new ArrayList<>(productsTable.loadEntities());
     }
 
+    @Override
+    public PageSource<Product> getProducts(ProductQuery query, int pageSize) {
+        final List<Product> sortedProducts = new ArrayList<>();
+        for (Product product : productsTable.loadEntities()) {
+            if (query.matches(product)) {
+                sortedProducts.add(product);
+            }
+        }
+        Collections.sort(sortedProducts, ProductComparator.INSTANCE);
+
+        return new ListPageSource<>(sortedProducts, pageSize);
+    }
+
+    @Override
+    public int countProducts(ProductQuery query) {
+        int count = 0;
+        for (Product product : productsTable.loadEntities()) {
+            if (query.matches(product)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public List<Product> searchProducts(String query, int limit) {
+        final List<String> searchWords = ModelHelper.splitSearchWords(query);
+        final String normalizedQuery = ModelHelper.normalizeName(query);
+
+        final List<Product> result = new ArrayList<>();
+        for (Product product : productsTable.loadEntities()) {
+            if (ModelHelper.matchesSearchWords(product.getName(), searchWords)) {
+                result.add(product);
+            }
+        }
+
+        Collections.sort(result, new Comparator<Product>() {
+            @Override
+            public int compare(Product p1, Product p2) {
+                final String name1 = ModelHelper.normalizeName(p1.getName());
+                final String name2 = ModelHelper.normalizeName(p2.getName());
+
+                if (!searchWords.isEmpty()) {
+                    final int exactCompare = Boolean.compare(
+                            name2.equals(normalizedQuery), name1.equals(normalizedQuery));
+                    if (exactCompare != 0) {
+                        return exactCompare;
+                    }
+
+                    final int leadingCompare = Boolean.compare(
+                            name2.startsWith(normalizedQuery), name1.startsWith(normalizedQuery));
+                    if (leadingCompare != 0) {
+                        return leadingCompare;
+                    }
+
+                    if (name1.length() != name2.length()) {
+                        return name1.length() - name2.length();
+                    }
+                }
+
+                return name1.compareTo(name2);
+            }
+        });
+
+        return (result.size() > limit) ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
     @Override
     public void saveProduct(Product product) {
         productsTable.save(product);
@@ -112,6 +190,21 @@ public class InMemoryDao implements Dao {
         notifyEntityRemoved(product);
     }
 
+    @Override
+    public void removeProductCascade(final Product product) {
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final List<ShopItem> linkedItems = findLinkedItems(product);
+                for (ShopItem linkedItem : linkedItems) {
+                    removeShopItem(linkedItem);
+                }
+
+                removeProduct(product);
+            }
+        });
+    }
+
     @Override
     public void saveShopItem(ShopItem shopItem) {
         shopItemsTable.save(shopItem);
@@ -172,6 +265,27 @@ public class InMemoryDao implements Dao {
     @Override
     public void saveSettings(Settings settings) {
         this.settings = cloneToStorage(settings);
+
+        notifySettingsSaved();
+    }
+
+    @Override
+    public void addSettingsListener(SettingsListener listener) {
+        settingsListeners.add(listener);
+    }
+
+    @Override
+    public void removeSettingsListener(SettingsListener listener) {
+        settingsListeners.remove(listener);
+    }
+
+    private void notifySettingsSaved() {
+        final SettingsSnapshot snapshot = new SettingsSnapshot(
+                settings.getLanguage(), firstLaunch.get(), showTips.get());
+
+        for (SettingsListener listener : settingsListeners) {
+            listener.settingsSaved(snapshot);
+        }
     }
 
     @Override
@@ -191,27 +305,34 @@ public class InMemoryDao implements Dao {
 
     @Override
     public void clearFirstLaunch() {
-        firstLaunch.set(false);
+        if (firstLaunch.getAndSet(false)) {
+            notifySettingsSaved();
+        }
     }
 
     @Override
     public void setShowTips(boolean showTips) {
-        this.showTips.set(showTips);
+        if (this.showTips.getAndSet(showTips) != showTips) {
+            notifySettingsSaved();
+        }
     }
 
     @Nullable
     @Override
     public Product findProductByExternalId(String externalId, String listId) {
-        return findEntityByExternalId(externalId, listId, this.productsTable);
+        return findEntityByExternalId(externalId, listId, Product.class, this.productsTable);
     }
 
     @Nullable
-    private <T extends Entity> T findEntityByExternalId(String externalId, String listId, InMemoryTable<T> table) {
+    private <T extends Entity> T findEntityByExternalId(
+            String externalId, String listId, Class<T> entityClass, InMemoryTable<T> table) {
         EntitySynchronizationRecord foundRecord = null;
 
         final Set<EntitySynchronizationRecord<? extends Entity>> records = syncRecordsTable.getRawEntities();
         for (EntitySynchronizationRecord<? extends Entity> record : records) {
-            if (record.getExternalId().equals(externalId) && record.getListId().equals(listId)) {
+            if (record.getEntityClass().equals(entityClass)
+                    && record.getExternalId().equals(externalId)
+                    && record.getListId().equals(listId)) {
                 foundRecord = record;
                 break;
             }
@@ -277,13 +398,13 @@ public class InMemoryDao implements Dao {
     @Nullable
     @Override
     public Category findCategoryByExternalId(String externalId, String listId) {
-        return findEntityByExternalId(externalId, listId, categoriesTable);
+        return findEntityByExternalId(externalId, listId, Category.class, categoriesTable);
     }
 
     @Nullable
     @Override
     public ShopItem findShopItemByExternalId(String externalId, String listId) {
-        return findEntityByExternalId(externalId, listId, shopItemsTable);
+        return findEntityByExternalId(externalId, listId, ShopItem.class, shopItemsTable);
     }
 
     @Nullable
@@ -392,6 +513,20 @@ public class InMemoryDao implements Dao {
         return result;
     }
 
+    @Override
+    public List<EntitySynchronizationRecord<Entity>> loadDeletedSynchronizationRecords() {
+        List<EntitySynchronizationRecord<Entity>> result = new ArrayList<>();
+
+        final Set<EntitySynchronizationRecord<? extends Entity>> records = syncRecordsTable.loadEntities();
+        for (EntitySynchronizationRecord<? extends Entity> record : records) {
+            if (record.isDeleted()) {
+                result.add((EntitySynchronizationRecord<Entity>) record);
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public <T extends Entity> Map<String, T> mapExternalIds(Set<T> entities, String listId) throws MissingExternalIdException {
         if (CollectionUtils.isEmpty(entities)) {
@@ -404,7 +539,7 @@ public class InMemoryDao implements Dao {
                     findSynchronizationRecord(entity.getId(), listId, entity.getClass());
 
             if (record == null) {
-                throw new IllegalStateException("Entity doesn't have sync record: " + entity);
+                throw new MissingExternalIdException("Entity doesn't have sync record: " + entity);
             }
 
             result.put(record.getExternalId(), entity);
@@ -413,27 +548,121 @@ public class InMemoryDao implements Dao {
         return result;
     }
 
-    private <T extends Entity> void notifyEntityAdded(T entity) {
-        final Collection<EntityListener<? extends Entity>> listeners = this.listeners.get(entity.getClass());
+    // on a failure the tables and the change log are restored and the notifications are dropped
+    @Override
+    public void runInTransaction(Runnable action) {
+        if (transactionChanges.get() != null) {
+            action.run();
+            return;
+        }
+
+        final Map<Long, ShopItem> shopItems = shopItemsTable.snapshot();
+        final Map<Long, Category> categories = categoriesTable.snapshot();
+        final Map<Long, Product> products = productsTable.snapshot();
+        final Map<Long, EntitySynchronizationRecord<? extends Entity>> syncRecords = syncRecordsTable.snapshot();
+        final int changeLogSize = changeLog.size();
+        final long lastChangeSeq = changeSeq.get();
+
+        final List<EntityChange> changes = new ArrayList<>();
+        transactionChanges.set(changes);
+        boolean successful = false;
+        try {
+            action.run();
+            successful = true;
+        } finally {
+            transactionChanges.remove();
+
+            if (!successful) {
+                shopItemsTable.restore(shopItems);
+                categoriesTable.restore(categories);
+                productsTable.restore(products);
+                syncRecordsTable.restore(syncRecords);
+                changeLog.subList(changeLogSize, changeLog.size()).clear();
+                changeSeq.set(lastChangeSeq);
+            }
+        }
 
-        for (EntityListener<? extends Entity> listener : listeners) {
-            ((EntityListener<T>) listener).entityAdded(entity);
+        for (EntityChange change : changes) {
+            notifyListeners(change.type, change.entity);
+        }
+    }
+
+    @Override
+    public List<ChangeLogEntry> changesSince(long seq) {
+        final List<ChangeLogEntry> result = new ArrayList<>();
+        for (ChangeLogEntry entry : changeLog) {
+            if (entry.getSeq() > seq) {
+                result.add(entry);
+            }
         }
+
+        return result;
+    }
+
+    @Override
+    public long getLastChangeSeq() {
+        return changeSeq.get();
+    }
+
+    // the log is never compacted
+    @Override
+    public long getCompactedChangeSeq() {
+        return 0;
+    }
+
+    // unchanged entities are not detected
+    @Override
+    public long getSuppressedWritesCount() {
+        return 0;
+    }
+
+    private <T extends Entity> void notifyEntityAdded(T entity) {
+        logChange(entity, ChangeLogEntry.Operation.ADDED);
+        notifyListeners(ChangeType.ADDED, entity);
     }
 
     private <T extends Entity> void notifyEntityChanged(T entity) {
-        final Collection<EntityListener<? extends Entity>> listeners = this.listeners.get(entity.getClass());
+        logChange(entity, ChangeLogEntry.Operation.CHANGED);
+        notifyListeners(ChangeType.CHANGED, entity);
+    }
 
-        for (EntityListener<? extends Entity> listener : listeners) {
-            ((EntityListener<T>) listener).entityChanged(entity);
+    private <T extends Entity> void notifyEntityRemoved(T entity) {
+        logChange(entity, ChangeLogEntry.Operation.REMOVED);
+        notifyListeners(ChangeType.REMOVED, entity);
+    }
+
+    private void logChange(Entity entity, ChangeLogEntry.Operation operation) {
+        if ((entity instanceof Settings) || (entity instanceof EntitySynchronizationRecord)) {
+            return;
         }
+
+        changeLog.add(new ChangeLogEntry(
+                changeSeq.incrementAndGet(), entity.getClass(), entity.getId(), operation, new Date()));
     }
 
-    private <T extends Entity> void notifyEntityRemoved(T entity) {
+    private <T extends Entity> void notifyListeners(ChangeType type, T entity) {
+        final List<EntityChange> pendingChanges = transactionChanges.get();
+        if (pendingChanges != null) {
+            pendingChanges.add(new EntityChange(type, entity));
+            return;
+        }
+
         final Collection<EntityListener<? extends Entity>> listeners = this.listeners.get(entity.getClass());
 
         for (EntityListener<? extends Entity> listener : listeners) {
-            ((EntityListener<T>) listener).entityRemoved(entity);
+            switch (type) {
+                case ADDED:
+                    ((EntityListener<T>) listener).entityAdded(entity);
+                    break;
+                case CHANGED:
+                    ((EntityListener<T>) listener).entityChanged(entity);
+                    break;
+                case REMOVED:
+                    ((EntityListener<T>) listener).entityRemoved(entity);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported change type " + type);
+            }
         }
     }
 
@@ -572,6 +801,22 @@ public class InMemoryDao implements Dao {
     }
 
 
+    private enum ChangeType {
+        ADDED,
+        CHANGED,
+        REMOVED
+    }
+
+    private static final class EntityChange {
+        private final ChangeType type;
+        private final Entity entity;
+
+        private EntityChange(ChangeType type, Entity entity) {
+            this.type = type;
+            this.entity = entity;
+        }
+    }
+
     private final class InMemoryTable<T extends Entity> {
         private final AtomicLong idCounter = new AtomicLong(1);
         private final ConcurrentHashMap<Long, T> rows = new ConcurrentHashMap<>();
@@ -746,5 +991,20 @@ public class InMemoryDao implements Dao {
 
             return cloneFromStorage(result);
         }
+
+        // stored entities are mutated in place (e.g. by removeCategory), so the copies are kept
+        public Map<Long, T> snapshot() {
+            final Map<Long, T> result = new LinkedHashMap<>();
+            for (Map.Entry<Long, T> entry : rows.entrySet()) {
+                result.put(entry.getKey(), cloneFromStorage(entry.getValue()));
+            }
+
+            return result;
+        }
+
+        public void restore(Map<Long, T> snapshot) {
+            rows.clear();
+            rows.putAll(snapshot);
+        }
     }
 }
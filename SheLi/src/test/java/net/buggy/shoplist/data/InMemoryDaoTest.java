@@ -0,0 +1,34 @@
+package net.buggy.shoplist.data;
+
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+// keeps the test dao of the synchronizer tests consistent with the real one
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Log.class})
+public class InMemoryDaoTest extends DaoContractTest {
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(Log.class);
+
+        super.setUp();
+    }
+
+    @Override
+    protected InMemoryDao createDao() {
+        return new InMemoryDao();
+    }
+
+    // the storage is the dao itself
+    @Override
+    protected Dao reopenDao() {
+        return dao;
+    }
+}
@@ -0,0 +1,121 @@
+package net.buggy.shoplist.data;
+
+import net.buggy.shoplist.model.Product;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ListenerRegistryTest {
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private static final int DISPATCH_THREADS = 4;
+    private static final int SUBSCRIPTION_THREADS = 4;
+    private static final int ITERATIONS = 10000;
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testAddAndRemove() {
+        final ListenerRegistry registry = new ListenerRegistry();
+        final CountingListener listener1 = new CountingListener();
+        final CountingListener listener2 = new CountingListener();
+
+        registry.add(Product.class, listener1);
+        registry.add(Product.class, listener2);
+        registry.add(Product.class, listener1);
+
+        assertArrayEquals(new EntityListener<?>[]{listener1, listener2}, registry.get(Product.class));
+
+        registry.remove(Product.class, listener1);
+        assertArrayEquals(new EntityListener<?>[]{listener2}, registry.get(Product.class));
+
+        registry.remove(Product.class, listener2);
+        assertEquals(0, registry.get(Product.class).length);
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT * 3)
+    public void testConcurrentDispatchAndSubscriptions() throws Exception {
+        final ListenerRegistry registry = new ListenerRegistry();
+
+        final CountingListener permanentListener = new CountingListener();
+        registry.add(Product.class, permanentListener);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                DISPATCH_THREADS + SUBSCRIPTION_THREADS);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < DISPATCH_THREADS; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Void call() throws Exception {
+                    startLatch.await();
+
+                    final Product product = new Product();
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        for (EntityListener<?> listener : registry.get(Product.class)) {
+                            ((EntityListener<Product>) listener).entityChanged(product);
+                        }
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        for (int i = 0; i < SUBSCRIPTION_THREADS; i++) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    startLatch.await();
+
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        final CountingListener temporalListener = new CountingListener();
+                        registry.add(Product.class, temporalListener);
+                        registry.remove(Product.class, temporalListener);
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        startLatch.countDown();
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(DISPATCH_THREADS * ITERATIONS, permanentListener.changesCount.get());
+        assertArrayEquals(new EntityListener<?>[]{permanentListener}, registry.get(Product.class));
+    }
+
+    private static class CountingListener implements EntityListener<Product> {
+        private final AtomicInteger changesCount = new AtomicInteger();
+
+        @Override
+        public void entityAdded(Product newEntity) {
+        }
+
+        @Override
+        public void entityChanged(Product changedEntity) {
+            changesCount.incrementAndGet();
+        }
+
+        @Override
+        public void entityRemoved(Product removedEntity) {
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package net.buggy.shoplist.data;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import net.buggy.shoplist.data.ChangeLogEntry.Operation;
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Language;
+import net.buggy.shoplist.model.Product;
+import net.buggy.shoplist.model.Settings;
+import net.buggy.shoplist.model.ShopItem;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({PlainSqliteDao.class, Log.class, SystemClock.class})
+@PowerMockIgnore({"org.sqlite.*", "javax.management.*"})
+public class PlainSqliteDaoTest extends DaoContractTest {
+
+    private static final int LARGE_SET_CATEGORIES = 20;
+    private static final int LARGE_SET_PRODUCTS = 2000;
+    private static final int LARGE_SET_SEARCHES = 200;
+
+    // tables of the last released version, as ActiveAndroid created them
+    private static final List<String> VERSION_14_SCHEMA = Arrays.asList(
+            "CREATE TABLE Categories (Id INTEGER PRIMARY KEY AUTOINCREMENT, Name TEXT, Color INTEGER)",
+            "CREATE TABLE ProductCategoryLinks (Id INTEGER PRIMARY KEY AUTOINCREMENT"
+                    + ", product INTEGER, category INTEGER)",
+            "CREATE TABLE Products (Id INTEGER PRIMARY KEY AUTOINCREMENT, Name TEXT, UnitOfMeasure TEXT"
+                    + ", PeriodCount INTEGER, PeriodType TEXT, LastBuyDate INTEGER)",
+            "CREATE TABLE ShopItems (Id INTEGER PRIMARY KEY AUTOINCREMENT, Product INTEGER, Quantity TEXT"
+                    + ", Comment TEXT, UnitOfMeasure TEXT, Checked INTEGER)",
+            "CREATE TABLE Settings (Id INTEGER PRIMARY KEY AUTOINCREMENT, Language TEXT)",
+            "CREATE TABLE Metadata (Id INTEGER PRIMARY KEY AUTOINCREMENT, FirstLaunch INTEGER, ShowTips INTEGER)",
+            "CREATE TABLE StoredSynchronizationRecords (Id INTEGER PRIMARY KEY AUTOINCREMENT"
+                    + ", EntityExternalId TEXT UNIQUE NOT NULL, EntityInternalId INTEGER NOT NULL"
+                    + ", Deleted INTEGER, LastChangeDate INTEGER, EntityClass TEXT NOT NULL, ListId TEXT)");
+
+    private SqliteDatabaseMocker databaseMocker;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(Log.class);
+        PowerMockito.mockStatic(SystemClock.class);
+
+        databaseMocker = new SqliteDatabaseMocker();
+
+        super.setUp();
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSaveUnchangedShopItemIsSuppressed() {
+        final Product product = createProduct("Milk");
+        dao.addProduct(product);
+        final ShopItem shopItem = createShopItem(product);
+        dao.addShopItem(shopItem);
+
+        final ShopItem storedShopItem = dao.findShopItem(shopItem.getId());
+
+        final int queriesCount = databaseMocker.getQueriesCount();
+        dao.saveShopItem(storedShopItem);
+
+        assertEquals(1, dao.getSuppressedWritesCount());
+        assertEquals(queriesCount, databaseMocker.getQueriesCount());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSearchWordsBackfill() {
+        databaseMocker.execute("INSERT INTO Products (Name, NormalizedName) VALUES"
+                + " ('Almond milk', 'almond milk'), ('Bread', 'bread')");
+
+        final PlainSqliteDao migratedDao = createDao();
+
+        assertEquals(Arrays.asList("Almond milk"), getNames(migratedDao.searchProducts("milk", 5)));
+        assertTrue(databaseMocker.query("SELECT Id FROM Products WHERE SearchWords IS NULL").isEmpty());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testProductPagesWithoutNormalizedNames() {
+        // rows of a migration, which are not filled by the background backfill yet
+        databaseMocker.execute("INSERT INTO Products (Name) VALUES ('Milk'), ('Bread'), ('Cheese')");
+        dao.addProduct(createProduct("Apple"));
+        dao.addProduct(createProduct("Butter"));
+
+        final PageSource<Product> pages = dao.getProducts(ProductQuery.ALL, 2);
+        assertEquals(Arrays.asList("Milk", "Bread"), getNames(pages.loadNextPage()));
+        assertEquals(Arrays.asList("Cheese", "Apple"), getNames(pages.loadNextPage()));
+        assertEquals(Collections.singletonList("Butter"), getNames(pages.loadNextPage()));
+        assertFalse(pages.hasMore());
+        assertFalse(pages.hasPrevious());
+
+        pages.dropFirstPage();
+        pages.dropFirstPage();
+        assertTrue(pages.hasPrevious());
+        assertEquals(Arrays.asList("Cheese", "Apple"), getNames(pages.loadPreviousPage()));
+        assertEquals(Arrays.asList("Milk", "Bread"), getNames(pages.loadPreviousPage()));
+        assertTrue(pages.loadPreviousPage().isEmpty());
+        assertFalse(pages.hasPrevious());
+
+        pages.dropLastPage();
+        assertTrue(pages.hasMore());
+        assertEquals(Collections.singletonList("Butter"), getNames(pages.loadNextPage()));
+        assertFalse(pages.hasMore());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSettingsAreStoredInSingleRow() {
+        dao.clearFirstLaunch();
+        dao.setShowTips(false);
+
+        final Settings settings = dao.getSettings();
+        settings.setLanguage(Language.RU);
+        dao.saveSettings(settings);
+
+        final PlainSqliteDao reopenedDao = createDao();
+        assertFalse(reopenedDao.isShowTips());
+        assertEquals(Language.RU, reopenedDao.getSettings().getLanguage());
+        assertEquals(1, databaseMocker.query("SELECT Id FROM Settings").size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testEntityTypesMigration() throws Exception {
+        final Category category = addCategory("Dairy");
+
+        databaseMocker.execute("DROP TABLE StoredSynchronizationRecords");
+        databaseMocker.execute("CREATE TABLE StoredSynchronizationRecords (Id INTEGER PRIMARY KEY AUTOINCREMENT"
+                + ", EntityExternalId TEXT UNIQUE NOT NULL, EntityInternalId INTEGER NOT NULL"
+                + ", Deleted INTEGER, LastChangeDate INTEGER, EntityClass TEXT NOT NULL, ListId TEXT)");
+        databaseMocker.execute("INSERT INTO StoredSynchronizationRecords"
+                + " (EntityExternalId, EntityInternalId, Deleted, EntityClass, ListId) VALUES"
+                + " ('external-1', " + category.getId() + ", 0, '" + Category.class.getName() + "', '" + LIST_ID + "')"
+                + ", ('external-2', 100, 0, 'net.buggy.shoplist.model.Unknown', '" + LIST_ID + "')");
+
+        databaseMocker.applyMigration(18);
+
+        final PlainSqliteDao migratedDao = createDao();
+        assertEquals(category, migratedDao.findCategoryByExternalId("external-1", LIST_ID));
+        assertEquals(1, migratedDao.loadSynchronizationRecords(null, LIST_ID).size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testUpgradeFromVersion14() throws Exception {
+        databaseMocker = new SqliteDatabaseMocker(VERSION_14_SCHEMA);
+        databaseMocker.execute("INSERT INTO Categories (Id, Name) VALUES (1, 'Dairy')");
+        databaseMocker.execute("INSERT INTO Products (Id, Name) VALUES (1, 'Milk'), (2, 'Bread')");
+        databaseMocker.execute("INSERT INTO ProductCategoryLinks (product, category) VALUES (1, 1)");
+        databaseMocker.execute("INSERT INTO ShopItems (Product, Checked) VALUES (1, 0)");
+        databaseMocker.execute("INSERT INTO StoredSynchronizationRecords"
+                + " (EntityExternalId, EntityInternalId, Deleted, EntityClass, ListId) VALUES"
+                + " ('external-1', 1, 0, '" + Category.class.getName() + "', '" + LIST_ID + "')");
+
+        databaseMocker.applyMigrations(14, 20);
+
+        final PlainSqliteDao migratedDao = createDao();
+
+        final Category category = migratedDao.findCategoryByExternalId("external-1", LIST_ID);
+        assertEquals("Dairy", category.getName());
+        assertEquals(Collections.singleton(category), migratedDao.findProductByName("milk").getCategories());
+        assertEquals("Milk", migratedDao.findShopItemByProductName("MILK").getProduct().getName());
+        assertEquals(Arrays.asList("Milk"), getNames(migratedDao.searchProducts("mil", 5)));
+
+        assertTrue(migratedDao.changesSince(0).isEmpty());
+        migratedDao.addProduct(createProduct("Cheese"));
+        assertEquals(Operation.ADDED, migratedDao.changesSince(0).get(0).getOperation());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testChangeLogCompaction() {
+        final long now = System.currentTimeMillis();
+
+        databaseMocker.execute("INSERT INTO ChangeLog (EntityType, EntityInternalId, Operation, Timestamp) VALUES"
+                + " (" + EntityTypes.getCode(Product.class) + ", 1, 'ADDED', " + now + ")"
+                + ", (" + EntityTypes.getCode(Product.class) + ", 1, 'CHANGED', " + now + ")"
+                + ", (" + EntityTypes.getCode(Category.class) + ", 2, 'REMOVED', 1000)");
+
+        final PlainSqliteDao compactedDao = createDao();
+
+        final List<ChangeLogEntry> changes = compactedDao.changesSince(0);
+        assertEquals(1, changes.size());
+        assertEquals(Product.class, changes.get(0).getEntityClass());
+        assertEquals(Long.valueOf(1), changes.get(0).getInternalId());
+        assertEquals(Operation.CHANGED, changes.get(0).getOperation());
+        assertEquals(3, compactedDao.getCompactedChangeSeq());
+        assertEquals(3, compactedDao.getLastChangeSeq());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testNormalizedNamesBackfill() {
+        databaseMocker.execute("INSERT INTO Products (Name) VALUES ('Milk'), ('MILK'), ('Bread')");
+        databaseMocker.execute("INSERT INTO Products (Name, NormalizedName) VALUES ('milk (2)', 'milk (2)')");
+
+        final PlainSqliteDao migratedDao = createDao();
+
+        assertEquals(Arrays.asList("Milk", "MILK (3)", "Bread", "milk (2)"), getNames(migratedDao.getProducts()));
+        assertEquals("MILK (3)", migratedDao.findProductByName("milk (3)").getName());
+        assertTrue(databaseMocker.query("SELECT Id FROM Products WHERE NormalizedName IS NULL").isEmpty());
+    }
+
+    // the main storage paths on a data set larger than the page and the statement caches
+    @Test(timeout = DEFAULT_TIMEOUT * 6)
+    public void testLargeDataSet() {
+        dao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                final List<Category> categories = new ArrayList<>();
+                for (int i = 0; i < LARGE_SET_CATEGORIES; i++) {
+                    categories.add(addCategory("Category " + i));
+                }
+
+                for (int i = 0; i < LARGE_SET_PRODUCTS; i++) {
+                    final Product product = createProduct("Product " + i, categories.get(i % LARGE_SET_CATEGORIES));
+                    dao.addProduct(product);
+
+                    if (i % 4 == 0) {
+                        dao.addShopItem(createShopItem(product));
+                    }
+                }
+            }
+        });
+
+        final PlainSqliteDao reopenedDao = createDao();
+        assertEquals(LARGE_SET_PRODUCTS, reopenedDao.getProducts().size());
+        assertEquals(LARGE_SET_PRODUCTS / 4, reopenedDao.getShopItems().size());
+
+        for (int i = 0; i < LARGE_SET_SEARCHES; i++) {
+            assertEquals(5, reopenedDao.searchProducts("product " + (i % 9 + 1), 5).size());
+        }
+
+        int pagedProducts = 0;
+        final PageSource<Product> pages = reopenedDao.getProducts(ProductQuery.ALL, 50);
+        while (pages.hasMore()) {
+            pagedProducts += pages.loadNextPage().size();
+        }
+        assertEquals(LARGE_SET_PRODUCTS, pagedProducts);
+    }
+
+    @Override
+    protected PlainSqliteDao createDao() {
+        final Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        return new PlainSqliteDao(databaseMocker.getDatabase(), directExecutor, directExecutor);
+    }
+
+    @Override
+    protected Dao reopenDao() {
+        return createDao();
+    }
+}
@@ -0,0 +1,97 @@
+package net.buggy.shoplist.data;
+
+import android.util.Log;
+
+import net.buggy.shoplist.model.Language;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Log.class})
+public class SettingsStoreTest {
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private final List<SettingsSnapshot> persistedSnapshots = new ArrayList<>();
+    private final List<SettingsSnapshot> savedSnapshots = new ArrayList<>();
+    private final List<SettingsSnapshot> failedSnapshots = new ArrayList<>();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    private SettingsStore store;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Log.class);
+
+        store = new SettingsStore(new SettingsSnapshot(null, true, true), new SettingsStore.Persister() {
+            @Override
+            public void persist(SettingsSnapshot snapshot) {
+                if (failuresLeft.getAndDecrement() > 0) {
+                    throw new IllegalStateException("Database is locked");
+                }
+
+                persistedSnapshots.add(snapshot);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        store.addListener(new SettingsListener() {
+            @Override
+            public void settingsSaved(SettingsSnapshot snapshot) {
+                savedSnapshots.add(snapshot);
+            }
+
+            @Override
+            public void settingsSaveFailed(SettingsSnapshot snapshot, Exception exception) {
+                failedSnapshots.add(snapshot);
+            }
+        });
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testFailedWriteIsRetried() {
+        failuresLeft.set(2);
+
+        store.setShowTips(false);
+
+        assertEquals(1, persistedSnapshots.size());
+        assertFalse(persistedSnapshots.get(0).isShowTips());
+        assertEquals(persistedSnapshots, savedSnapshots);
+        assertTrue(failedSnapshots.isEmpty());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testFailedChangeIsWrittenWithNextChange() {
+        failuresLeft.set(3);
+
+        store.setShowTips(false);
+
+        assertTrue(persistedSnapshots.isEmpty());
+        assertEquals(1, failedSnapshots.size());
+        assertFalse(store.getSnapshot().isShowTips());
+
+        store.setLanguage(Language.RU);
+
+        assertEquals(1, persistedSnapshots.size());
+        assertFalse(persistedSnapshots.get(0).isShowTips());
+        assertEquals(Language.RU, persistedSnapshots.get(0).getLanguage());
+    }
+}
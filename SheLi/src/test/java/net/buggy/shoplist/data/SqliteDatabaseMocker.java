@@ -0,0 +1,560 @@
+package net.buggy.shoplist.data;
+
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.activeandroid.Model;
+import com.activeandroid.annotation.Column;
+import com.activeandroid.annotation.Table;
+import com.google.common.base.Joiner;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.reflect.Whitebox;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+
+// SQLiteDatabase mock, which runs the statements on an in-memory sqlite database through JDBC.
+// The schema is created from the annotations of the stored models, as ActiveAndroid does on
+// fresh installs, or over the schema of an installed version, as it does on upgrades.
+// ContentValues are mocked with whenNew, so the tests should prepare their users
+public class SqliteDatabaseMocker {
+
+    private static final String MIGRATIONS_PATH = "src/main/assets/migrations";
+
+    private final Connection connection;
+    private final SQLiteDatabase database;
+
+    // android transactions are exclusive and bound to a thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Boolean> transactions = new ArrayDeque<>();
+    private boolean transactionFailed;
+
+    private final Map<ContentValues, Map<String, Object>> contentValues =
+            Collections.synchronizedMap(new IdentityHashMap<ContentValues, Map<String, Object>>());
+
+    private final AtomicInteger queriesCount = new AtomicInteger();
+
+    public SqliteDatabaseMocker() throws Exception {
+        this(Collections.<String>emptyList());
+    }
+
+    // on upgrades ActiveAndroid creates only the missing tables before the migrations,
+    // the indexes of the models are created on fresh installs only
+    public SqliteDatabaseMocker(List<String> installedSchema) throws Exception {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        for (String sql : installedSchema) {
+            execute(sql);
+        }
+
+        for (Class<? extends Model> modelClass : SqlliteDao.getModelClasses()) {
+            createTable(modelClass, installedSchema.isEmpty());
+        }
+
+        database = mockDatabase();
+        mockContentValues();
+    }
+
+    public SQLiteDatabase getDatabase() {
+        return database;
+    }
+
+    public int getQueriesCount() {
+        return queriesCount.get();
+    }
+
+    public void execute(String sql) {
+        lock.lock();
+        try {
+            final Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+
+        } catch (SQLException e) {
+            throw toRuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // statements of the migration scripts are separated by semicolons at line ends
+    public void applyMigration(int version) throws IOException {
+        final File script = new File(MIGRATIONS_PATH, version + ".sql");
+        final String content = new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8);
+
+        for (String sql : content.split(";\\s*(\\r?\\n|$)")) {
+            if (!sql.trim().isEmpty()) {
+                execute(sql);
+            }
+        }
+    }
+
+    // as ActiveAndroid, runs the existing scripts of the versions (fromVersion, toVersion] in order
+    public void applyMigrations(int fromVersion, int toVersion) throws IOException {
+        for (int version = fromVersion + 1; version <= toVersion; version++) {
+            if (new File(MIGRATIONS_PATH, version + ".sql").exists()) {
+                applyMigration(version);
+            }
+        }
+    }
+
+    public List<Object[]> query(String sql, Object... args) {
+        lock.lock();
+        try {
+            queriesCount.incrementAndGet();
+
+            final PreparedStatement statement = prepare(sql, args);
+            try {
+                final ResultSet resultSet = statement.executeQuery();
+                final int columnsCount = resultSet.getMetaData().getColumnCount();
+
+                final List<Object[]> rows = new ArrayList<>();
+                while (resultSet.next()) {
+                    final Object[] row = new Object[columnsCount];
+                    for (int i = 0; i < columnsCount; i++) {
+                        row[i] = resultSet.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+
+                return rows;
+            } finally {
+                statement.close();
+            }
+
+        } catch (SQLException e) {
+            throw toRuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int update(String sql, Object... args) {
+        lock.lock();
+        try {
+            queriesCount.incrementAndGet();
+
+            final PreparedStatement statement = prepare(sql, args);
+            try {
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+
+        } catch (SQLException e) {
+            throw toRuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long insert(String sql, Object... args) {
+        lock.lock();
+        try {
+            update(sql, args);
+
+            return toLong(query("SELECT last_insert_rowid()").get(0)[0]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private PreparedStatement prepare(String sql, Object[] args) throws SQLException {
+        final PreparedStatement statement = connection.prepareStatement(sql);
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(i + 1, args[i]);
+        }
+
+        return statement;
+    }
+
+    private void beginTransaction() {
+        lock.lock();
+
+        if (transactions.isEmpty()) {
+            transactionFailed = false;
+            execute("BEGIN");
+        }
+
+        transactions.push(false);
+    }
+
+    private void setTransactionSuccessful() {
+        transactions.pop();
+        transactions.push(true);
+    }
+
+    // as in android, a nested transaction without success mark fails the whole transaction
+    private void endTransaction() {
+        try {
+            if (!transactions.pop()) {
+                transactionFailed = true;
+            }
+
+            if (transactions.isEmpty()) {
+                execute(transactionFailed ? "ROLLBACK" : "COMMIT");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SQLiteDatabase mockDatabase() {
+        final SQLiteDatabase database = Mockito.mock(SQLiteDatabase.class);
+
+        Mockito.when(database.rawQuery(anyString(), nullable(String[].class))).then(new Answer<Cursor>() {
+            @Override
+            public Cursor answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final String sql = invocationOnMock.getArgument(0);
+                final String[] args = invocationOnMock.getArgument(1);
+
+                return mockCursor(query(sql, (args != null) ? args : new Object[0]));
+            }
+        });
+
+        Mockito.when(database.insertOrThrow(anyString(), nullable(String.class), any(ContentValues.class)))
+                .then(new Answer<Long>() {
+                    @Override
+                    public Long answer(InvocationOnMock invocationOnMock) throws Throwable {
+                        final String table = invocationOnMock.getArgument(0);
+                        final Map<String, Object> values = getValues(
+                                (ContentValues) invocationOnMock.getArgument(2));
+
+                        final List<String> placeholders = Collections.nCopies(values.size(), "?");
+
+                        return insert("INSERT INTO " + table
+                                        + " (" + Joiner.on(", ").join(values.keySet()) + ")"
+                                        + " VALUES (" + Joiner.on(", ").join(placeholders) + ")",
+                                values.values().toArray());
+                    }
+                });
+
+        Mockito.when(database.update(anyString(), any(ContentValues.class), anyString(), nullable(String[].class)))
+                .then(new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocationOnMock) throws Throwable {
+                        final String table = invocationOnMock.getArgument(0);
+                        final Map<String, Object> values = getValues(
+                                (ContentValues) invocationOnMock.getArgument(1));
+                        final String where = invocationOnMock.getArgument(2);
+                        final String[] whereArgs = invocationOnMock.getArgument(3);
+
+                        final List<String> assignments = new ArrayList<>();
+                        final List<Object> args = new ArrayList<>(values.values());
+                        for (String column : values.keySet()) {
+                            assignments.add(column + " = ?");
+                        }
+                        if (whereArgs != null) {
+                            Collections.addAll(args, (Object[]) whereArgs);
+                        }
+
+                        return update("UPDATE " + table + " SET " + Joiner.on(", ").join(assignments)
+                                + " WHERE " + where, args.toArray());
+                    }
+                });
+
+        Mockito.when(database.delete(anyString(), anyString(), nullable(String[].class))).then(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final String table = invocationOnMock.getArgument(0);
+                final String where = invocationOnMock.getArgument(1);
+                final String[] whereArgs = invocationOnMock.getArgument(2);
+
+                return update("DELETE FROM " + table + " WHERE " + where,
+                        (whereArgs != null) ? whereArgs : new Object[0]);
+            }
+        });
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                execute((String) invocationOnMock.getArgument(0));
+                return null;
+            }
+        }).when(database).execSQL(anyString());
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                beginTransaction();
+                return null;
+            }
+        }).when(database).beginTransaction();
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                setTransactionSuccessful();
+                return null;
+            }
+        }).when(database).setTransactionSuccessful();
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                endTransaction();
+                return null;
+            }
+        }).when(database).endTransaction();
+
+        Mockito.when(database.compileStatement(anyString())).then(new Answer<SQLiteStatement>() {
+            @Override
+            public SQLiteStatement answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return mockStatement((String) invocationOnMock.getArgument(0));
+            }
+        });
+
+        return database;
+    }
+
+    private SQLiteStatement mockStatement(final String sql) {
+        final Map<Integer, Object> bindings = new TreeMap<>();
+
+        final SQLiteStatement statement = Mockito.mock(SQLiteStatement.class);
+
+        final Answer<Void> bindAnswer = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final int index = invocationOnMock.getArgument(0);
+                bindings.put(index, invocationOnMock.getArgument(1));
+                return null;
+            }
+        };
+        Mockito.doAnswer(bindAnswer).when(statement).bindLong(anyInt(), anyLong());
+        Mockito.doAnswer(bindAnswer).when(statement).bindString(anyInt(), anyString());
+
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocationOnMock) throws Throwable {
+                bindings.clear();
+                return null;
+            }
+        }).when(statement).clearBindings();
+
+        Mockito.when(statement.executeInsert()).then(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return insert(sql, bindings.values().toArray());
+            }
+        });
+
+        Mockito.when(statement.simpleQueryForLong()).then(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final List<Object[]> rows = query(sql, bindings.values().toArray());
+                if (rows.isEmpty()) {
+                    throw Whitebox.newInstance(SQLiteDoneException.class);
+                }
+
+                return toLong(rows.get(0)[0]);
+            }
+        });
+
+        return statement;
+    }
+
+    private Cursor mockCursor(final List<Object[]> rows) {
+        final AtomicInteger position = new AtomicInteger(-1);
+
+        final Cursor cursor = Mockito.mock(Cursor.class);
+        Mockito.when(cursor.getCount()).thenReturn(rows.size());
+        Mockito.when(cursor.moveToNext()).then(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return position.incrementAndGet() < rows.size();
+            }
+        });
+        Mockito.when(cursor.isNull(anyInt())).then(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return getValue(rows, position, invocationOnMock) == null;
+            }
+        });
+        Mockito.when(cursor.getLong(anyInt())).then(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return toLong(getValue(rows, position, invocationOnMock));
+            }
+        });
+        Mockito.when(cursor.getInt(anyInt())).then(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return (int) toLong(getValue(rows, position, invocationOnMock));
+            }
+        });
+        Mockito.when(cursor.getString(anyInt())).then(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final Object value = getValue(rows, position, invocationOnMock);
+
+                return (value != null) ? value.toString() : null;
+            }
+        });
+
+        return cursor;
+    }
+
+    private static Object getValue(List<Object[]> rows, AtomicInteger position, InvocationOnMock invocationOnMock) {
+        final int columnIndex = invocationOnMock.getArgument(0);
+
+        return rows.get(position.get())[columnIndex];
+    }
+
+    private void mockContentValues() throws Exception {
+        PowerMockito.whenNew(ContentValues.class).withNoArguments().then(new Answer<ContentValues>() {
+            @Override
+            public ContentValues answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final Map<String, Object> values = new LinkedHashMap<>();
+
+                final ContentValues contentValues = Mockito.mock(ContentValues.class, new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocationOnMock) throws Throwable {
+                        if (invocationOnMock.getMethod().getName().equals("put")) {
+                            values.put((String) invocationOnMock.getArgument(0), invocationOnMock.getArgument(1));
+                        }
+
+                        return null;
+                    }
+                });
+                SqliteDatabaseMocker.this.contentValues.put(contentValues, values);
+
+                return contentValues;
+            }
+        });
+    }
+
+    private Map<String, Object> getValues(ContentValues values) {
+        final Map<String, Object> result = contentValues.get(values);
+        if (result == null) {
+            throw new IllegalStateException("ContentValues were not created through the mocker");
+        }
+
+        return result;
+    }
+
+    private void createTable(Class<? extends Model> modelClass, boolean withIndexes) throws SQLException {
+        final Table table = modelClass.getAnnotation(Table.class);
+
+        final List<String> definitions = new ArrayList<>();
+        definitions.add(table.id() + " INTEGER PRIMARY KEY AUTOINCREMENT");
+
+        final Multimap<String, String> indexes = LinkedHashMultimap.create();
+
+        for (Field field : modelClass.getDeclaredFields()) {
+            final Column column = field.getAnnotation(Column.class);
+            if (column == null) {
+                continue;
+            }
+
+            String definition = column.name() + " " + getSqlType(field.getType());
+            if (column.notNull()) {
+                definition += " NOT NULL";
+            }
+            if (column.unique()) {
+                definition += " UNIQUE";
+            }
+            definitions.add(definition);
+
+            if (column.index()) {
+                indexes.put(column.name(), column.name());
+            }
+            for (String indexGroup : column.indexGroups()) {
+                indexes.put(indexGroup, column.name());
+            }
+        }
+
+        execute("CREATE TABLE IF NOT EXISTS " + table.name() + " (" + Joiner.on(", ").join(definitions) + ")");
+
+        if (!withIndexes) {
+            return;
+        }
+
+        for (String index : indexes.keySet()) {
+            execute("CREATE INDEX index_" + table.name() + "_" + index
+                    + " ON " + table.name() + "(" + Joiner.on(", ").join(indexes.get(index)) + ")");
+        }
+    }
+
+    // storage types of ActiveAndroid
+    private static String getSqlType(Class<?> type) {
+        if (type.equals(String.class) || type.isEnum() || type.equals(BigDecimal.class)) {
+            return "TEXT";
+        }
+
+        if (type.equals(Double.class) || type.equals(double.class)
+                || type.equals(Float.class) || type.equals(float.class)) {
+            return "REAL";
+        }
+
+        if (type.equals(Integer.class) || type.equals(int.class)
+                || type.equals(Long.class) || type.equals(long.class)
+                || type.equals(Boolean.class) || type.equals(boolean.class)
+                || type.equals(Date.class) || Model.class.isAssignableFrom(type)) {
+            return "INTEGER";
+        }
+
+        throw new IllegalArgumentException("Unsupported column type " + type);
+    }
+
+    private static long toLong(Object value) {
+        if (value == null) {
+            return 0;
+        }
+
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        return Long.parseLong(value.toString());
+    }
+
+    private static RuntimeException toRuntimeException(SQLException e) {
+        if ((e.getMessage() != null) && e.getMessage().contains("constraint")) {
+            return Whitebox.newInstance(SQLiteConstraintException.class);
+        }
+
+        return new IllegalStateException(e.getMessage(), e);
+    }
+}
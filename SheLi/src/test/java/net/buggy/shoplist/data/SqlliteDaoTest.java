@@ -0,0 +1,327 @@
+package net.buggy.shoplist.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.activeandroid.Cache;
+import com.activeandroid.Model;
+import com.activeandroid.TableInfo;
+import com.activeandroid.query.From;
+import com.activeandroid.query.Select;
+import com.google.common.collect.ImmutableList;
+
+import net.buggy.shoplist.data.SqlliteDao.StoredCategory;
+import net.buggy.shoplist.data.SqlliteDao.StoredMetadata;
+import net.buggy.shoplist.data.SqlliteDao.StoredProduct;
+import net.buggy.shoplist.data.SqlliteDao.StoredProductCategoryLink;
+import net.buggy.shoplist.model.Category;
+import net.buggy.shoplist.model.Product;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({SqlliteDao.class, Cache.class, TableInfo.class, Log.class, SystemClock.class})
+public class SqlliteDaoTest {
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private final AtomicInteger queriesCount = new AtomicInteger();
+
+    private final Map<Class<? extends Model>, List<Model>> tables = new ConcurrentHashMap<>();
+    private final List<long[]> productCategoryLinks = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger idCounter = new AtomicInteger(1);
+
+    private SQLiteDatabase database;
+    private SQLiteStatement statement;
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(Log.class);
+        PowerMockito.mockStatic(SystemClock.class);
+
+        mockCache();
+        mockSelect();
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testLoadProductsQueriesCountIndependentOfCatalogSize() {
+        final int smallCatalogQueries = countLoadProductsQueries(5);
+
+        clearTables();
+
+        final int bigCatalogQueries = countLoadProductsQueries(500);
+
+        assertEquals(smallCatalogQueries, bigCatalogQueries);
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testLoadProductsCategories() {
+        final StoredCategory category1 = addStoredCategory("Category 1");
+        final StoredCategory category2 = addStoredCategory("Category 2");
+
+        final StoredProduct product1 = addStoredProduct("Product 1", category1, category2);
+        final StoredProduct product2 = addStoredProduct("Product 2", category2);
+        final StoredProduct product3 = addStoredProduct("Product 3");
+
+        final SqlliteDao dao = new SqlliteDao();
+        final List<Product> products = dao.getProducts();
+
+        assertEquals(3, products.size());
+        assertProductCategories(products.get(0), product1.getId(), category1, category2);
+        assertProductCategories(products.get(1), product2.getId(), category2);
+        assertProductCategories(products.get(2), product3.getId());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testExternalIdLookupReusesCompiledStatement() {
+        final StoredCategory category = addStoredCategory("Category 1");
+
+        final SqlliteDao dao = new SqlliteDao();
+        dao.getCategories();
+
+        Mockito.when(statement.simpleQueryForLong()).thenReturn(category.getId());
+
+        queriesCount.set(0);
+        for (int i = 0; i < 10; i++) {
+            final Category foundCategory = dao.findCategoryByExternalId("external-1", "list-1");
+            assertEquals(category.getId(), foundCategory.getId());
+        }
+
+        assertEquals(0, queriesCount.get());
+        Mockito.verify(database, Mockito.times(1)).compileStatement(anyString());
+        Mockito.verify(statement, Mockito.times(10)).simpleQueryForLong();
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    @SuppressWarnings("unchecked")
+    public void testSaveUnchangedProductIsSuppressed() {
+        final StoredCategory category = addStoredCategory("Category 1");
+        addStoredProduct("Product 1", category);
+
+        final SqlliteDao dao = new SqlliteDao();
+        final EntityListener<Product> listener = Mockito.mock(EntityListener.class);
+        dao.addEntityListener(Product.class, listener);
+
+        final Product product = dao.getProducts().get(0);
+
+        queriesCount.set(0);
+        dao.saveProduct(product);
+
+        assertEquals(1, dao.getSuppressedWritesCount());
+        assertEquals(0, queriesCount.get());
+        Mockito.verifyZeroInteractions(listener);
+    }
+
+    private int countLoadProductsQueries(int productsCount) {
+        final StoredCategory category1 = addStoredCategory("Category 1");
+        final StoredCategory category2 = addStoredCategory("Category 2");
+
+        for (int i = 0; i < productsCount; i++) {
+            addStoredProduct("Product " + i, category1, category2);
+        }
+
+        final SqlliteDao dao = new SqlliteDao();
+
+        queriesCount.set(0);
+        final List<Product> products = dao.getProducts();
+        assertEquals(productsCount, products.size());
+
+        return queriesCount.get();
+    }
+
+    private void assertProductCategories(Product product, Long expectedId, StoredCategory... expectedCategories) {
+        assertEquals(expectedId, product.getId());
+
+        final List<String> expectedNames = new ArrayList<>();
+        for (StoredCategory expectedCategory : expectedCategories) {
+            expectedNames.add(expectedCategory.getName());
+        }
+
+        final List<String> actualNames = new ArrayList<>();
+        for (Category category : product.getCategories()) {
+            actualNames.add(category.getName());
+        }
+
+        assertEquals(expectedNames, actualNames);
+    }
+
+    private StoredCategory addStoredCategory(String name) {
+        final StoredCategory category = new StoredCategory();
+        Whitebox.setInternalState(category, "name", name);
+
+        addToTable(StoredCategory.class, category);
+
+        return category;
+    }
+
+    private StoredProduct addStoredProduct(String name, StoredCategory... categories) {
+        final StoredProduct product = new StoredProduct();
+        Whitebox.setInternalState(product, "name", name);
+
+        addToTable(StoredProduct.class, product);
+
+        for (StoredCategory category : categories) {
+            final StoredProductCategoryLink link = new StoredProductCategoryLink();
+            link.setProduct(product);
+            link.setCategory(category);
+            addToTable(StoredProductCategoryLink.class, link);
+
+            productCategoryLinks.add(new long[]{product.getId(), category.getId()});
+        }
+
+        return product;
+    }
+
+    private <T extends Model> void addToTable(Class<T> clazz, T model) {
+        Whitebox.setInternalState(model, "mId", (long) idCounter.getAndIncrement(), Model.class);
+
+        getTable(clazz).add(model);
+    }
+
+    private List<Model> getTable(Class<? extends Model> clazz) {
+        List<Model> table = tables.get(clazz);
+        if (table == null) {
+            table = new CopyOnWriteArrayList<>();
+            tables.put(clazz, table);
+        }
+
+        return table;
+    }
+
+    private void clearTables() {
+        tables.clear();
+        productCategoryLinks.clear();
+    }
+
+    private void mockCache() {
+        final TableInfo tableInfo = PowerMockito.mock(TableInfo.class);
+        Mockito.when(tableInfo.getIdName()).thenReturn("Id");
+
+        PowerMockito.mockStatic(Cache.class);
+        PowerMockito.when(Cache.getTableInfo(any(Class.class))).thenReturn(tableInfo);
+        PowerMockito.when(Cache.getTableName(StoredProductCategoryLink.class)).thenReturn("ProductCategoryLinks");
+
+        statement = Mockito.mock(SQLiteStatement.class);
+
+        database = Mockito.mock(SQLiteDatabase.class);
+        Mockito.when(database.compileStatement(anyString())).thenReturn(statement);
+        Mockito.when(database.rawQuery(anyString(), (String[]) isNull())).then(new Answer<Cursor>() {
+            @Override
+            public Cursor answer(InvocationOnMock invocationOnMock) throws Throwable {
+                queriesCount.incrementAndGet();
+
+                return mockLinksCursor(ImmutableList.copyOf(productCategoryLinks));
+            }
+        });
+        PowerMockito.when(Cache.openDatabase()).thenReturn(database);
+    }
+
+    private Cursor mockLinksCursor(final List<long[]> rows) {
+        final AtomicInteger position = new AtomicInteger(-1);
+
+        final Cursor cursor = Mockito.mock(Cursor.class);
+        Mockito.when(cursor.moveToNext()).then(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocationOnMock) throws Throwable {
+                return position.incrementAndGet() < rows.size();
+            }
+        });
+        Mockito.when(cursor.getLong(anyInt())).then(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final int columnIndex = invocationOnMock.getArgument(0);
+
+                return rows.get(position.get())[columnIndex];
+            }
+        });
+
+        return cursor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockSelect() throws Exception {
+        final Select select = Mockito.mock(Select.class);
+        Mockito.when(select.from(any(Class.class))).then(new Answer<From>() {
+            @Override
+            public From answer(InvocationOnMock invocationOnMock) throws Throwable {
+                final Class<? extends Model> clazz = invocationOnMock.getArgument(0);
+
+                return mockFrom(clazz);
+            }
+        });
+
+        PowerMockito.whenNew(Select.class).withNoArguments().thenReturn(select);
+    }
+
+    private From mockFrom(final Class<? extends Model> clazz) {
+        final From filteredFrom = mockFilteredFrom();
+
+        final From from = Mockito.mock(From.class);
+        Mockito.when(from.where(anyString())).thenReturn(filteredFrom);
+        Mockito.when(from.where(anyString(), Mockito.<Object>any())).thenReturn(filteredFrom);
+        Mockito.when(from.execute()).then(new Answer<List<Model>>() {
+            @Override
+            public List<Model> answer(InvocationOnMock invocationOnMock) throws Throwable {
+                queriesCount.incrementAndGet();
+
+                if (clazz.equals(StoredMetadata.class)) {
+                    return Collections.<Model>singletonList(Mockito.mock(StoredMetadata.class));
+                }
+
+                return ImmutableList.copyOf(getTable(clazz));
+            }
+        });
+
+        return from;
+    }
+
+    // filtering is not supported, filtered queries find nothing
+    private From mockFilteredFrom() {
+        final From from = Mockito.mock(From.class);
+        Mockito.when(from.execute()).then(new Answer<List<Model>>() {
+            @Override
+            public List<Model> answer(InvocationOnMock invocationOnMock) throws Throwable {
+                queriesCount.incrementAndGet();
+
+                return Collections.emptyList();
+            }
+        });
+        Mockito.when(from.executeSingle()).then(new Answer<Model>() {
+            @Override
+            public Model answer(InvocationOnMock invocationOnMock) throws Throwable {
+                queriesCount.incrementAndGet();
+
+                return null;
+            }
+        });
+
+        return from;
+    }
+}
@@ -38,6 +38,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -46,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static net.buggy.shoplist.model.PeriodType.DAYS;
@@ -542,6 +544,71 @@ public class FirebaseSynchronizerTest {
         assertShopItemEquals(shopItem, findServerEntity(shopItem));
     }
 
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSyncChangeClientShopItemsBatched() {
+        final List<ShopItem> shopItems = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            final Product product = addProduct("product" + i, null, null, null);
+            shopItems.add(addShopItem(product, BigDecimal.TEN, "test", UnitOfMeasure.KILOGRAM));
+        }
+
+        authenticateAndWaitSynchronizer();
+
+        for (ShopItem shopItem : shopItems) {
+            shopItem.setChecked(true);
+            dao.saveShopItem(shopItem);
+
+            shopItem.setQuantity(BigDecimal.ONE);
+            dao.saveShopItem(shopItem);
+        }
+
+        waitBackgroundTasks();
+        firebaseMocker.waitBackgroundTasks();
+
+        final DataSnapshot shopItemList = getEntityListSnapshot("shopItems");
+        assertEquals(30, shopItemList.getChildrenCount());
+        for (ShopItem shopItem : shopItems) {
+            assertShopItemEquals(shopItem, findServerEntity(shopItem));
+        }
+
+        final ServerWriteBuffer writeBuffer = firebaseSynchronizer.getWriteBuffer();
+        assertTrue(writeBuffer.getFlushesCount() < 30);
+        assertEquals(60, writeBuffer.getFlushedEntitiesCount() + writeBuffer.getMergedWritesCount());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testSyncChangeClientShopItemsRejectedWrite() {
+        final ShopItem shopItem1 = addShopItem(
+                addProduct("product1", null, null, null), BigDecimal.TEN, "test", UnitOfMeasure.KILOGRAM);
+        final ShopItem shopItem2 = addShopItem(
+                addProduct("product2", null, null, null), BigDecimal.TEN, "test", UnitOfMeasure.KILOGRAM);
+
+        authenticateAndWaitSynchronizer();
+
+        firebaseMocker.rejectWrites(findSyncRecord(shopItem2).getExternalId());
+
+        shopItem1.setChecked(true);
+        dao.saveShopItem(shopItem1);
+        shopItem2.setChecked(true);
+        dao.saveShopItem(shopItem2);
+
+        waitBackgroundTasks();
+        firebaseMocker.waitBackgroundTasks();
+
+        assertShopItemEquals(shopItem1, findServerEntity(shopItem1));
+        assertFalse(Boolean.TRUE.equals(findServerEntity(shopItem2).child("checked").getValue(Boolean.class)));
+
+        final ServerWriteBuffer writeBuffer = firebaseSynchronizer.getWriteBuffer();
+        assertEquals(1, writeBuffer.getFailedBatchesCount());
+        assertEquals(1, writeBuffer.getFailedEntitiesCount());
+
+        assertEquals(1, uncaughtExceptions.size());
+        uncaughtExceptions.clear();
+        assertEquals(1, logErrors.size());
+        logErrors.clear();
+        assertAndRemoveWarning("failed to write batch");
+    }
+
     @Test(timeout = DEFAULT_TIMEOUT)
     public void testSyncDeleteClientCategory() {
         final Category category1 = addCategory("category1", 255);
@@ -2592,6 +2659,82 @@ public class FirebaseSynchronizerTest {
         assertAndRemoveWarning("found Category with the same natural id", 2);
     }
 
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testCollectTombstonesPurgesConfirmedRecordsOfActiveList() throws Exception {
+        authenticateAndWaitSynchronizer();
+
+        final String listId = getAllListsReference().getKey();
+        final Date monthAgo = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31));
+        addTombstone(Product.class, 1001L, "staleProduct", listId, monthAgo);
+        addTombstone(Category.class, 1002L, "recentCategory", listId, new Date());
+        addTombstone(Category.class, 1003L, "undatedCategory", listId, null);
+
+        final int purgedCount =
+                firebaseSynchronizer.collectTombstones(TombstonePolicy.DEFAULT).get();
+
+        assertEquals(3, purgedCount);
+        assertEquals(0, loadSyncRecords(Product.class).size());
+        assertEquals(0, loadSyncRecords(Category.class).size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testCollectTombstonesPurgesConfirmedRecordsOfOtherLists() throws Exception {
+        authenticateAndWaitSynchronizer();
+
+        final DatabaseReference otherList = firebaseDatabase.getReference("lists").push();
+        final DatabaseReference serverProduct = otherList.child("products").push();
+        serverProduct.updateChildren(Collections.<String, Object>singletonMap("name", "product1"));
+
+        final String otherListId = otherList.getKey();
+        addTombstone(Product.class, 1001L, serverProduct.getKey(), otherListId, new Date());
+        addTombstone(Product.class, 1002L, "removedProduct", otherListId, new Date());
+
+        final int purgedCount =
+                firebaseSynchronizer.collectTombstones(TombstonePolicy.DEFAULT).get();
+
+        assertEquals(1, purgedCount);
+
+        final List<EntitySynchronizationRecord<Product>> records =
+                dao.loadSynchronizationRecords(Product.class, otherListId);
+        assertEquals(1, records.size());
+        assertEquals(serverProduct.getKey(), records.get(0).getExternalId());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testCollectTombstonesKeepsStaleRecordsOfExistingEntities() throws Exception {
+        authenticateAndWaitSynchronizer();
+
+        final DatabaseReference otherList = firebaseDatabase.getReference("lists").push();
+        final DatabaseReference serverCategory1 = otherList.child("categories").push();
+        serverCategory1.updateChildren(Collections.<String, Object>singletonMap("name", "category1"));
+        final DatabaseReference serverCategory2 = otherList.child("categories").push();
+        serverCategory2.updateChildren(Collections.<String, Object>singletonMap("name", "category2"));
+
+        final String otherListId = otherList.getKey();
+        final Date weekAgo = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8));
+        addTombstone(Category.class, 1001L, serverCategory1.getKey(), otherListId, weekAgo);
+        addTombstone(Category.class, 1002L, serverCategory2.getKey(), otherListId, null);
+
+        final int purgedCount =
+                firebaseSynchronizer.collectTombstones(TombstonePolicy.DEFAULT).get();
+
+        assertEquals(0, purgedCount);
+        assertEquals(2, dao.loadSynchronizationRecords(Category.class, otherListId).size());
+    }
+
+    private <T extends Entity> void addTombstone(
+            Class<T> entityClass, Long internalId, String externalId, String listId, Date lastChangeDate) {
+        final EntitySynchronizationRecord<T> record = new EntitySynchronizationRecord<>();
+        record.setEntityClass(entityClass);
+        record.setInternalId(internalId);
+        record.setExternalId(externalId);
+        record.setListId(listId);
+        record.setDeleted(true);
+        record.setLastChangeDate(lastChangeDate);
+
+        dao.addSynchronizationRecord(record);
+    }
+
     private DataSnapshot toDataSnapshot(DatabaseReference serverEntity) {
         return getEntityListSnapshot(serverEntity.getParent().getKey()).child(serverEntity.getKey());
     }
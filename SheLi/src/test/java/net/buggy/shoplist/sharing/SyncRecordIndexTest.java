@@ -0,0 +1,112 @@
+package net.buggy.shoplist.sharing;
+
+import net.buggy.shoplist.model.EntitySynchronizationRecord;
+import net.buggy.shoplist.model.Product;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SyncRecordIndexTest {
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+
+    private static final String LIST_ID = "list-1";
+
+    private static final int LARGE_INDEX_RECORDS = 10000;
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testPutAndGet() {
+        final SyncRecordIndex<Product> index = new SyncRecordIndex<>();
+        final EntitySynchronizationRecord<Product> record = createRecord(1L, 10L, "product-10");
+
+        assertNull(index.put(record));
+
+        assertSame(record, index.get(10L));
+        assertSame(record, index.getByExternalId("product-10"));
+        assertNull(index.get(11L));
+        assertNull(index.getByExternalId("product-11"));
+        assertEquals(1, index.size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testPutReplacesSameInternalId() {
+        final SyncRecordIndex<Product> index = new SyncRecordIndex<>();
+        final EntitySynchronizationRecord<Product> record = createRecord(1L, 10L, "product-10");
+        final EntitySynchronizationRecord<Product> newRecord = createRecord(2L, 10L, "product-new");
+
+        index.put(record);
+        assertSame(record, index.put(newRecord));
+
+        assertSame(newRecord, index.get(10L));
+        assertSame(newRecord, index.getByExternalId("product-new"));
+        assertNull(index.getByExternalId("product-10"));
+        assertEquals(1, index.size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testPutReplacesSameExternalId() {
+        final SyncRecordIndex<Product> index = new SyncRecordIndex<>();
+        final EntitySynchronizationRecord<Product> record = createRecord(1L, 10L, "product-10");
+        final EntitySynchronizationRecord<Product> relinkedRecord = createRecord(2L, 11L, "product-10");
+
+        index.put(record);
+        assertNull(index.put(relinkedRecord));
+
+        assertNull(index.get(10L));
+        assertSame(relinkedRecord, index.get(11L));
+        assertSame(relinkedRecord, index.getByExternalId("product-10"));
+        assertEquals(1, index.size());
+    }
+
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testRemove() {
+        final SyncRecordIndex<Product> index = new SyncRecordIndex<>();
+        final EntitySynchronizationRecord<Product> record = createRecord(1L, 10L, "product-10");
+        final EntitySynchronizationRecord<Product> staleRecord = createRecord(2L, 10L, "product-old");
+
+        index.put(record);
+
+        assertFalse(index.remove(staleRecord));
+        assertSame(record, index.get(10L));
+        assertSame(record, index.getByExternalId("product-10"));
+
+        assertTrue(index.remove(record));
+        assertNull(index.get(10L));
+        assertNull(index.getByExternalId("product-10"));
+        assertEquals(0, index.size());
+
+        assertTrue(index.remove(record));
+    }
+
+    // every child event looks up its record, so a bulk subscription makes N lookups
+    @Test(timeout = DEFAULT_TIMEOUT)
+    public void testExternalIdLookupOnLargeIndex() {
+        final SyncRecordIndex<Product> index = new SyncRecordIndex<>();
+        for (long i = 0; i < LARGE_INDEX_RECORDS; i++) {
+            index.put(createRecord(i + 1, i + 1000, "product-" + i));
+        }
+
+        for (int i = 0; i < LARGE_INDEX_RECORDS; i++) {
+            assertEquals(Long.valueOf(i + 1000), index.getByExternalId("product-" + i).getInternalId());
+        }
+        assertEquals(LARGE_INDEX_RECORDS, index.size());
+    }
+
+    private static EntitySynchronizationRecord<Product> createRecord(
+            Long id, Long internalId, String externalId) {
+
+        final EntitySynchronizationRecord<Product> record = new EntitySynchronizationRecord<>();
+        record.setId(id);
+        record.setInternalId(internalId);
+        record.setExternalId(externalId);
+        record.setEntityClass(Product.class);
+        record.setListId(LIST_ID);
+
+        return record;
+    }
+}